@@ -18,10 +18,17 @@
 
 package io.craigmiller160.db.backup;
 
+import io.craigmiller160.db.backup.properties.PropertyReader;
+import io.craigmiller160.db.backup.restore.RestoreCommand;
 import io.craigmiller160.webutils.tls.TlsConfigurer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Runner {
 
+  private static final Logger log = LoggerFactory.getLogger(Runner.class);
+
   private static final String TRUST_STORE_TYPE = "JKS";
   private static final String TRUST_STORE_PATH = "truststore.jks";
   private static final String TRUST_STORE_PASSWORD = "changeit";
@@ -29,6 +36,16 @@ public class Runner {
   public static void main(final String[] args) {
     TlsConfigurer.INSTANCE.configureTlsTrustStore(
         TRUST_STORE_PATH, TRUST_STORE_TYPE, TRUST_STORE_PASSWORD);
+    if (args.length > 0 && RestoreCommand.COMMAND.equals(args[0])) {
+      final var result =
+          new PropertyReader()
+              .readProperties()
+              .flatMap(
+                  propStore ->
+                      new RestoreCommand(propStore).run(Arrays.copyOfRange(args, 1, args.length)))
+              .onFailure(ex -> log.error("Restore failed", ex));
+      System.exit(result.isSuccess() ? 0 : 1);
+    }
     new Application().start();
   }
 }
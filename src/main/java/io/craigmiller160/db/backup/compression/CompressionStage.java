@@ -0,0 +1,102 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.compression;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.vavr.control.Option;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressionStage {
+
+  public static final CompressionStage NONE = new CompressionStage(null, 0, 1);
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private final CompressionType type;
+  private final int level;
+  private final int workers;
+
+  private CompressionStage(final CompressionType type, final int level, final int workers) {
+    this.type = type;
+    this.level = level;
+    this.workers = workers;
+  }
+
+  public static CompressionStage of(final CompressionConfig config) {
+    return Option.of(config)
+        .filter(c -> c.type() != null)
+        .map(
+            c ->
+                new CompressionStage(
+                    c.type(),
+                    Option.of(c.level()).getOrElse(c.type().getDefaultLevel()),
+                    Option.of(c.workers()).filter(w -> w > 0).getOrElse(1)))
+        .getOrElse(NONE);
+  }
+
+  public boolean isEnabled() {
+    return type != null;
+  }
+
+  public Option<CompressionType> getType() {
+    return Option.of(type);
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public String getExtension() {
+    return getType().map(CompressionType::getExtension).getOrElse("");
+  }
+
+  public OutputStream wrap(final OutputStream output) throws IOException {
+    if (type == null) {
+      return output;
+    }
+
+    return switch (type) {
+      case GZIP -> wrapGzip(output);
+      case ZSTD -> wrapZstd(output);
+    };
+  }
+
+  private OutputStream wrapGzip(final OutputStream output) throws IOException {
+    if (workers > 1) {
+      return new ParallelGzipOutputStream(output, level, workers);
+    }
+
+    return new GZIPOutputStream(output, GZIP_BUFFER_SIZE) {
+      {
+        def.setLevel(level);
+      }
+    };
+  }
+
+  private OutputStream wrapZstd(final OutputStream output) throws IOException {
+    final var zstdOutput = new ZstdOutputStream(output, level);
+    if (workers > 1) {
+      zstdOutput.setWorkers(workers);
+    }
+    return zstdOutput;
+  }
+}
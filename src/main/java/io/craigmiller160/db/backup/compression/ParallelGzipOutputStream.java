@@ -0,0 +1,145 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses fixed size blocks on several threads, each one as an independent gzip member. The
+ * members are written in order, and concatenated members are still a single valid gzip file.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+  public static final int BLOCK_SIZE = 1024 * 1024;
+
+  private final OutputStream output;
+  private final int level;
+  private final int maxPendingBlocks;
+  private final ExecutorService executor;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int blockLength = 0;
+  private boolean closed = false;
+
+  public ParallelGzipOutputStream(final OutputStream output, final int level, final int workers) {
+    this.output = output;
+    this.level = level;
+    this.maxPendingBlocks = workers * 2;
+    this.executor =
+        Executors.newFixedThreadPool(
+            workers, Thread.ofPlatform().name("gzip-worker-", 0).daemon().factory());
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    block[blockLength++] = (byte) b;
+    if (blockLength == BLOCK_SIZE) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+    var currentOffset = offset;
+    var remaining = length;
+    while (remaining > 0) {
+      final var count = Math.min(remaining, BLOCK_SIZE - blockLength);
+      System.arraycopy(bytes, currentOffset, block, blockLength, count);
+      blockLength += count;
+      currentOffset += count;
+      remaining -= count;
+      if (blockLength == BLOCK_SIZE) {
+        submitBlock();
+      }
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    if (blockLength == 0) {
+      return;
+    }
+
+    final var data = block;
+    final var length = blockLength;
+    pendingBlocks.add(executor.submit(() -> compress(data, length)));
+    block = new byte[BLOCK_SIZE];
+    blockLength = 0;
+
+    while (pendingBlocks.size() > maxPendingBlocks) {
+      writeNextBlock();
+    }
+  }
+
+  private void writeNextBlock() throws IOException {
+    try {
+      output.write(pendingBlocks.poll().get());
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing block");
+    } catch (final ExecutionException ex) {
+      throw new IOException("Error compressing block", ex.getCause());
+    }
+  }
+
+  private byte[] compress(final byte[] data, final int length) throws IOException {
+    final var compressed = new ByteArrayOutputStream(length / 2);
+    try (final var gzip =
+        new GZIPOutputStream(compressed) {
+          {
+            def.setLevel(level);
+          }
+        }) {
+      gzip.write(data, 0, length);
+    }
+    return compressed.toByteArray();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    submitBlock();
+    while (!pendingBlocks.isEmpty()) {
+      writeNextBlock();
+    }
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    try (output) {
+      flush();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
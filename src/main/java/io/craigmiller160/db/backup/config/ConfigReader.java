@@ -20,9 +20,16 @@ package io.craigmiller160.db.backup.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.craigmiller160.db.backup.config.dto.BackupConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
 import io.craigmiller160.db.backup.exception.ConfigReadException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.craigmiller160.db.backup.schedule.Schedules;
+import io.vavr.Tuple;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
+import java.util.List;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +51,143 @@ public class ConfigReader {
                 ConfigReader.class.getClassLoader().getResourceAsStream(propStore.getConfigFile()))
         .of(configStream -> mapper.readValue(configStream, BackupConfig.class))
         .recoverWith(
-            ex -> Try.failure(new ConfigReadException("Error reading configuration file", ex)));
+            ex -> Try.failure(new ConfigReadException("Error reading configuration file", ex)))
+        .flatMap(this::validate);
+  }
+
+  Try<BackupConfig> validate(final BackupConfig config) {
+    return validateSchedules(config)
+        .flatMap(this::validateCompression)
+        .flatMap(this::validateMongoTuning)
+        .flatMap(this::validatePostgresWal)
+        .flatMap(this::validateRestoreTest);
+  }
+
+  private Try<BackupConfig> validateMongoTuning(final BackupConfig config) {
+    return config.mongodb().databases().stream()
+        .map(
+            db -> {
+              final var includeCollections =
+                  Option.of(db.includeCollections()).getOrElse(List.of());
+              final var excludeCollections =
+                  Option.of(db.excludeCollections()).getOrElse(List.of());
+              if (includeCollections.size() > 1) {
+                return Option.some(
+                    "mongodump can only include a single collection, use excludeCollections instead for Database %s"
+                        .formatted(db.name()));
+              }
+              if (!includeCollections.isEmpty() && !excludeCollections.isEmpty()) {
+                return Option.some(
+                    "includeCollections and excludeCollections cannot be combined for Database %s"
+                        .formatted(db.name()));
+              }
+              if (db.query() != null && includeCollections.isEmpty()) {
+                return Option.some(
+                    "A query requires exactly one entry in includeCollections for Database %s"
+                        .formatted(db.name()));
+              }
+              if (Option.of(db.numParallelCollections()).exists(count -> count <= 0)) {
+                return Option.some(
+                    "numParallelCollections must be greater than 0 for Database %s"
+                        .formatted(db.name()));
+              }
+              return Option.<String>none();
+            })
+        .filter(Option::isDefined)
+        .findFirst()
+        .<Try<BackupConfig>>map(message -> Try.failure(new ConfigReadException(message.get())))
+        .orElse(Try.success(config));
+  }
+
+  // A bad level only fails once the backup is already running, so it is caught up front
+  private Try<BackupConfig> validateCompression(final BackupConfig config) {
+    final var postgres =
+        config.postgres().databases().stream()
+            .map(db -> Tuple.of("Database " + db.name(), db.compression()));
+    final var mongo =
+        config.mongodb().databases().stream()
+            .map(db -> Tuple.of("Database " + db.name(), db.compression()));
+    final var wal =
+        Option.of(config.postgresWal())
+            .map(walConfig -> Tuple.of("Postgres WAL archiving", walConfig.compression()))
+            .toJavaStream();
+    return Stream.concat(Stream.concat(postgres, mongo), wal)
+        .filter(tuple -> tuple._2 != null)
+        .map(tuple -> validateCompression(tuple._2).map(message -> message + " for " + tuple._1))
+        .filter(Option::isDefined)
+        .findFirst()
+        .<Try<BackupConfig>>map(message -> Try.failure(new ConfigReadException(message.get())))
+        .orElse(Try.success(config));
+  }
+
+  private static Option<String> validateCompression(final CompressionConfig compression) {
+    if (Option.of(compression.workers()).exists(workers -> workers <= 0)) {
+      return Option.some("Compression workers must be greater than 0");
+    }
+    return Option.of(compression.type())
+        .flatMap(
+            type ->
+                Option.of(compression.level())
+                    .filter(level -> level < type.getMinLevel() || level > type.getMaxLevel())
+                    .map(
+                        level ->
+                            "Compression level %d must be between %d and %d"
+                                .formatted(level, type.getMinLevel(), type.getMaxLevel())));
+  }
+
+  private Try<BackupConfig> validateRestoreTest(final BackupConfig config) {
+    return Option.of(config.restoreTest())
+        .map(
+            restoreTestConfig ->
+                Schedules.of(restoreTestConfig.schedule(), propStore.getExecutorIntervalSecs())
+                    .map(schedule -> config)
+                    .recoverWith(
+                        ex ->
+                            Try.failure(
+                                new ConfigReadException("Invalid schedule for restore tests", ex))))
+        .getOrElse(Try.success(config));
+  }
+
+  private Try<BackupConfig> validatePostgresWal(final BackupConfig config) {
+    return Option.of(config.postgresWal())
+        .map(
+            walConfig -> {
+              final var compressionType =
+                  Option.of(walConfig.compression()).flatMap(c -> Option.of(c.type()));
+              if (compressionType.exists(type -> type != CompressionType.GZIP)) {
+                return Try.<BackupConfig>failure(
+                    new ConfigReadException(
+                        "Postgres WAL archiving only supports gzip compression"));
+              }
+              return Schedules.of(
+                      walConfig.baseBackupSchedule(), propStore.getExecutorIntervalSecs())
+                  .map(schedule -> config)
+                  .recoverWith(
+                      ex ->
+                          Try.failure(
+                              new ConfigReadException(
+                                  "Invalid schedule for Postgres base backups", ex)));
+            })
+        .getOrElse(Try.success(config));
+  }
+
+  private Try<BackupConfig> validateSchedules(final BackupConfig config) {
+    final var postgresSchedules =
+        config.postgres().databases().stream().map(db -> Tuple.of(db.name(), db.schedule()));
+    final var mongoSchedules =
+        config.mongodb().databases().stream().map(db -> Tuple.of(db.name(), db.schedule()));
+    return Stream.concat(postgresSchedules, mongoSchedules)
+        .map(
+            tuple ->
+                Schedules.of(tuple._2, propStore.getExecutorIntervalSecs())
+                    .recoverWith(
+                        ex ->
+                            Try.failure(
+                                new ConfigReadException(
+                                    "Invalid schedule for database " + tuple._1, ex))))
+        .filter(Try::isFailure)
+        .findFirst()
+        .<Try<BackupConfig>>map(failure -> Try.failure(failure.getCause()))
+        .orElse(Try.success(config));
   }
 }
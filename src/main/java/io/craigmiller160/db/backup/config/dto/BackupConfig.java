@@ -22,4 +22,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 
 public record BackupConfig(
     @JsonProperty("postgres") PostgresBackupConfig postgres,
-    @JsonProperty("mongodb") MongoBackupConfig mongodb) {}
+    @JsonProperty("mongodb") MongoBackupConfig mongodb,
+    @JsonProperty("postgresWal") PostgresWalConfig postgresWal,
+    @JsonProperty("restoreTest") RestoreTestConfig restoreTest) {
+  public BackupConfig(final PostgresBackupConfig postgres, final MongoBackupConfig mongodb) {
+    this(postgres, mongodb, null, null);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.config.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public enum CompressionType {
+  @JsonProperty("gzip")
+  GZIP(".gz", 6, -1, 9),
+  @JsonProperty("zstd")
+  ZSTD(".zst", 3, -131072, 22);
+
+  private final String extension;
+  private final int defaultLevel;
+  private final int minLevel;
+  private final int maxLevel;
+
+  CompressionType(
+      final String extension, final int defaultLevel, final int minLevel, final int maxLevel) {
+    this.extension = extension;
+    this.defaultLevel = defaultLevel;
+    this.minLevel = minLevel;
+    this.maxLevel = maxLevel;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public int getDefaultLevel() {
+    return defaultLevel;
+  }
+
+  public int getMinLevel() {
+    return minLevel;
+  }
+
+  public int getMaxLevel() {
+    return maxLevel;
+  }
+}
@@ -21,4 +21,11 @@ package io.craigmiller160.db.backup.config.dto;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
-public record MongoBackupConfig(@JsonProperty("databases") List<MongoDatabaseConfig> databases) {}
+public record MongoBackupConfig(
+    @JsonProperty("databases") List<MongoDatabaseConfig> databases,
+    @JsonProperty("timeoutSecs") Integer timeoutSecs,
+    @JsonProperty("retention") RetentionConfig retention) {
+  public MongoBackupConfig(final List<MongoDatabaseConfig> databases) {
+    this(databases, null, null);
+  }
+}
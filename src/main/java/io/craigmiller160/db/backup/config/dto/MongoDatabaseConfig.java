@@ -19,5 +19,24 @@
 package io.craigmiller160.db.backup.config.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
 
-public record MongoDatabaseConfig(@JsonProperty("name") String name) {}
+public record MongoDatabaseConfig(
+    @JsonProperty("name") String name,
+    @JsonProperty("timeoutSecs") Integer timeoutSecs,
+    @JsonProperty("compression") CompressionConfig compression,
+    @JsonProperty("archive") Boolean archive,
+    @JsonProperty("gzip") Boolean gzip,
+    @JsonProperty("numParallelCollections") Integer numParallelCollections,
+    @JsonProperty("includeCollections") List<String> includeCollections,
+    @JsonProperty("excludeCollections") List<String> excludeCollections,
+    @JsonProperty("readPreference") String readPreference,
+    @JsonProperty("query") String query,
+    @JsonProperty("schedule") ScheduleConfig schedule,
+    @JsonProperty("dedup") Boolean dedup,
+    @JsonProperty("oplogIntervalSecs") Integer oplogIntervalSecs,
+    @JsonProperty("retention") RetentionConfig retention) {
+  public MongoDatabaseConfig(final String name) {
+    this(name, null, null, null, null, null, null, null, null, null, null, null, null, null);
+  }
+}
@@ -22,4 +22,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 
 public record PostgresBackupConfig(
-    @JsonProperty("databases") List<PostgresDatabaseConfig> databases) {}
+    @JsonProperty("databases") List<PostgresDatabaseConfig> databases,
+    @JsonProperty("timeoutSecs") Integer timeoutSecs,
+    @JsonProperty("retention") RetentionConfig retention) {
+  public PostgresBackupConfig(final List<PostgresDatabaseConfig> databases) {
+    this(databases, null, null);
+  }
+}
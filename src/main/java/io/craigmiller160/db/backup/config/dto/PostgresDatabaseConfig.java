@@ -20,6 +20,21 @@ package io.craigmiller160.db.backup.config.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
+import java.util.Map;
 
 public record PostgresDatabaseConfig(
-    @JsonProperty("name") String name, @JsonProperty("schemas") List<String> schemas) {}
+    @JsonProperty("name") String name,
+    @JsonProperty("schemas") List<String> schemas,
+    @JsonProperty("timeoutSecs") Integer timeoutSecs,
+    @JsonProperty("format") PostgresDumpFormat format,
+    @JsonProperty("jobs") Integer jobs,
+    @JsonProperty("compression") CompressionConfig compression,
+    @JsonProperty("schedule") ScheduleConfig schedule,
+    @JsonProperty("dedup") Boolean dedup,
+    @JsonProperty("skipUnchanged") Boolean skipUnchanged,
+    @JsonProperty("retention") RetentionConfig retention,
+    @JsonProperty("schemaTimeoutSecs") Map<String, Integer> schemaTimeoutSecs) {
+  public PostgresDatabaseConfig(final String name, final List<String> schemas) {
+    this(name, schemas, null, null, null, null, null, null, null, null, null);
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.dedup;
+
+import io.vavr.CheckedFunction0;
+import io.vavr.control.Try;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public class ChunkStore {
+
+  public static final String CHUNK_DIR = "chunks";
+  public static final String MANIFEST_EXTENSION = ".manifest";
+  public static final String MANIFEST_HEADER = "# chunk-manifest v1";
+  private static final String TEMP_SUFFIX = ".partial";
+  private static final String COLLECTING_SUFFIX = ".gc";
+
+  private final Path chunkRoot;
+
+  public ChunkStore(final Path outputRoot) {
+    this.chunkRoot = outputRoot.resolve(CHUNK_DIR);
+  }
+
+  public Path getChunkRoot() {
+    return chunkRoot;
+  }
+
+  public Path getChunkPath(final String hash) {
+    return chunkRoot.resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  // Returns true if the chunk was new and had to be written
+  public boolean put(final String hash, final byte[] data, final int length) throws IOException {
+    final var chunkPath = getChunkPath(hash);
+    if (Files.exists(chunkPath)) {
+      // Refresh the timestamp so garbage collection never removes a chunk that is being reused by a
+      // backup whose manifest isn't written yet
+      try {
+        Files.setLastModifiedTime(chunkPath, FileTime.from(Instant.now()));
+        return false;
+      } catch (final NoSuchFileException ex) {
+        // Garbage collection took the chunk in the meantime, so it is written again below
+      }
+    }
+
+    Files.createDirectories(chunkPath.getParent());
+    final var tempFile = Files.createTempFile(chunkPath.getParent(), hash, TEMP_SUFFIX);
+    try {
+      try (final var output = Files.newOutputStream(tempFile)) {
+        output.write(data, 0, length);
+      }
+      Files.move(
+          tempFile, chunkPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+    return true;
+  }
+
+  // Chunks are written without syncing so a backup isn't slowed by one sync per chunk. The new
+  // chunks are synced together before the manifest that references them is committed.
+  public void sync(final Collection<String> hashes) throws IOException {
+    final var directories = new HashSet<Path>();
+    for (final var hash : hashes) {
+      final var chunkPath = getChunkPath(hash);
+      try (final var channel = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
+        channel.force(true);
+      }
+      directories.add(chunkPath.getParent());
+    }
+    for (final var directory : directories) {
+      try (final var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+        channel.force(true);
+      }
+    }
+  }
+
+  public long restore(final Path manifest, final OutputStream output) throws IOException {
+    final var digest = newDigest();
+    var total = 0L;
+    try (final var reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      for (final var ref : readEntries(reader)) {
+        final var data = Files.readAllBytes(getChunkPath(ref.hash()));
+        final var actualHash = HexFormat.of().formatHex(digest.digest(data));
+        if (data.length != ref.length() || !actualHash.equals(ref.hash())) {
+          throw new IOException("Chunk is corrupt: " + ref.hash());
+        }
+        output.write(data);
+        total += data.length;
+      }
+    }
+    return total;
+  }
+
+  public static long readRestoredSize(final Path manifest) throws IOException {
+    var total = 0L;
+    try (final var reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      for (final var ref : readEntries(reader)) {
+        total += ref.length();
+      }
+    }
+    return total;
+  }
+
+  public static Set<String> readReferences(final Path manifest) throws IOException {
+    final var hashes = new HashSet<String>();
+    try (final var reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      readEntries(reader).forEach(ref -> hashes.add(ref.hash()));
+    }
+    return hashes;
+  }
+
+  // A running backup may not have written the header yet and may end in half a line. Whatever
+  // cannot be read yet was written or refreshed by put() recently, so the grace period covers it
+  public static Set<String> readPartialReferences(final Path manifest) throws IOException {
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+    } catch (final NoSuchFileException ex) {
+      // Committed or cleaned up since it was listed
+      return Set.of();
+    }
+    final var hashes = new HashSet<String>();
+    if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+      return hashes;
+    }
+    for (int i = 1; i < lines.size(); i++) {
+      final var line = lines.get(i);
+      if (line.isBlank()) {
+        continue;
+      }
+      final var ref = Try.of(() -> parseEntry(line));
+      if (ref.isSuccess()) {
+        hashes.add(ref.get().hash());
+      } else if (i < lines.size() - 1) {
+        throw new IOException("Invalid chunk manifest line in " + manifest, ref.getCause());
+      }
+    }
+    return hashes;
+  }
+
+  // References are read again right before deleting, and every chunk is moved aside and checked
+  // once more, so a backup reusing it concurrently either refreshes it in time or writes it again
+  public long deleteUnreferenced(
+      final CheckedFunction0<Set<String>> references, final Instant olderThan) throws IOException {
+    if (!Files.exists(chunkRoot)) {
+      return 0;
+    }
+
+    final var referenced = readReferenced(references);
+    final List<Path> files;
+    try (final Stream<Path> walk = Files.walk(chunkRoot)) {
+      files = walk.filter(Files::isRegularFile).toList();
+    }
+    final var candidates = new ArrayList<Path>();
+    for (final var path : files) {
+      if (referenced.contains(getHash(path))) {
+        // A chunk left aside by an interrupted run goes back while it is still in use
+        restoreQuietly(path);
+      } else if (isOlderThan(path, olderThan)) {
+        candidates.add(path);
+      }
+    }
+
+    final var current = readReferenced(references);
+    return candidates.stream()
+        .filter(path -> !current.contains(getHash(path)))
+        .filter(path -> collect(path, olderThan))
+        .count();
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (final NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-256 is not available", ex);
+    }
+  }
+
+  private static Iterable<ChunkRef> readEntries(final BufferedReader reader) throws IOException {
+    final var header = reader.readLine();
+    if (!MANIFEST_HEADER.equals(header)) {
+      throw new IOException("Not a chunk manifest");
+    }
+    return reader.lines().filter(line -> !line.isBlank()).map(ChunkStore::parseEntry)::iterator;
+  }
+
+  private static ChunkRef parseEntry(final String line) {
+    final var parts = line.split(" ");
+    return new ChunkRef(parts[0], Integer.parseInt(parts[1]));
+  }
+
+  private static Set<String> readReferenced(final CheckedFunction0<Set<String>> references)
+      throws IOException {
+    return Try.of(references)
+        .getOrElseThrow(
+            ex ->
+                ex instanceof IOException io
+                    ? io
+                    : new IOException("Unable to read references", ex));
+  }
+
+  private static String getHash(final Path chunkPath) {
+    final var fileName = chunkPath.getFileName().toString();
+    // Temp files are never referenced, so they get removed once they are old enough
+    if (fileName.endsWith(TEMP_SUFFIX)) {
+      return "";
+    }
+    return fileName.endsWith(COLLECTING_SUFFIX)
+        ? fileName.substring(0, fileName.length() - COLLECTING_SUFFIX.length())
+        : fileName;
+  }
+
+  private boolean collect(final Path path, final Instant olderThan) {
+    final var hash = getHash(path);
+    if (hash.isEmpty()) {
+      return deleteQuietly(path);
+    }
+
+    final var chunkPath = getChunkPath(hash);
+    final var aside = chunkPath.resolveSibling(hash + COLLECTING_SUFFIX);
+    try {
+      if (!path.equals(aside)) {
+        Files.move(path, aside, StandardCopyOption.ATOMIC_MOVE);
+      }
+      // A put() that refreshed the chunk before the move shows up here, one after the move finds
+      // the chunk missing and writes it again
+      if (isOlderThan(aside, olderThan)) {
+        return Files.deleteIfExists(aside);
+      }
+      Files.move(
+          aside, chunkPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return false;
+    } catch (final IOException ex) {
+      return false;
+    }
+  }
+
+  private void restoreQuietly(final Path path) {
+    if (!path.getFileName().toString().endsWith(COLLECTING_SUFFIX)) {
+      return;
+    }
+    try {
+      Files.move(
+          path,
+          getChunkPath(getHash(path)),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException ex) {
+      // Tried again on the next run
+    }
+  }
+
+  private static boolean isOlderThan(final Path path, final Instant olderThan) {
+    try {
+      return Files.getLastModifiedTime(path).toInstant().isBefore(olderThan);
+    } catch (final IOException ex) {
+      return false;
+    }
+  }
+
+  private static boolean deleteQuietly(final Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (final IOException ex) {
+      return false;
+    }
+  }
+
+  record ChunkRef(String hash, int length) {}
+}
@@ -0,0 +1,139 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.dedup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks with a gear rolling hash, so that an insert or delete
+ * only changes the chunks around it. Each chunk is stored once in the {@link ChunkStore} and the
+ * wrapped stream receives the manifest listing the chunks in order.
+ */
+public class ChunkingOutputStream extends OutputStream {
+
+  public static final int MIN_CHUNK_SIZE = 16 * 1024;
+  public static final int MAX_CHUNK_SIZE = 256 * 1024;
+  // 16 bits gives an average chunk size of roughly 64 KB past the minimum
+  private static final long BOUNDARY_MASK = (1L << 16) - 1;
+  // The table has to stay the same forever, otherwise chunk boundaries shift and nothing dedups
+  private static final long[] GEAR = createGearTable(0x6261636b7570L);
+
+  private final ChunkStore chunkStore;
+  private final OutputStream manifest;
+  private final MessageDigest digest = ChunkStore.newDigest();
+  private final byte[] chunk = new byte[MAX_CHUNK_SIZE];
+  private int chunkLength = 0;
+  private long hash = 0;
+  private final List<String> unsyncedChunks = new ArrayList<>();
+  private long newChunks = 0;
+  private long reusedChunks = 0;
+  private boolean closed = false;
+
+  public ChunkingOutputStream(final ChunkStore chunkStore, final OutputStream manifest)
+      throws IOException {
+    this.chunkStore = chunkStore;
+    this.manifest = manifest;
+    manifest.write((ChunkStore.MANIFEST_HEADER + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    chunk[chunkLength++] = (byte) b;
+    hash = (hash << 1) + GEAR[b & 0xff];
+    if (isBoundary()) {
+      emitChunk();
+    }
+  }
+
+  @Override
+  public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+    for (int i = offset; i < offset + length; i++) {
+      final var b = bytes[i];
+      chunk[chunkLength++] = b;
+      hash = (hash << 1) + GEAR[b & 0xff];
+      if (isBoundary()) {
+        emitChunk();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    manifest.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (chunkLength > 0) {
+        emitChunk();
+      }
+      chunkStore.sync(unsyncedChunks);
+    } finally {
+      manifest.close();
+    }
+  }
+
+  public long getNewChunks() {
+    return newChunks;
+  }
+
+  public long getReusedChunks() {
+    return reusedChunks;
+  }
+
+  private boolean isBoundary() {
+    return chunkLength == MAX_CHUNK_SIZE
+        || (chunkLength >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0);
+  }
+
+  private void emitChunk() throws IOException {
+    digest.update(chunk, 0, chunkLength);
+    final var chunkHash = HexFormat.of().formatHex(digest.digest());
+    if (chunkStore.put(chunkHash, chunk, chunkLength)) {
+      unsyncedChunks.add(chunkHash);
+      newChunks++;
+    } else {
+      reusedChunks++;
+    }
+    manifest.write((chunkHash + " " + chunkLength + "\n").getBytes(StandardCharsets.UTF_8));
+    chunkLength = 0;
+    hash = 0;
+  }
+
+  private static long[] createGearTable(final long seed) {
+    final var random = new Random(seed);
+    final var table = new long[256];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = random.nextLong();
+    }
+    return table;
+  }
+}
@@ -62,6 +62,24 @@ public class EmailService {
             Database: %s
             Schema: %s
             """;
+  public static final String POSTGRES_WAL_ERROR_ALERT_MESSAGE =
+      """
+            Postgres WAL Archiving Failed
+
+            Host: %s
+            """;
+  public static final String VERIFY_ERROR_ALERT_MESSAGE =
+      """
+            Backup Verification Failed
+
+            Backup: %s
+            """;
+  public static final String RESTORE_TEST_ERROR_ALERT_MESSAGE =
+      """
+            Restore Test Failed
+
+            Target: %s
+            """;
   public static final String GENERIC_MESSAGE =
       """
             Timestamp: %s
@@ -190,6 +208,42 @@ public class EmailService {
                     ex2));
   }
 
+  public void sendPostgresWalErrorAlertEmail(final String host, final Throwable ex) {
+    final var message = POSTGRES_WAL_ERROR_ALERT_MESSAGE.formatted(host);
+    sendErrorAlertEmail(message, ex)
+        .onSuccess(
+            (v) -> log.info("Successfully sent error alert email for Postgres WAL Host {}", host))
+        .onFailure(
+            ex2 ->
+                log.error(
+                    String.format("Error sending error alert email for Postgres WAL Host %s", host),
+                    ex2));
+  }
+
+  public void sendVerifyErrorAlertEmail(final String backup, final Throwable ex) {
+    final var message = VERIFY_ERROR_ALERT_MESSAGE.formatted(backup);
+    sendErrorAlertEmail(message, ex)
+        .onSuccess(
+            (v) -> log.info("Successfully sent verification alert email for Backup {}", backup))
+        .onFailure(
+            ex2 ->
+                log.error(
+                    String.format("Error sending verification alert email for Backup %s", backup),
+                    ex2));
+  }
+
+  public void sendRestoreTestErrorAlertEmail(final String target, final Throwable ex) {
+    final var message = RESTORE_TEST_ERROR_ALERT_MESSAGE.formatted(target);
+    sendErrorAlertEmail(message, ex)
+        .onSuccess(
+            (v) -> log.info("Successfully sent restore test alert email for Target {}", target))
+        .onFailure(
+            ex2 ->
+                log.error(
+                    String.format("Error sending restore test alert email for Target %s", target),
+                    ex2));
+  }
+
   protected ZonedDateTime getNowEastern() {
     return ZonedDateTime.now(ZoneId.of("US/Eastern"));
   }
@@ -21,49 +21,141 @@ package io.craigmiller160.db.backup.execution;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.exception.BackupException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.Tuple;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public abstract class AbstractBackupTask implements Runnable {
+public abstract class AbstractBackupTask implements BackupTask {
+
+  private static final Logger log = LoggerFactory.getLogger(AbstractBackupTask.class);
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+  public static final String CHECKSUM_ALGORITHM = "SHA-256";
 
   protected final PropertyStore propStore;
   protected final ProcessProvider processProvider;
   protected final EmailService emailService;
+  protected final Duration timeout;
+  protected final ProcessRunner processRunner;
 
   protected AbstractBackupTask(
       final PropertyStore propStore,
       final ProcessProvider processProvider,
-      final EmailService emailService) {
+      final EmailService emailService,
+      final Duration timeout) {
     this.propStore = propStore;
     this.processProvider = processProvider;
     this.emailService = emailService;
+    this.timeout = timeout;
+    this.processRunner = new ProcessRunner(processProvider, timeout);
+  }
+
+  protected Try<Long> readProcess(final Process process, final OutputStream output) {
+    return processRunner.readProcess(process, output);
   }
 
-  private Try<String> readStream(final InputStream stream) {
-    return Try.withResources(() -> new BufferedReader(new InputStreamReader(stream)))
-        .of(reader -> reader.lines().collect(Collectors.joining("\n")));
+  protected static Path partialPath(final Path outputPath) {
+    return DurableFiles.partialPath(outputPath);
   }
 
-  protected Try<String> readProcess(final Process process) {
-    final var outputTry = readStream(process.getInputStream());
-    final var errorTry = readStream(process.getErrorStream());
+  protected Try<BackupArtifact> readProcess(
+      final Process process, final Path outputFile, final OutputStage outputStage) {
+    final var partialFile = partialPath(outputFile);
+    // The checksum covers the bytes as they land on disk, after any compression or chunking
+    final var digest = Try.of(() -> MessageDigest.getInstance(CHECKSUM_ALGORITHM)).get();
+    return Try.of(() -> ProcessPump.attach(process))
+        .flatMap(
+            pump ->
+                openOutput(partialFile, digest, outputStage).map(output -> Tuple.of(pump, output)))
+        .onFailure(ex -> terminate(process))
+        .flatMap(
+            opened ->
+                Try.withResources(() -> opened._2)
+                    .of(output -> processRunner.pump(process, opened._1, output).get()))
+        .flatMap(bytesWritten -> Try.of(() -> DurableFiles.moveIntoPlace(partialFile, outputFile)))
+        .flatMap(
+            path ->
+                Try.of(
+                    () ->
+                        new BackupArtifact(
+                            path,
+                            Files.size(path),
+                            Option.of(HexFormat.of().formatHex(digest.digest())))))
+        .map(AbstractBackupTask::writeChecksumSidecar)
+        .onFailure(ex -> Try.run(() -> Files.deleteIfExists(partialFile)));
+  }
 
-    return Try.of(
-            () -> {
-              process.waitFor(20, TimeUnit.SECONDS);
-              return process.exitValue();
-            })
+  private Try<OutputStream> openOutput(
+      final Path partialFile, final MessageDigest digest, final OutputStage outputStage) {
+    return createOutputDirectory(partialFile.getParent())
+        .flatMap(dir -> Try.of(() -> DurableFiles.newOutputStream(partialFile)))
         .flatMap(
-            exitCode -> {
-              if (exitCode == 0) {
-                return outputTry;
-              }
+            file ->
+                Try.of(
+                        () ->
+                            outputStage.wrap(
+                                new BufferedOutputStream(
+                                    new DigestOutputStream(file, digest), OUTPUT_BUFFER_SIZE)))
+                    .onFailure(ex -> Try.run(file::close)));
+  }
+
+  // The process is already running, left alone it would block on a full pipe and never exit
+  private static void terminate(final Process process) {
+    ProcessReaper.terminate(process, Duration.ofSeconds(BackupConstants.PROCESS_KILL_GRACE_SECS));
+  }
+
+  // The catalog holds the checksum too, the sidecar is what survives the catalog being rebuilt
+  protected static BackupArtifact writeChecksumSidecar(final BackupArtifact artifact) {
+    artifact
+        .checksum()
+        .forEach(
+            checksum ->
+                ChecksumSidecar.write(artifact.path(), checksum)
+                    .onFailure(
+                        ex -> log.warn("Unable to write checksum for {}", artifact.path(), ex)));
+    return artifact;
+  }
+
+  protected Try<BackupArtifact> readProcessIntoDirectory(
+      final Process process, final Path outputDir) {
+    final var partialDir = partialPath(outputDir);
+    return createOutputDirectory(outputDir.getParent())
+        .onFailure(ex -> terminate(process))
+        .flatMap(dir -> readProcess(process, OutputStream.nullOutputStream()))
+        .flatMap(
+            bytesWritten ->
+                Try.of(
+                        () -> {
+                          // A tool that found nothing to write may not create the directory at all
+                          Files.createDirectories(partialDir);
+                          DurableFiles.syncTree(partialDir);
+                          return DurableFiles.moveIntoPlace(partialDir, outputDir);
+                        })
+                    .map(
+                        path ->
+                            new BackupArtifact(
+                                path, FileUtils.sizeOfDirectory(path.toFile()), Option.none())))
+        .onFailure(ex -> Try.run(() -> FileUtils.deleteDirectory(partialDir.toFile())));
+  }
 
-              return errorTry.flatMap(content -> Try.failure(new BackupException(content)));
-            });
+  private Try<Path> createOutputDirectory(final Path directory) {
+    return Try.of(() -> Files.createDirectories(directory))
+        .recoverWith(
+            ex ->
+                Try.failure(
+                    new BackupException(
+                        String.format(
+                            "Unable to create output directory: %s", directory.toAbsolutePath()),
+                        ex)));
   }
 }
@@ -0,0 +1,388 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.vavr.collection.Stream;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BackupCatalog {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupCatalog.class);
+
+  public static final String CATALOG_FILE = "backup-catalog.tsv";
+  public static final String STATUS_OK = "ok";
+  public static final String STATUS_CORRUPT = "corrupt";
+  private static final String ADD_RECORD = "A";
+  private static final String DELETE_RECORD = "D";
+  private static final String NO_VALUE = "-";
+  private static final Comparator<Entry> ORDER =
+      Comparator.comparingLong(Entry::epochSecond).thenComparing(Entry::relativePath);
+
+  private final Path outputRoot;
+  private final Path catalogFile;
+  private final Map<String, NavigableSet<Entry>> entriesByTarget = new HashMap<>();
+  private final Map<String, Entry> entriesByPath = new HashMap<>();
+  private final boolean readOnly;
+  private boolean loaded = false;
+
+  // Backups are registered from several workers, which must all share one catalog per output root
+  public BackupCatalog(final Path outputRoot) {
+    this(outputRoot, false);
+  }
+
+  private BackupCatalog(final Path outputRoot, final boolean readOnly) {
+    this.outputRoot = outputRoot.toAbsolutePath().normalize();
+    this.catalogFile = outputRoot.resolve(CATALOG_FILE);
+    this.readOnly = readOnly;
+  }
+
+  // Never writes to the file, which the running service owns. A missing file is only rebuilt in
+  // memory
+  public static BackupCatalog readOnly(final Path outputRoot) {
+    return new BackupCatalog(outputRoot, true);
+  }
+
+  public static String postgresTarget(final String database, final String schema) {
+    return "postgres/%s/%s".formatted(database, schema);
+  }
+
+  public static String mongoTarget(final String database) {
+    return "mongodb/%s".formatted(database);
+  }
+
+  public synchronized Try<Entry> register(
+      final String target, final ZonedDateTime timestamp, final BackupArtifact artifact) {
+    if (readOnly) {
+      return Try.failure(new BackupException("The backup catalog is open read-only"));
+    }
+    ensureLoaded();
+    final var entry =
+        new Entry(
+            target,
+            timestamp.toEpochSecond(),
+            relativize(artifact.path()),
+            artifact.sizeBytes(),
+            artifact.checksum(),
+            STATUS_OK,
+            Option.some(Instant.now().getEpochSecond()));
+    return append(formatEntry(entry))
+        .map(
+            path -> {
+              add(entry);
+              return entry;
+            })
+        .recoverWith(
+            IOException.class,
+            ex ->
+                Try.failure(
+                    new BackupException(
+                        "Unable to add %s to the backup catalog".formatted(entry.relativePath()),
+                        ex)));
+  }
+
+  public synchronized void remove(final Entry entry) {
+    checkWritable();
+    ensureLoaded();
+    if (entriesByPath.remove(entry.relativePath()) == null) {
+      return;
+    }
+    Option.of(entriesByTarget.get(entry.target())).forEach(entries -> entries.remove(entry));
+    append(String.join("\t", DELETE_RECORD, entry.relativePath()))
+        .onFailure(
+            ex ->
+                log.warn("Unable to remove {} from the backup catalog", entry.relativePath(), ex));
+  }
+
+  public synchronized List<Entry> getExpired(final String target, final ZonedDateTime olderThan) {
+    ensureLoaded();
+    final var probe =
+        new Entry(target, olderThan.toEpochSecond(), "", 0, Option.none(), "", Option.none());
+    return Option.of(entriesByTarget.get(target))
+        .map(entries -> (List<Entry>) new ArrayList<>(entries.headSet(probe, false)))
+        .getOrElse(List.of());
+  }
+
+  public synchronized List<Entry> getEntries(final String target) {
+    ensureLoaded();
+    return Option.of(entriesByTarget.get(target))
+        .map(entries -> (List<Entry>) new ArrayList<>(entries))
+        .getOrElse(List.of());
+  }
+
+  public synchronized List<Entry> getAllEntries() {
+    ensureLoaded();
+    return entriesByTarget.values().stream().flatMap(entries -> entries.stream()).toList();
+  }
+
+  public synchronized void setStatus(final Entry entry, final String status) {
+    checkWritable();
+    ensureLoaded();
+    if (!entriesByPath.containsKey(entry.relativePath())) {
+      return;
+    }
+    final var updated =
+        new Entry(
+            entry.target(),
+            entry.epochSecond(),
+            entry.relativePath(),
+            entry.sizeBytes(),
+            entry.checksum(),
+            status,
+            entry.completedEpochSecond());
+    add(updated);
+    append(formatEntry(updated))
+        .onFailure(
+            ex ->
+                log.warn("Unable to update {} in the backup catalog", updated.relativePath(), ex));
+  }
+
+  public synchronized Option<Entry> find(final Path path) {
+    ensureLoaded();
+    return Option.of(entriesByPath.get(relativize(path)));
+  }
+
+  public Path resolve(final Entry entry) {
+    return outputRoot.resolve(entry.relativePath());
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new IllegalStateException("The backup catalog is open read-only");
+    }
+  }
+
+  private String relativize(final Path path) {
+    return outputRoot.relativize(path.toAbsolutePath().normalize()).toString();
+  }
+
+  private void add(final Entry entry) {
+    Option.of(entriesByPath.put(entry.relativePath(), entry))
+        .forEach(
+            previous ->
+                Option.of(entriesByTarget.get(previous.target()))
+                    .forEach(entries -> entries.remove(previous)));
+    entriesByTarget.computeIfAbsent(entry.target(), key -> new TreeSet<>(ORDER)).add(entry);
+  }
+
+  // The catalog is only an index of what is on disk, so when the file is lost it is rebuilt
+  // from the backup directories rather than trusting whatever is still in memory
+  private void ensureLoaded() {
+    if (loaded && (readOnly || Files.exists(catalogFile))) {
+      return;
+    }
+    entriesByTarget.clear();
+    entriesByPath.clear();
+    if (Files.exists(catalogFile)) {
+      load();
+    } else {
+      rebuild();
+    }
+    loaded = true;
+  }
+
+  private void load() {
+    Try.of(() -> Files.readAllLines(catalogFile, StandardCharsets.UTF_8))
+        .onSuccess(
+            lines -> {
+              lines.forEach(this::parseLine);
+              // Deleted records only matter until the next compaction
+              if (!readOnly && lines.size() > (entriesByPath.size() * 2) + 100) {
+                save().onFailure(ex -> log.warn("Unable to compact the backup catalog", ex));
+              }
+            })
+        .onFailure(ex -> log.warn("Unable to read backup catalog, rebuilding it from disk", ex))
+        .onFailure(ex -> rebuild());
+  }
+
+  private void parseLine(final String line) {
+    final var parts = line.split("\t");
+    if (parts.length == 2 && DELETE_RECORD.equals(parts[0])) {
+      Option.of(entriesByPath.remove(parts[1]))
+          .forEach(
+              entry ->
+                  Option.of(entriesByTarget.get(entry.target()))
+                      .forEach(entries -> entries.remove(entry)));
+      return;
+    }
+    // Records written before the completion time was tracked have one column less
+    if ((parts.length != 7 && parts.length != 8) || !ADD_RECORD.equals(parts[0])) {
+      log.debug("Ignoring invalid backup catalog line: {}", line);
+      return;
+    }
+    Try.of(
+            () ->
+                new Entry(
+                    parts[1],
+                    Long.parseLong(parts[2]),
+                    parts[3],
+                    Long.parseLong(parts[4]),
+                    Option.of(parts[5]).filter(checksum -> !NO_VALUE.equals(checksum)),
+                    parts[6],
+                    Option.when(parts.length == 8, () -> parts[7])
+                        .filter(completed -> !NO_VALUE.equals(completed))
+                        .map(Long::parseLong)))
+        .onSuccess(this::add)
+        .onFailure(ex -> log.debug("Ignoring invalid backup catalog line: {}", line));
+  }
+
+  private void rebuild() {
+    log.info("Rebuilding backup catalog from {}", outputRoot.toAbsolutePath());
+    final var postgresRoot = outputRoot.resolve(BackupConstants.POSTGRES_DIR);
+    listDirectories(postgresRoot)
+        .forEach(
+            databaseDir ->
+                listDirectories(databaseDir)
+                    .forEach(
+                        schemaDir ->
+                            addFromDisk(
+                                postgresTarget(
+                                    databaseDir.getFileName().toString(),
+                                    schemaDir.getFileName().toString()),
+                                schemaDir)));
+    listDirectories(outputRoot.resolve(BackupConstants.MONGO_DIR))
+        .forEach(
+            databaseDir ->
+                addFromDisk(mongoTarget(databaseDir.getFileName().toString()), databaseDir));
+    if (!readOnly) {
+      save().onFailure(ex -> log.warn("Unable to write rebuilt backup catalog", ex));
+    }
+  }
+
+  private void addFromDisk(final String target, final Path directory) {
+    list(directory)
+        .forEach(
+            path ->
+                BackupFileNames.parseTimestamp(path.getFileName().toString())
+                    .forEach(
+                        timestamp ->
+                            add(
+                                new Entry(
+                                    target,
+                                    timestamp.toEpochSecond(),
+                                    relativize(path),
+                                    sizeOf(path),
+                                    ChecksumSidecar.read(path),
+                                    STATUS_OK,
+                                    Option.none()))));
+  }
+
+  private static long sizeOf(final Path path) {
+    return Try.of(
+            () ->
+                Files.isDirectory(path)
+                    ? FileUtils.sizeOfDirectory(path.toFile())
+                    : Files.size(path))
+        .getOrElse(0L);
+  }
+
+  private static Stream<Path> list(final Path directory) {
+    if (!Files.isDirectory(directory)) {
+      return Stream.empty();
+    }
+    return Try.of(
+            () -> {
+              try (final var paths = Files.list(directory)) {
+                return Stream.ofAll(paths.collect(Collectors.toList()));
+              }
+            })
+        .getOrElse(Stream.empty());
+  }
+
+  private static Stream<Path> listDirectories(final Path directory) {
+    return list(directory).filter(Files::isDirectory);
+  }
+
+  private static String formatEntry(final Entry entry) {
+    return String.join(
+        "\t",
+        ADD_RECORD,
+        entry.target(),
+        String.valueOf(entry.epochSecond()),
+        entry.relativePath(),
+        String.valueOf(entry.sizeBytes()),
+        entry.checksum().getOrElse(NO_VALUE),
+        entry.status(),
+        entry.completedEpochSecond().map(String::valueOf).getOrElse(NO_VALUE));
+  }
+
+  private Try<Path> append(final String line) {
+    return Try.of(
+        () -> {
+          Files.createDirectories(catalogFile.getParent());
+          return Files.writeString(
+              catalogFile,
+              line + "\n",
+              StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.APPEND);
+        });
+  }
+
+  private Try<Path> save() {
+    final var content =
+        entriesByTarget.values().stream()
+            .flatMap(entries -> entries.stream())
+            .map(BackupCatalog::formatEntry)
+            .map(line -> line + "\n")
+            .collect(Collectors.joining());
+    final var tempFile =
+        catalogFile.resolveSibling(catalogFile.getFileName() + BackupConstants.PARTIAL_SUFFIX);
+    return Try.of(
+            () -> {
+              Files.createDirectories(catalogFile.getParent());
+              Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+              return Files.move(
+                  tempFile,
+                  catalogFile,
+                  StandardCopyOption.ATOMIC_MOVE,
+                  StandardCopyOption.REPLACE_EXISTING);
+            })
+        .onFailure(IOException.class, ex -> Try.run(() -> Files.deleteIfExists(tempFile)));
+  }
+
+  public record Entry(
+      String target,
+      long epochSecond,
+      String relativePath,
+      long sizeBytes,
+      Option<String> checksum,
+      String status,
+      Option<Long> completedEpochSecond) {}
+}
@@ -26,6 +26,25 @@ public class BackupConstants {
   public static final String TIME_ZONE = "US/Eastern";
   public static final String POSTGRES_DIR = "Postgres";
   public static final String MONGO_DIR = "MongoDB";
+  public static final String POSTGRES_WAL_DIR = "PostgresWAL";
+  public static final String WAL_SEGMENT_DIR = "wal";
+  public static final String BASE_BACKUP_DIR = "base";
+  public static final String OPLOG_DIR = "oplog";
+  public static final String PARTIAL_SUFFIX = ".partial";
+  public static final String CHECKSUM_EXTENSION = ".sha256";
+  public static final int DEFAULT_POSTGRES_TIMEOUT_SECS = 3600;
+  public static final int DEFAULT_MONGO_TIMEOUT_SECS = 3600;
+  public static final int PROCESS_KILL_GRACE_SECS = 30;
+  public static final int CHUNK_GC_GRACE_HOURS = 24;
+  public static final String DEFAULT_WAL_SLOT = "db_backup_service";
+  public static final int DEFAULT_BASE_BACKUP_RETENTION = 2;
+  public static final int DEFAULT_BASE_BACKUP_TIMEOUT_SECS = 6 * 3600;
+  public static final int DEFAULT_RESTORE_TEST_TIMEOUT_SECS = 6 * 3600;
+  public static final int DEFAULT_RESTORE_TIMEOUT_SECS = 24 * 3600;
+  public static final String DEFAULT_MONGOD_COMMAND = "mongod";
+  public static final String RESTORE_TEST_DIR = "restore-test";
+  public static final int WAL_RETENTION_GRACE_MINS = 60;
+  public static final int OPLOG_SETTLE_SECS = 60;
 
   private BackupConstants() {}
 }
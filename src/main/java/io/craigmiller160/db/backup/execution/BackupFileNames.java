@@ -0,0 +1,51 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.regex.Pattern;
+
+public class BackupFileNames {
+
+  private static final Pattern BACKUP_NAME_PATTERN =
+      Pattern.compile("^(?:backup_)?(?<timestamp>\\d{14})(?:\\..+)?$");
+
+  private BackupFileNames() {}
+
+  public static Option<ZonedDateTime> parseTimestamp(final String fileName) {
+    if (fileName.endsWith(BackupConstants.PARTIAL_SUFFIX)
+        || fileName.endsWith(BackupConstants.CHECKSUM_EXTENSION)) {
+      return Option.none();
+    }
+
+    return Option.of(BACKUP_NAME_PATTERN.matcher(fileName))
+        .filter(matcher -> matcher.matches())
+        .flatMap(
+            matcher ->
+                Try.of(
+                        () ->
+                            LocalDateTime.parse(matcher.group("timestamp"), BackupConstants.FORMAT)
+                                .atZone(ZoneId.of(BackupConstants.TIME_ZONE)))
+                    .toOption());
+  }
+}
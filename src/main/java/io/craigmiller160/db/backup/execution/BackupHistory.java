@@ -0,0 +1,160 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BackupHistory {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupHistory.class);
+
+  public static final String HISTORY_FILE = "backup-history.tsv";
+  // Weight of the newest sample in the moving average, so one odd run doesn't reorder everything
+  private static final double SMOOTHING = 0.3;
+  // The file is append-only, it is rewritten on load once stale lines outnumber live ones
+  private static final int COMPACT_MIN_LINES = 100;
+
+  private final Path historyFile;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private BackupHistory(final Path historyFile) {
+    this.historyFile = historyFile;
+  }
+
+  public static BackupHistory load(final Path outputRoot) {
+    final var history = new BackupHistory(outputRoot.resolve(HISTORY_FILE));
+    if (Files.exists(history.historyFile)) {
+      Try.of(() -> Files.readAllLines(history.historyFile, StandardCharsets.UTF_8))
+          .onSuccess(
+              lines -> {
+                lines.forEach(history::parseLine);
+                if (lines.size() > Math.max(COMPACT_MIN_LINES, history.entries.size() * 2)) {
+                  history
+                      .compact()
+                      .onFailure(ex -> log.warn("Unable to compact backup history", ex));
+                }
+              })
+          .onFailure(
+              ex -> log.warn("Unable to read backup history, starting with an empty one", ex));
+    }
+    return history;
+  }
+
+  public Option<Entry> get(final String target) {
+    return Option.of(entries.get(target));
+  }
+
+  public synchronized void record(
+      final String target, final Duration duration, final long sizeBytes) {
+    final var durationMillis = duration.toMillis();
+    final var updated =
+        entries.compute(
+            target,
+            (key, existing) -> {
+              if (existing == null) {
+                return new Entry(1, durationMillis, sizeBytes);
+              }
+              final var average =
+                  Math.round(
+                      (existing.avgDurationMillis() * (1 - SMOOTHING))
+                          + (durationMillis * SMOOTHING));
+              return new Entry(existing.samples() + 1, average, sizeBytes);
+            });
+    append(formatLine(target, updated))
+        .onFailure(
+            ex ->
+                log.warn("Unable to write backup history to {}", historyFile.toAbsolutePath(), ex));
+  }
+
+  // Targets without any history come first, so they get measured before anything else
+  public long getPriority(final String target) {
+    return get(target).map(Entry::avgDurationMillis).getOrElse(Long.MAX_VALUE);
+  }
+
+  private void parseLine(final String line) {
+    final var parts = line.split("\t");
+    if (parts.length != 4) {
+      return;
+    }
+    Try.of(
+            () ->
+                new Entry(
+                    Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3])))
+        .onSuccess(entry -> entries.put(parts[0], entry))
+        .onFailure(ex -> log.debug("Ignoring invalid backup history line: {}", line));
+  }
+
+  private static String formatLine(final String target, final Entry entry) {
+    return String.join(
+        "\t",
+        target,
+        String.valueOf(entry.samples()),
+        String.valueOf(entry.avgDurationMillis()),
+        String.valueOf(entry.lastSizeBytes()));
+  }
+
+  private Try<Path> append(final String line) {
+    return Try.of(
+        () -> {
+          Files.createDirectories(historyFile.getParent());
+          return Files.writeString(
+              historyFile,
+              line + "\n",
+              StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.APPEND);
+        });
+  }
+
+  private synchronized Try<Path> compact() {
+    final var content =
+        new TreeMap<>(entries)
+            .entrySet().stream()
+                .map(entry -> formatLine(entry.getKey(), entry.getValue()))
+                .collect(Collectors.joining("\n", "", "\n"));
+    final var tempFile =
+        historyFile.resolveSibling(historyFile.getFileName() + BackupConstants.PARTIAL_SUFFIX);
+    return Try.of(
+            () -> {
+              Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+              return Files.move(
+                  tempFile,
+                  historyFile,
+                  StandardCopyOption.ATOMIC_MOVE,
+                  StandardCopyOption.REPLACE_EXISTING);
+            })
+        .onFailure(IOException.class, ex -> Try.run(() -> Files.deleteIfExists(tempFile)));
+  }
+
+  public record Entry(long samples, long avgDurationMillis, long lastSizeBytes) {}
+}
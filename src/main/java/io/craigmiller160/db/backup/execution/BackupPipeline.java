@@ -0,0 +1,60 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BackupPipeline implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupPipeline.class);
+
+  private final String name;
+  private final BackupTask backupTask;
+  private final Runnable cleanupTask;
+  private final BackupHistory history;
+
+  public BackupPipeline(
+      final String name,
+      final BackupTask backupTask,
+      final Runnable cleanupTask,
+      final BackupHistory history) {
+    this.name = name;
+    this.backupTask = backupTask;
+    this.cleanupTask = cleanupTask;
+    this.history = history;
+  }
+
+  @Override
+  public void run() {
+    final var start = System.nanoTime();
+    backupTask
+        .execute()
+        .onSuccess(
+            bytesWritten ->
+                history.record(name, Duration.ofNanos(System.nanoTime() - start), bytesWritten))
+        .onSuccess(bytesWritten -> cleanupTask.run())
+        .onFailure(
+            ex ->
+                log.warn(
+                    "Skipping cleanup for {} because the backup failed, keeping existing backups",
+                    name));
+  }
+}
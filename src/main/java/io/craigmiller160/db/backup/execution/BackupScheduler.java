@@ -20,13 +20,25 @@ package io.craigmiller160.db.backup.execution;
 
 import io.craigmiller160.db.backup.config.dto.BackupConfig;
 import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.ScheduleConfig;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.craigmiller160.db.backup.schedule.IntervalSchedule;
+import io.craigmiller160.db.backup.schedule.Schedule;
+import io.craigmiller160.db.backup.schedule.Schedules;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,9 +49,16 @@ public class BackupScheduler {
 
   private final PropertyStore propStore;
   private final BackupConfig backupConfig;
-  private final ScheduledExecutorService executor;
+  private final TaskTimer timer;
   private final TaskFactory taskFactory;
   private final EmailService emailService;
+  private final StaggerStrategy staggerStrategy;
+  private final WorkQueue workQueue;
+  private final BackupHistory history;
+  private final BackupCatalog catalog;
+  private final ParallelDeleter deleter;
+  private final ExecutorService livenessLane;
+  private Option<WalReceiverSupervisor> walReceiver = Option.none();
 
   public BackupScheduler(
       final PropertyStore propStore,
@@ -50,53 +69,224 @@ public class BackupScheduler {
     this.backupConfig = backupConfig;
     this.taskFactory = taskFactory;
     this.emailService = emailService;
-    this.executor = Executors.newScheduledThreadPool(propStore.getExecutorThreadCount());
+    this.history = BackupHistory.load(Paths.get(propStore.getOutputRootDirectory()));
+    this.catalog = new BackupCatalog(Paths.get(propStore.getOutputRootDirectory()));
+    this.deleter = ParallelDeleter.of(propStore);
+    this.timer =
+        new TaskTimer(
+            ZoneId.of(BackupConstants.TIME_ZONE),
+            OverlapPolicy.fromProperty(propStore.getExecutorOverlapPolicy()),
+            history::getPriority);
+    final var executorMode = ExecutorMode.fromProperty(propStore.getExecutorMode());
+    log.info("Running backups with {} worker threads", executorMode.name().toLowerCase());
+    this.workQueue =
+        new WorkQueue(
+            executorMode.createWorkers(propStore.getExecutorThreadCount()), history::getPriority);
+    this.livenessLane =
+        Executors.newSingleThreadExecutor(Thread.ofPlatform().name("liveness").daemon().factory());
+    this.staggerStrategy =
+        new StaggerStrategy(
+            propStore.getExecutorStaggerSecs(),
+            propStore.getExecutorJitterSecs(),
+            propStore.getExecutorIntervalSecs());
   }
 
   public void start() {
-    this.executor.scheduleAtFixedRate(
-        taskFactory.createLivenessCheckTask(propStore),
+    sweepPartials();
+    timer.schedule(
+        "liveness",
+        taskFactory.createLivenessCheckTask(propStore, this::getTaskRunStates),
+        new IntervalSchedule(propStore.getExecutorIntervalSecs()),
         0,
-        propStore.getExecutorIntervalSecs(),
-        TimeUnit.SECONDS);
+        livenessLane);
+    final var postgresLane =
+        workQueue.forHost(
+            "postgres://%s:%s".formatted(propStore.getPostgresHost(), propStore.getPostgresPort()),
+            propStore.getExecutorPostgresMaxConcurrent());
     backupConfig.postgres().databases().stream()
-        .flatMap(db -> db.schemas().stream().map(schema -> Tuple.of(db.name(), schema)))
-        .map(
+        .flatMap(db -> db.schemas().stream().map(schema -> Tuple.of(db, schema)))
+        .forEach(
             tuple -> {
               final var backupTask =
-                  taskFactory.createPostgresBackupTask(propStore, emailService, tuple._1, tuple._2);
+                  taskFactory.createPostgresBackupTask(
+                      propStore,
+                      catalog,
+                      emailService,
+                      tuple._1,
+                      tuple._2,
+                      getTimeout(tuple._1, tuple._2));
               final var cleanupTask =
-                  taskFactory.createPostgresCleanupTask(propStore, tuple._1, tuple._2);
-              return Tuple.of(backupTask, cleanupTask);
-            })
-        .forEach(this::scheduleTaskPair);
+                  taskFactory.createPostgresCleanupTask(
+                      propStore,
+                      catalog,
+                      deleter,
+                      tuple._1.name(),
+                      tuple._2,
+                      Option.of(tuple._1.retention())
+                          .getOrElse(backupConfig.postgres().retention()));
+              scheduleTaskPair(
+                  "postgres/%s/%s".formatted(tuple._1.name(), tuple._2),
+                  postgresLane,
+                  getSchedule(tuple._1.schedule()),
+                  Tuple.of(backupTask, cleanupTask));
+            });
+
+    Option.of(backupConfig.postgresWal())
+        .forEach(
+            walConfig -> {
+              final var supervisor =
+                  taskFactory.createWalReceiverSupervisor(propStore, emailService, walConfig);
+              supervisor.start();
+              walReceiver = Option.some(supervisor);
+
+              final var timeout =
+                  Duration.ofSeconds(
+                      Option.of(walConfig.timeoutSecs())
+                          .getOrElse(BackupConstants.DEFAULT_BASE_BACKUP_TIMEOUT_SECS));
+              scheduleTaskPair(
+                  "postgres-wal/base",
+                  postgresLane,
+                  getSchedule(walConfig.baseBackupSchedule()),
+                  Tuple.of(
+                      taskFactory.createPostgresBaseBackupTask(
+                          propStore, emailService, walConfig, timeout),
+                      taskFactory.createWalRetentionTask(propStore, walConfig)));
+            });
 
+    final var mongoLane =
+        workQueue.forHost(
+            "mongodb://%s:%d".formatted(propStore.getMongoHost(), propStore.getMongoPort()),
+            propStore.getExecutorMongoMaxConcurrent());
     backupConfig.mongodb().databases().stream()
-        .map(MongoDatabaseConfig::name)
-        .map(
-            dbName -> {
+        .forEach(
+            db -> {
               final var backupTask =
-                  taskFactory.createMongoBackupTask(propStore, emailService, dbName);
-              final var cleanupTask = taskFactory.createMongoCleanupTask(propStore, dbName);
-              return Tuple.of(backupTask, cleanupTask);
-            })
-        .forEach(this::scheduleTaskPair);
+                  taskFactory.createMongoBackupTask(
+                      propStore, catalog, emailService, db, getTimeout(db));
+              final var cleanupTask =
+                  taskFactory.createMongoCleanupTask(
+                      propStore,
+                      catalog,
+                      deleter,
+                      db.name(),
+                      Option.of(db.retention()).getOrElse(backupConfig.mongodb().retention()));
+              scheduleTaskPair(
+                  "mongodb/%s".formatted(db.name()),
+                  mongoLane,
+                  getSchedule(db.schedule()),
+                  Tuple.of(backupTask, cleanupTask));
+
+              Option.of(db.oplogIntervalSecs())
+                  .forEach(
+                      oplogIntervalSecs ->
+                          scheduleTaskPair(
+                              "mongodb/%s/oplog".formatted(db.name()),
+                              mongoLane,
+                              new IntervalSchedule(oplogIntervalSecs),
+                              Tuple.of(
+                                  taskFactory.createMongoOplogTask(
+                                      propStore, emailService, db, getTimeout(db)),
+                                  () -> {})));
+            });
+
+    if (isDedupEnabled()) {
+      timer.schedule(
+          "chunk-gc",
+          taskFactory.createChunkGarbageCollectionTask(propStore),
+          new IntervalSchedule(propStore.getExecutorIntervalSecs()),
+          staggerStrategy.getInitialDelaySecs("chunk-gc"),
+          workQueue.forHost("chunk-gc", 1));
+    }
+
+    if (propStore.getVerifyIntervalSecs() > 0) {
+      timer.schedule(
+          "verify",
+          taskFactory.createBackupVerificationTask(propStore, catalog, emailService),
+          new IntervalSchedule(propStore.getVerifyIntervalSecs()),
+          staggerStrategy.getInitialDelaySecs("verify"),
+          workQueue.forHost("verify", 1));
+    }
+
+    Option.of(backupConfig.restoreTest())
+        .forEach(
+            restoreTestConfig ->
+                timer.schedule(
+                    "restore-test",
+                    taskFactory.createRestoreTestTask(
+                        propStore, catalog, emailService, restoreTestConfig),
+                    getSchedule(restoreTestConfig.schedule()),
+                    staggerStrategy.getInitialDelaySecs("restore-test"),
+                    workQueue.forHost("restore-test", 1)));
+
+    timer.start();
+  }
+
+  private boolean isDedupEnabled() {
+    return backupConfig.postgres().databases().stream()
+            .anyMatch(db -> Boolean.TRUE.equals(db.dedup()))
+        || backupConfig.mongodb().databases().stream()
+            .anyMatch(db -> Boolean.TRUE.equals(db.dedup()));
+  }
+
+  private Schedule getSchedule(final ScheduleConfig scheduleConfig) {
+    // Schedules are validated when the config is read, so this should never fail here
+    return Schedules.of(scheduleConfig, propStore.getExecutorIntervalSecs()).get();
+  }
+
+  private Duration getTimeout(final PostgresDatabaseConfig db, final String schema) {
+    return Option.of(db.schemaTimeoutSecs())
+        .flatMap(timeouts -> Option.of(timeouts.get(schema)))
+        .orElse(Option.of(db.timeoutSecs()))
+        .orElse(Option.of(backupConfig.postgres().timeoutSecs()))
+        .map(Duration::ofSeconds)
+        .getOrElse(Duration.ofSeconds(BackupConstants.DEFAULT_POSTGRES_TIMEOUT_SECS));
+  }
+
+  private Duration getTimeout(final MongoDatabaseConfig db) {
+    return Option.of(db.timeoutSecs())
+        .orElse(Option.of(backupConfig.mongodb().timeoutSecs()))
+        .map(Duration::ofSeconds)
+        .getOrElse(Duration.ofSeconds(BackupConstants.DEFAULT_MONGO_TIMEOUT_SECS));
+  }
+
+  private void scheduleTaskPair(
+      final String taskKey,
+      final Executor lane,
+      final Schedule schedule,
+      final Tuple2<BackupTask, Runnable> taskTuple) {
+    final var pipeline = new BackupPipeline(taskKey, taskTuple._1, taskTuple._2, history);
+    timer.schedule(taskKey, pipeline, schedule, staggerStrategy.getInitialDelaySecs(taskKey), lane);
+  }
+
+  public Map<String, TaskRunState> getTaskRunStates() {
+    return timer.getRunStates();
   }
 
-  private void scheduleTaskPair(final Tuple2<Runnable, Runnable> taskTuple) {
-    final var backupTask = taskTuple._1;
-    final var cleanupTask = taskTuple._2;
-    executor.scheduleAtFixedRate(
-        backupTask, 0, propStore.getExecutorIntervalSecs(), TimeUnit.SECONDS);
-    executor.scheduleAtFixedRate(
-        cleanupTask, 0, propStore.getExecutorIntervalSecs(), TimeUnit.SECONDS);
+  // Anything still partial at startup was being written when the service last went down, and is
+  // never going to be completed
+  private void sweepPartials() {
+    Try.of(
+            () ->
+                DurableFiles.sweepPartials(
+                    Paths.get(propStore.getOutputRootDirectory()),
+                    Set.of(WalReceiverSupervisor.getWalDirectory(propStore))))
+        .onSuccess(
+            removed -> log.info("Removed {} incomplete backups from a previous run", removed))
+        .onFailure(ex -> log.error("Error removing incomplete backups from a previous run", ex));
   }
 
   public boolean stop() {
     return Try.of(
             () -> {
-              this.executor.shutdown();
-              return this.executor.awaitTermination(60000, TimeUnit.SECONDS);
+              timer.stop();
+              livenessLane.shutdown();
+              final var walStopped =
+                  walReceiver.map(receiver -> receiver.stop(60, TimeUnit.SECONDS)).getOrElse(true);
+              final var workStopped = workQueue.stop(60000, TimeUnit.SECONDS);
+              return deleter.stop(60, TimeUnit.SECONDS)
+                  && workStopped
+                  && livenessLane.awaitTermination(60, TimeUnit.SECONDS)
+                  && walStopped;
             })
         .recoverWith(
             ex -> {
@@ -0,0 +1,240 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-hashes stored backups against the checksum recorded when they were written. Each run reads at
+ * most {@code verify.max-bytes-per-run} at {@code verify.max-bytes-per-sec}, carrying on from where
+ * the previous run stopped, so every backup is eventually checked without saturating the disk. The
+ * position is kept next to the catalog so a restart does not start over.
+ */
+public class BackupVerificationTask implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(BackupVerificationTask.class);
+  private static final int READ_BUFFER_SIZE = 1024 * 1024;
+  public static final String POSITION_FILE = "verify-position.txt";
+
+  private final PropertyStore propStore;
+  private final BackupCatalog catalog;
+  private final EmailService emailService;
+
+  public BackupVerificationTask(
+      final PropertyStore propStore, final BackupCatalog catalog, final EmailService emailService) {
+    this.propStore = propStore;
+    this.catalog = catalog;
+    this.emailService = emailService;
+  }
+
+  @Override
+  public void run() {
+    log.debug("Running backup verification");
+    final var outputRoot = Paths.get(propStore.getOutputRootDirectory());
+    final var chunkStore = new ChunkStore(outputRoot);
+    final var throttle = new Throttle(propStore.getVerifyMaxBytesPerSec());
+    final var maxBytes = propStore.getVerifyMaxBytesPerRun();
+    final var positionFile = outputRoot.resolve(POSITION_FILE);
+    final var lastVerified = loadPosition(positionFile);
+
+    // Directory backups are written by the dump tools themselves, so they have no checksum
+    final var candidates =
+        List.ofAll(catalog.getAllEntries())
+            .filter(entry -> entry.checksum().isDefined())
+            .filter(entry -> BackupCatalog.STATUS_OK.equals(entry.status()))
+            .sorted(Comparator.comparing(BackupCatalog.Entry::relativePath));
+    final var start =
+        Math.max(
+            0, candidates.indexWhere(entry -> entry.relativePath().compareTo(lastVerified) > 0));
+    final var ordered = candidates.drop(start).appendAll(candidates.take(start));
+
+    var verified = 0;
+    var corrupt = 0;
+    var position = lastVerified;
+    for (final var entry : ordered) {
+      final var path = catalog.resolve(entry);
+      if (verified > 0 && throttle.getBytes() + estimateBytes(entry, path) > maxBytes) {
+        break;
+      }
+      final var result = verify(path, entry.checksum().get(), throttle, chunkStore);
+      verified++;
+      position = entry.relativePath();
+
+      // A backup that cleanup removed while it was being read is not corrupt
+      if (result.isFailure() && catalog.find(path).isDefined()) {
+        corrupt++;
+        catalog.setStatus(entry, BackupCatalog.STATUS_CORRUPT);
+        log.error(
+            String.format("Backup %s failed verification", entry.relativePath()),
+            result.getCause());
+        emailService.sendVerifyErrorAlertEmail(entry.relativePath(), result.getCause());
+      }
+    }
+
+    savePosition(positionFile, position)
+        .onFailure(ex -> log.warn("Unable to save the backup verification position", ex));
+    log.info(
+        "Finished verifying backups. Verified: {} Corrupt: {} Bytes: {} Remaining: {}",
+        verified,
+        corrupt,
+        throttle.getBytes(),
+        candidates.size() - verified);
+  }
+
+  // A manifest is tiny, but verifying it reads every chunk it lists
+  private static long estimateBytes(final BackupCatalog.Entry entry, final Path path) {
+    if (!path.getFileName().toString().endsWith(ChunkStore.MANIFEST_EXTENSION)) {
+      return entry.sizeBytes();
+    }
+    return entry.sizeBytes()
+        + Try.of(() -> ChunkStore.readRestoredSize(path)).getOrElse(entry.sizeBytes());
+  }
+
+  private static String loadPosition(final Path positionFile) {
+    if (!Files.exists(positionFile)) {
+      return "";
+    }
+    return Try.of(() -> Files.readString(positionFile, StandardCharsets.UTF_8).trim())
+        .onFailure(ex -> log.warn("Unable to read the backup verification position", ex))
+        .getOrElse("");
+  }
+
+  private static Try<Path> savePosition(final Path positionFile, final String position) {
+    final var partialFile =
+        positionFile.resolveSibling(positionFile.getFileName() + BackupConstants.PARTIAL_SUFFIX);
+    return Try.of(
+            () ->
+                Files.writeString(
+                    partialFile, position + System.lineSeparator(), StandardCharsets.UTF_8))
+        .flatMap(
+            path ->
+                Try.of(
+                    () ->
+                        Files.move(
+                            partialFile,
+                            positionFile,
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING)));
+  }
+
+  private Try<Path> verify(
+      final Path path,
+      final String expected,
+      final Throttle throttle,
+      final ChunkStore chunkStore) {
+    return Try.of(() -> hash(path, throttle))
+        .filter(
+            expected::equals,
+            actual ->
+                new BackupException(
+                    "Checksum mismatch for %s, expected %s but was %s"
+                        .formatted(path, expected, actual)))
+        .flatMap(
+            actual -> {
+              // The manifest checksum only covers the chunk list, restoring checks every chunk
+              if (path.getFileName().toString().endsWith(ChunkStore.MANIFEST_EXTENSION)) {
+                return Try.of(() -> chunkStore.restore(path, throttle.wrap()));
+              }
+              return Try.success(0L);
+            })
+        .map(bytes -> path);
+  }
+
+  private static String hash(final Path path, final Throttle throttle) throws Exception {
+    final var digest = MessageDigest.getInstance(AbstractBackupTask.CHECKSUM_ALGORITHM);
+    final var buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        throttle.acquire(buffer.remaining());
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static final class Throttle {
+    private final long bytesPerSec;
+    private final long startNanos = System.nanoTime();
+    private long bytes = 0;
+
+    private Throttle(final long bytesPerSec) {
+      this.bytesPerSec = bytesPerSec;
+    }
+
+    private long getBytes() {
+      return bytes;
+    }
+
+    // Counts every byte read, whether or not a rate limit applies
+    private void acquire(final long count) throws InterruptedException {
+      bytes += count;
+      if (bytesPerSec <= 0) {
+        return;
+      }
+      final var dueNanos = (long) (bytes * 1_000_000_000d / bytesPerSec);
+      final var waitNanos = dueNanos - (System.nanoTime() - startNanos);
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+    }
+
+    private OutputStream wrap() {
+      return new OutputStream() {
+        @Override
+        public void write(final int b) throws IOException {
+          write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] data, final int offset, final int length)
+            throws IOException {
+          try {
+            acquire(length);
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while verifying", ex);
+          }
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * The checksum of a backup file, kept next to it in the same format as {@code sha256sum} so it can
+ * be checked by hand with {@code sha256sum -c}.
+ */
+public class ChecksumSidecar {
+
+  private static final Pattern SIDECAR_PATTERN = Pattern.compile("^(?<checksum>[0-9a-f]{64}) .*$");
+
+  private ChecksumSidecar() {}
+
+  public static Path getPath(final Path artifact) {
+    return artifact.resolveSibling(artifact.getFileName() + BackupConstants.CHECKSUM_EXTENSION);
+  }
+
+  public static Try<Path> write(final Path artifact, final String checksum) {
+    final var sidecar = getPath(artifact);
+    final var partialSidecar = DurableFiles.partialPath(sidecar);
+    return Try.of(
+            () -> {
+              try (final var output = DurableFiles.newOutputStream(partialSidecar)) {
+                output.write(
+                    "%s  %s\n"
+                        .formatted(checksum, artifact.getFileName())
+                        .getBytes(StandardCharsets.UTF_8));
+              }
+              return DurableFiles.moveIntoPlace(partialSidecar, sidecar);
+            })
+        .onFailure(ex -> Try.run(() -> Files.deleteIfExists(partialSidecar)));
+  }
+
+  public static Option<String> read(final Path artifact) {
+    final var sidecar = getPath(artifact);
+    if (!Files.exists(sidecar)) {
+      return Option.none();
+    }
+    return Try.of(() -> Files.readString(sidecar, StandardCharsets.UTF_8).trim())
+        .toOption()
+        .map(SIDECAR_PATTERN::matcher)
+        .filter(matcher -> matcher.matches())
+        .map(matcher -> matcher.group("checksum"));
+  }
+
+  public static void delete(final Path artifact) {
+    Try.run(() -> Files.deleteIfExists(getPath(artifact)));
+  }
+}
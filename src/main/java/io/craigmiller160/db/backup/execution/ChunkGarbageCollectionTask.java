@@ -0,0 +1,89 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ChunkGarbageCollectionTask implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(ChunkGarbageCollectionTask.class);
+
+  private final PropertyStore propStore;
+
+  public ChunkGarbageCollectionTask(final PropertyStore propStore) {
+    this.propStore = propStore;
+  }
+
+  @Override
+  public void run() {
+    log.debug("Running chunk garbage collection");
+    final var outputRoot = Paths.get(propStore.getOutputRootDirectory());
+    final var chunkStore = new ChunkStore(outputRoot);
+    final var olderThan =
+        Instant.now().minus(Duration.ofHours(BackupConstants.CHUNK_GC_GRACE_HOURS));
+
+    Try.of(() -> chunkStore.deleteUnreferenced(() -> findReferencedChunks(outputRoot), olderThan))
+        .onSuccess(deleted -> log.info("Finished chunk garbage collection. Deleted: {}", deleted))
+        .onFailure(ex -> log.error("Error running chunk garbage collection", ex));
+  }
+
+  private Set<String> findReferencedChunks(final Path outputRoot) throws IOException {
+    final var referenced = new HashSet<String>();
+    for (final var engineDir : List.of(BackupConstants.POSTGRES_DIR, BackupConstants.MONGO_DIR)) {
+      final var dir = outputRoot.resolve(engineDir);
+      if (!Files.exists(dir)) {
+        continue;
+      }
+      try (final Stream<Path> files = Files.walk(dir)) {
+        // Partial manifests belong to backups that are still running, their chunks must stay
+        for (final var manifest : files.filter(ChunkGarbageCollectionTask::isManifest).toList()) {
+          referenced.addAll(
+              isPartial(manifest)
+                  ? ChunkStore.readPartialReferences(manifest)
+                  : ChunkStore.readReferences(manifest));
+        }
+      }
+    }
+    return referenced;
+  }
+
+  private static boolean isManifest(final Path path) {
+    return path.getFileName().toString().endsWith(ChunkStore.MANIFEST_EXTENSION) || isPartial(path);
+  }
+
+  private static boolean isPartial(final Path path) {
+    return path.getFileName()
+        .toString()
+        .endsWith(ChunkStore.MANIFEST_EXTENSION + BackupConstants.PARTIAL_SUFFIX);
+  }
+}
@@ -18,7 +18,14 @@
 
 package io.craigmiller160.db.backup.execution;
 
-public record CleanupResult(int successCount, int failureCount) {
+import java.time.Duration;
+
+public record CleanupResult(
+    int successCount, int failureCount, long filesDeleted, long bytesDeleted, Duration elapsed) {
+  public CleanupResult(final int successCount, final int failureCount) {
+    this(successCount, failureCount, 0, 0, Duration.ZERO);
+  }
+
   public int totalCount() {
     return successCount + failureCount;
   }
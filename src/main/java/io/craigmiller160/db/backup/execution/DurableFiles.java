@@ -0,0 +1,170 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helpers for writing backups so that a crash never leaves a truncated file under its final name.
+ * Output goes to a {@code .partial} path, is synced to disk once when it is complete, and is then
+ * renamed into place.
+ */
+public final class DurableFiles {
+
+  private static final Logger log = LoggerFactory.getLogger(DurableFiles.class);
+
+  private DurableFiles() {}
+
+  public static Path partialPath(final Path outputPath) {
+    return outputPath.resolveSibling(outputPath.getFileName() + BackupConstants.PARTIAL_SUFFIX);
+  }
+
+  // Synced once when the stream is closed instead of on every write
+  public static OutputStream newOutputStream(final Path file) throws IOException {
+    final var channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    return new FilterOutputStream(Channels.newOutputStream(channel)) {
+      @Override
+      public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        out.write(bytes, offset, length);
+      }
+
+      @Override
+      public void close() throws IOException {
+        try (channel) {
+          flush();
+          channel.force(true);
+        } finally {
+          super.close();
+        }
+      }
+    };
+  }
+
+  public static void syncTree(final Path root) throws IOException {
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+              throws IOException {
+            if (attrs.isRegularFile()) {
+              try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                channel.force(true);
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(final Path dir, final IOException ex)
+              throws IOException {
+            if (ex != null) {
+              throw ex;
+            }
+            syncDirectory(dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  public static void syncDirectory(final Path directory) {
+    // Not every platform can open a directory to sync it, in which case the rename is only as
+    // durable as the filesystem makes it
+    try (final var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (final IOException ex) {
+      log.debug("Unable to sync directory {}", directory, ex);
+    }
+  }
+
+  public static Path moveIntoPlace(final Path partialPath, final Path outputPath)
+      throws IOException {
+    Files.move(partialPath, outputPath, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory(outputPath.getParent());
+    return outputPath;
+  }
+
+  // Directories in skip are left alone, for tools like pg_receivewal that resume from their own
+  // partial files
+  public static int sweepPartials(final Path root, final Set<Path> skip) throws IOException {
+    final var removed = new AtomicInteger(0);
+    if (!Files.exists(root)) {
+      return 0;
+    }
+    final var skipped =
+        skip.stream().map(path -> path.toAbsolutePath().normalize()).collect(Collectors.toSet());
+
+    Files.walkFileTree(
+        root,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+              throws IOException {
+            if (skipped.contains(dir.toAbsolutePath().normalize())) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (isPartial(dir)) {
+              log.info("Removing incomplete backup directory {}", dir);
+              FileUtils.deleteDirectory(dir.toFile());
+              removed.incrementAndGet();
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+              throws IOException {
+            if (isPartial(file)) {
+              log.info("Removing incomplete backup file {}", file);
+              Files.deleteIfExists(file);
+              removed.incrementAndGet();
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return removed.get();
+  }
+
+  private static boolean isPartial(final Path path) {
+    return path.getFileName().toString().endsWith(BackupConstants.PARTIAL_SUFFIX);
+  }
+}
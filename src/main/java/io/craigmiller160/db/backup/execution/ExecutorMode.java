@@ -0,0 +1,40 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public enum ExecutorMode {
+  PLATFORM,
+  VIRTUAL;
+
+  public static ExecutorMode fromProperty(final String value) {
+    return valueOf(value.trim().toUpperCase());
+  }
+
+  public ExecutorService createWorkers(final int threadCount) {
+    return switch (this) {
+      case PLATFORM -> Executors.newFixedThreadPool(threadCount);
+      case VIRTUAL ->
+          Executors.newThreadPerTaskExecutor(
+              Thread.ofVirtual().name("backup-worker-", 0).factory());
+    };
+  }
+}
@@ -22,8 +22,18 @@ import io.craigmiller160.db.backup.properties.PropertyStore;
 import io.vavr.control.Try;
 import java.io.File;
 import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,10 +56,32 @@ public class LivenessCheckTask implements Runnable {
             fi
             """;
 
+  public static final String STATUS_FILE = "task-status.tsv";
+  private static final String STATUS_HEADER =
+      String.join(
+          "\t",
+          "task",
+          "state",
+          "last_start",
+          "last_end",
+          "last_duration_secs",
+          "runs",
+          "overruns",
+          "skipped",
+          "coalesced",
+          "overrun_ratio");
+
   private final PropertyStore propStore;
+  private final Supplier<Map<String, TaskRunState>> runStates;
 
-  public LivenessCheckTask(final PropertyStore propStore) {
+  public LivenessCheckTask(
+      final PropertyStore propStore, final Supplier<Map<String, TaskRunState>> runStates) {
     this.propStore = propStore;
+    this.runStates = runStates;
+  }
+
+  public LivenessCheckTask(final PropertyStore propStore) {
+    this(propStore, Map::of);
   }
 
   @Override
@@ -80,6 +112,47 @@ public class LivenessCheckTask implements Runnable {
             })
         .onSuccess(writer -> log.info("Successfully updated liveness check script"))
         .onFailure(ex -> log.error("Error updating liveness check script", ex));
+
+    writeStatus(outputDir.toPath().resolve(STATUS_FILE))
+        .onFailure(ex -> log.error("Error updating task status file", ex));
+  }
+
+  // A snapshot of every scheduled task's run state, for checking on the service from a shell
+  private Try<Path> writeStatus(final Path statusFile) {
+    final var lines =
+        new TreeMap<>(runStates.get())
+            .values().stream()
+                .map(
+                    state ->
+                        String.join(
+                            "\t",
+                            state.getName(),
+                            state.isInFlight() ? "running" : "idle",
+                            state.getLastStart().map(Instant::toString).getOrElse("-"),
+                            state.getLastEnd().map(Instant::toString).getOrElse("-"),
+                            state
+                                .getLastDuration()
+                                .map(duration -> String.valueOf(duration.toSeconds()))
+                                .getOrElse("-"),
+                            String.valueOf(state.getRunCount()),
+                            String.valueOf(state.getOverrunCount()),
+                            String.valueOf(state.getSkippedCount()),
+                            String.valueOf(state.getCoalescedCount()),
+                            String.format("%.2f", state.getOverrunRatio())));
+    final var content =
+        Stream.concat(Stream.of(STATUS_HEADER), lines).collect(Collectors.joining("\n", "", "\n"));
+    final var tempFile =
+        statusFile.resolveSibling(statusFile.getFileName() + BackupConstants.PARTIAL_SUFFIX);
+    return Try.of(
+            () -> {
+              Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+              return Files.move(
+                  tempFile,
+                  statusFile,
+                  StandardCopyOption.ATOMIC_MOVE,
+                  StandardCopyOption.REPLACE_EXISTING);
+            })
+        .onFailure(ex -> Try.run(() -> Files.deleteIfExists(tempFile)));
   }
 
   protected ZonedDateTime nowUtc() {
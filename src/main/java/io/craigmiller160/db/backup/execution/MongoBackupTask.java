@@ -18,14 +18,24 @@
 
 package io.craigmiller160.db.backup.execution;
 
+import io.craigmiller160.db.backup.compression.CompressionStage;
+import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.dedup.ChunkingOutputStream;
 import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.exception.BackupException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,30 +44,81 @@ public class MongoBackupTask extends AbstractBackupTask {
   private static final Logger log = LoggerFactory.getLogger(MongoBackupTask.class);
 
   public static final String OUTPUT_PATH_ARG = "-o";
+  public static final String ARCHIVE_ARG = "--archive";
+  public static final String ARCHIVE_EXTENSION = ".archive";
+  public static final String GZIP_ARG = "--gzip";
+  public static final String GZIP_EXTENSION = ".gz";
+  public static final String PARALLEL_COLLECTIONS_ARG = "--numParallelCollections=%d";
+  public static final String COLLECTION_ARG = "--collection=%s";
+  public static final String EXCLUDE_COLLECTION_ARG = "--excludeCollection=%s";
+  public static final String READ_PREFERENCE_ARG = "--readPreference=%s";
+  public static final String QUERY_ARG = "--query=%s";
   public static final String URI_TEMPLATE =
       "--uri=\"mongodb://%s:%s@%s:%d/%s?authSource=%s&tls=true\"";
   public static final String USE_TLS = "--ssl";
   public static final String ALLOW_INVALID_HOSTNAMES = "--sslAllowInvalidHostnames";
   public static final String ALLOW_INVALID_CERTS = "--sslAllowInvalidCertificates";
 
+  private final BackupCatalog catalog;
   private final String database;
+  private final CompressionStage compression;
+  private final boolean archive;
+  private final boolean gzip;
+  private final boolean dedup;
+  private final MongoDatabaseConfig databaseConfig;
 
   public MongoBackupTask(
       final PropertyStore propStore,
-      final String database,
+      final BackupCatalog catalog,
+      final MongoDatabaseConfig databaseConfig,
+      final Duration timeout,
       final ProcessProvider processProvider,
       final EmailService emailService) {
-    super(propStore, processProvider, emailService);
-    this.database = database;
+    super(propStore, processProvider, emailService, timeout);
+    this.catalog = catalog;
+    this.database = databaseConfig.name();
+    this.databaseConfig = databaseConfig;
+    this.compression = CompressionStage.of(databaseConfig.compression());
+    this.dedup = Option.of(databaseConfig.dedup()).getOrElse(false);
+    // Compression and dedup happen in-process, which requires mongodump to stream a single archive
+    this.archive =
+        Option.of(databaseConfig.archive()).getOrElse(false) || compression.isEnabled() || dedup;
+    this.gzip = Option.of(databaseConfig.gzip()).getOrElse(false);
+    if (gzip && compression.isEnabled()) {
+      log.warn(
+          "MongoDB Database {} has both gzip and compression configured, only compression will be used",
+          database);
+    }
   }
 
   public MongoBackupTask(
-      final PropertyStore propStore, final String database, final EmailService emailService) {
-    this(propStore, database, ProcessProvider.DEFAULT, emailService);
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final MongoDatabaseConfig databaseConfig,
+      final Duration timeout,
+      final EmailService emailService) {
+    this(propStore, catalog, databaseConfig, timeout, ProcessProvider.DEFAULT, emailService);
+  }
+
+  private boolean useGzip() {
+    return gzip && !compression.isEnabled() && !dedup;
+  }
+
+  private String getOutputName(final String timestamp) {
+    if (!archive) {
+      return timestamp;
+    }
+    if (useGzip()) {
+      return timestamp + ARCHIVE_EXTENSION + GZIP_EXTENSION;
+    }
+    if (dedup) {
+      return timestamp + ARCHIVE_EXTENSION + ChunkStore.MANIFEST_EXTENSION;
+    }
+    return timestamp + ARCHIVE_EXTENSION + compression.getExtension();
   }
 
   @Override
-  public void run() {
+  public Try<Long> execute() {
     final var host = propStore.getMongoHost();
     final var port = propStore.getMongoPort();
     final var user = propStore.getMongoUser();
@@ -65,33 +126,54 @@ public class MongoBackupTask extends AbstractBackupTask {
     final var authDb = propStore.getMongoAuthDb();
 
     final var uriArg = String.format(URI_TEMPLATE, user, password, host, port, database, authDb);
-    final var timestamp =
-        BackupConstants.FORMAT.format(ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)));
+    final var now = ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)).withNano(0);
+    final var timestamp = BackupConstants.FORMAT.format(now);
+    final var outputName = getOutputName(timestamp);
     final var outputPath =
         Paths.get(
-            propStore.getOutputRootDirectory(), BackupConstants.MONGO_DIR, database, timestamp);
-
-    final var command =
-        new String[] {
-          propStore.getMongodumpCommand(),
-          uriArg,
-          USE_TLS,
-          ALLOW_INVALID_HOSTNAMES,
-          ALLOW_INVALID_CERTS,
-          OUTPUT_PATH_ARG,
-          outputPath.toString()
-        };
-    final var environment = new HashMap<String, String>();
+            propStore.getOutputRootDirectory(), BackupConstants.MONGO_DIR, database, outputName);
 
-    log.debug(
-        "Running MongoDB backup for Database {} Command: {}", database, Arrays.toString(command));
+    final var environment = new HashMap<String, String>();
 
-    Try.of(() -> processProvider.provide(command, environment))
-        .flatMap(this::readProcess)
+    return validateDedup()
+        .map(valid -> getTuningArgs())
+        .map(
+            tuningArgs -> {
+              final var command = new ArrayList<String>();
+              command.add(propStore.getMongodumpCommand());
+              command.add(uriArg);
+              command.add(USE_TLS);
+              command.add(ALLOW_INVALID_HOSTNAMES);
+              command.add(ALLOW_INVALID_CERTS);
+              command.addAll(tuningArgs);
+              if (useGzip()) {
+                command.add(GZIP_ARG);
+              }
+              if (archive) {
+                command.add(ARCHIVE_ARG);
+              } else {
+                command.add(OUTPUT_PATH_ARG);
+                command.add(partialPath(outputPath).toString());
+              }
+              final var commandArray = command.toArray(String[]::new);
+              log.debug(
+                  "Running MongoDB backup for Database {} Command: {}",
+                  database,
+                  Arrays.toString(commandArray));
+              return commandArray;
+            })
+        .flatMap(command -> Try.of(() -> processProvider.provide(command, environment)))
+        .flatMap(process -> writeOutput(process, outputPath))
+        .flatMap(
+            artifact ->
+                catalog
+                    .register(BackupCatalog.mongoTarget(database), now, artifact)
+                    .map(entry -> artifact))
+        .map(BackupArtifact::sizeBytes)
         .onSuccess(
-            content ->
+            bytesWritten ->
                 log.info(
-                    "Successfully wrote MongoDB backup for Database {} to directory {}",
+                    "Successfully wrote MongoDB backup for Database {} to {}",
                     database,
                     outputPath.toString()))
         .onFailure(
@@ -101,4 +183,46 @@ public class MongoBackupTask extends AbstractBackupTask {
               emailService.sendMongoErrorAlertEmail(database, ex);
             });
   }
+
+  private Try<Boolean> validateDedup() {
+    if (dedup && compression.isEnabled()) {
+      return Try.failure(
+          new BackupException(
+              String.format(
+                  "Dedup storage cannot be combined with compression for Database %s", database)));
+    }
+    return Try.success(dedup);
+  }
+
+  // Tuning options are validated when the config is read
+  private List<String> getTuningArgs() {
+    final var includeCollections =
+        Option.of(databaseConfig.includeCollections()).getOrElse(List.of());
+    final var excludeCollections =
+        Option.of(databaseConfig.excludeCollections()).getOrElse(List.of());
+    final var query = Option.of(databaseConfig.query());
+
+    final var args = new ArrayList<String>();
+    Option.of(databaseConfig.numParallelCollections())
+        .forEach(count -> args.add(String.format(PARALLEL_COLLECTIONS_ARG, count)));
+    Option.of(databaseConfig.readPreference())
+        .forEach(readPreference -> args.add(String.format(READ_PREFERENCE_ARG, readPreference)));
+    includeCollections.forEach(collection -> args.add(String.format(COLLECTION_ARG, collection)));
+    excludeCollections.forEach(
+        collection -> args.add(String.format(EXCLUDE_COLLECTION_ARG, collection)));
+    query.forEach(filter -> args.add(String.format(QUERY_ARG, filter)));
+    return args;
+  }
+
+  private Try<BackupArtifact> writeOutput(final Process process, final Path outputPath) {
+    if (dedup) {
+      final var chunkStore = new ChunkStore(Paths.get(propStore.getOutputRootDirectory()));
+      return readProcess(
+          process, outputPath, output -> new ChunkingOutputStream(chunkStore, output));
+    }
+    if (archive) {
+      return readProcess(process, outputPath, compression::wrap);
+    }
+    return readProcessIntoDirectory(process, outputPath);
+  }
 }
@@ -18,15 +18,21 @@
 
 package io.craigmiller160.db.backup.execution;
 
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
 import io.vavr.collection.Stream;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import org.apache.commons.io.FileUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,76 +41,147 @@ public class MongoCleanupTask implements Runnable {
   private static final Logger log = LoggerFactory.getLogger(MongoCleanupTask.class);
 
   private final PropertyStore propStore;
+  private final BackupCatalog catalog;
+  private final ParallelDeleter deleter;
   private final String database;
+  private final Option<RetentionPolicy> retention;
 
-  public MongoCleanupTask(final PropertyStore propStore, final String database) {
+  public MongoCleanupTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database,
+      final RetentionConfig retention) {
     this.propStore = propStore;
+    this.catalog = catalog;
+    this.deleter = deleter;
     this.database = database;
+    this.retention = RetentionPolicy.of(retention);
+  }
+
+  public MongoCleanupTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database) {
+    this(propStore, catalog, deleter, database, null);
   }
 
   @Override
   public void run() {
+    cleanup();
+  }
+
+  public CompletableFuture<Void> cleanup() {
     log.debug("Running cleanup for MongoDB Database {}", database);
 
     final var targetDir =
         Paths.get(propStore.getOutputRootDirectory(), BackupConstants.MONGO_DIR, database);
-    if (!Files.exists(targetDir)) {
-      log.info(
-          "Directory to cleanup MongoDB files does not exist: {}",
-          targetDir.toAbsolutePath().toString());
-      return;
-    }
-
+    final var target = BackupCatalog.mongoTarget(database);
     final var oldestAllowed =
         ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE))
             .minusDays(propStore.getOutputCleanupAgeDays());
 
-    Try.of(
+    return deleter
+        .delete(
+            retention
+                .map(policy -> policy.selectExpired(catalog.getEntries(target)))
+                .getOrElse(() -> catalog.getExpired(target, oldestAllowed)),
+            catalog::resolve,
+            entry -> {
+              catalog.remove(entry);
+              ChecksumSidecar.delete(catalog.resolve(entry));
+            })
+        .handle(
+            (result, ex) -> {
+              if (ex != null) {
+                log.error(
+                    String.format("Error attempting to cleanup MongoDB Database %s", database), ex);
+                return null;
+              }
+              log.info(
+                  "Finished cleaning up MongoDB Database {}. Success: {} Failure: {} Files: {} Bytes: {} Time: {}ms",
+                  database,
+                  result.successCount(),
+                  result.failureCount(),
+                  result.filesDeleted(),
+                  result.bytesDeleted(),
+                  result.elapsed().toMillis());
+              return null;
+            })
+        // The segments to keep depend on which full backups are left
+        .thenCompose(v -> cleanupOplogSegments(targetDir, target));
+  }
+
+  private CompletableFuture<Void> cleanupOplogSegments(final Path targetDir, final String target) {
+    final var oplogDir = targetDir.resolve(BackupConstants.OPLOG_DIR);
+    if (!Files.exists(oplogDir)) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final var fullBackups = catalog.getEntries(target);
+    if (fullBackups.isEmpty()) {
+      log.info(
+          "No full MongoDB backups remain for Database {}, keeping all oplog segments", database);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    // Without a retention policy every segment since the oldest full backup is kept, so any
+    // point since then can be restored. With one, older full backups only keep the segments
+    // covering their own dump, which replay needs to make them consistent, and continuous
+    // coverage starts at the newest full backup.
+    final var newestStart = fullBackups.get(fullBackups.size() - 1).epochSecond();
+    final var neededWindows = new ArrayList<Tuple2<Long, Long>>();
+    if (retention.isEmpty()) {
+      neededWindows.add(Tuple.of(fullBackups.get(0).epochSecond(), Long.MAX_VALUE));
+    } else {
+      // A dump whose end was not recorded (rebuilt catalog entries) is assumed to have run until
+      // the next full backup started
+      for (var index = 0; index < fullBackups.size(); index++) {
+        final var entry = fullBackups.get(index);
+        final var nextStart =
+            index + 1 < fullBackups.size()
+                ? fullBackups.get(index + 1).epochSecond()
+                : Long.MAX_VALUE;
+        neededWindows.add(
+            Tuple.of(entry.epochSecond(), entry.completedEpochSecond().getOrElse(nextStart)));
+      }
+      neededWindows.add(Tuple.of(newestStart, Long.MAX_VALUE));
+    }
+
+    return Try.of(
             () ->
-                Stream.ofAll(Files.list(targetDir))
+                Stream.ofAll(Files.list(oplogDir))
                     .filter(
-                        path -> {
-                          final var fileName = path.getFileName().toString();
-                          final var timestamp =
-                              LocalDateTime.parse(fileName, BackupConstants.FORMAT)
-                                  .atZone(ZoneId.of(BackupConstants.TIME_ZONE));
-                          return oldestAllowed.compareTo(timestamp) > 0;
-                        })
-                    .foldLeft(
-                        new CleanupResult(0, 0),
-                        (result, path) ->
-                            Try.of(
-                                    () -> {
-                                      FileUtils.deleteDirectory(path.toFile());
-                                      return path;
-                                    })
-                                .map(
-                                    p ->
-                                        new CleanupResult(
-                                            result.successCount() + 1, result.failureCount()))
-                                .recoverWith(
-                                    ex -> {
-                                      log.debug(
-                                          String.format(
-                                              "Failed to cleanup MongoDB directory %s for Database %s",
-                                              path, database),
-                                          ex);
-                                      return Try.success(
-                                          new CleanupResult(
-                                              result.successCount(), result.failureCount() + 1));
-                                    })
-                                .get()))
-        .onSuccess(
-            result ->
-                log.info(
-                    "Finished cleaning up MongoDB Database {}. Success: {} Failure: {}",
-                    database,
-                    result.successCount(),
-                    result.failureCount()))
-        .onFailure(
-            ex ->
+                        path ->
+                            MongoOplogTask.parseSegmentRange(path.getFileName().toString())
+                                .exists(
+                                    range ->
+                                        neededWindows.stream()
+                                            .noneMatch(
+                                                window ->
+                                                    range._2 > window._1 && range._1 <= window._2)))
+                    .toJavaList())
+        .fold(CompletableFuture::<List<Path>>failedFuture, CompletableFuture::completedFuture)
+        .thenCompose(segments -> deleter.delete(segments, path -> path, path -> {}))
+        .handle(
+            (result, ex) -> {
+              if (ex != null) {
                 log.error(
-                    String.format("Error attempting to cleanup MongoDB Database %s", database),
-                    ex));
+                    String.format(
+                        "Error attempting to cleanup MongoDB oplog segments for Database %s",
+                        database),
+                    ex);
+                return null;
+              }
+              log.info(
+                  "Finished cleaning up MongoDB oplog segments for Database {}. Success: {} Failure: {} Files: {} Time: {}ms",
+                  database,
+                  result.successCount(),
+                  result.failureCount(),
+                  result.filesDeleted(),
+                  result.elapsed().toMillis());
+              return null;
+            });
   }
 }
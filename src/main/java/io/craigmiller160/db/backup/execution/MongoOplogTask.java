@@ -0,0 +1,268 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.Stream;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MongoOplogTask extends AbstractBackupTask {
+
+  private static final Logger log = LoggerFactory.getLogger(MongoOplogTask.class);
+
+  public static final String OPLOG_DATABASE = "local";
+  public static final String OPLOG_COLLECTION_ARG = "--collection=oplog.rs";
+  public static final String SEGMENT_NAME = "oplog_%d_%d";
+  // Operations inside transactions are recorded as applyOps entries on admin.$cmd
+  public static final String OPLOG_QUERY =
+      """
+      {"$or":[{"ns":{"$regex":"^%1$s\\\\."}},{"o.applyOps.ns":{"$regex":"^%1$s\\\\."}}],\
+      "ts":{"$gte":{"$timestamp":{"t":%2$d,"i":0}},"$lt":{"$timestamp":{"t":%3$d,"i":0}}}}""";
+
+  public static final String OLDEST_ENTRY_QUERY =
+      "db.getSiblingDB('local').oplog.rs.find({}, {ts: 1}).sort({$natural: 1}).limit(1).next().ts.getHighBits()";
+  public static final String SHELL_USE_TLS = "--tls";
+  public static final String SHELL_ALLOW_INVALID_HOSTNAMES = "--tlsAllowInvalidHostnames";
+  public static final String SHELL_ALLOW_INVALID_CERTS = "--tlsAllowInvalidCertificates";
+  public static final String SHELL_QUIET_ARG = "--quiet";
+  public static final String SHELL_EVAL_ARG = "--eval";
+
+  private static final Pattern SEGMENT_PATTERN =
+      Pattern.compile("^oplog_(?<start>\\d+)_(?<end>\\d+)$");
+
+  private final String database;
+
+  public MongoOplogTask(
+      final PropertyStore propStore,
+      final MongoDatabaseConfig databaseConfig,
+      final Duration timeout,
+      final ProcessProvider processProvider,
+      final EmailService emailService) {
+    super(propStore, processProvider, emailService, timeout);
+    this.database = databaseConfig.name();
+  }
+
+  public MongoOplogTask(
+      final PropertyStore propStore,
+      final MongoDatabaseConfig databaseConfig,
+      final Duration timeout,
+      final EmailService emailService) {
+    this(propStore, databaseConfig, timeout, ProcessProvider.DEFAULT, emailService);
+  }
+
+  public static Option<Tuple2<Long, Long>> parseSegmentRange(final String fileName) {
+    return Option.of(SEGMENT_PATTERN.matcher(fileName))
+        .filter(matcher -> matcher.matches())
+        .map(
+            matcher ->
+                Tuple.of(
+                    Long.parseLong(matcher.group("start")), Long.parseLong(matcher.group("end"))));
+  }
+
+  public static Option<Long> parseSegmentEnd(final String fileName) {
+    return parseSegmentRange(fileName).map(range -> range._2);
+  }
+
+  static Option<Long> findNewestFullBackupStart(final Path databaseDir) {
+    return Try.of(
+            () ->
+                Stream.ofAll(Files.list(databaseDir))
+                    .flatMap(path -> BackupFileNames.parseTimestamp(path.getFileName().toString()))
+                    .map(timestamp -> timestamp.toEpochSecond())
+                    .max())
+        .getOrElse(Option.none());
+  }
+
+  // The query is JSON, so the backslash that escapes each regex character is itself escaped
+  static String escapeRegex(final String value) {
+    return value
+        .chars()
+        .mapToObj(
+            character ->
+                Character.isLetterOrDigit(character) || character == '_'
+                    ? String.valueOf((char) character)
+                    : "\\\\" + (char) character)
+        .collect(Collectors.joining());
+  }
+
+  private static Option<Long> findLastSegmentEnd(final Path oplogDir) {
+    if (!Files.exists(oplogDir)) {
+      return Option.none();
+    }
+    return Try.of(
+            () ->
+                Stream.ofAll(Files.list(oplogDir))
+                    .flatMap(path -> parseSegmentEnd(path.getFileName().toString()))
+                    .max())
+        .getOrElse(Option.none());
+  }
+
+  @Override
+  public Try<Long> execute() {
+    final var databaseDir =
+        Paths.get(propStore.getOutputRootDirectory(), BackupConstants.MONGO_DIR, database);
+    final var oplogDir = databaseDir.resolve(BackupConstants.OPLOG_DIR);
+
+    // Segments are contiguous, so each one starts where the last one ended. The first one
+    // starts with the newest full backup, which oplog replay brings up to a consistent state.
+    final var fullBackupStart = findNewestFullBackupStart(databaseDir);
+    final var start = findLastSegmentEnd(oplogDir).orElse(fullBackupStart);
+    if (start.isEmpty()) {
+      log.info(
+          "No full MongoDB backup exists yet for Database {}, skipping oplog segment", database);
+      return Try.success(0L);
+    }
+
+    // Stay behind the present so writes still in flight are not cut in half between segments
+    final var end = Instant.now().getEpochSecond() - BackupConstants.OPLOG_SETTLE_SECS;
+    if (end <= start.get()) {
+      return Try.success(0L);
+    }
+
+    return findOldestOplogEntry()
+        .flatMap(oldest -> checkCoverage(start.get(), oldest, fullBackupStart))
+        .flatMap(from -> dumpSegment(oplogDir, from, end))
+        .onFailure(
+            ex -> {
+              log.error(
+                  String.format("Error running MongoDB oplog backup for Database %s", database),
+                  ex);
+              emailService.sendMongoErrorAlertEmail(database, ex);
+            });
+  }
+
+  private Try<Long> findOldestOplogEntry() {
+    final var command =
+        new String[] {
+          propStore.getMongoshCommand(),
+          oplogUri(),
+          SHELL_USE_TLS,
+          SHELL_ALLOW_INVALID_HOSTNAMES,
+          SHELL_ALLOW_INVALID_CERTS,
+          SHELL_QUIET_ARG,
+          SHELL_EVAL_ARG,
+          OLDEST_ENTRY_QUERY
+        };
+    final var output = new ByteArrayOutputStream();
+    return processRunner
+        .run(command, new HashMap<>(), Option.none(), output)
+        .mapTry(stderr -> Long.parseLong(output.toString(StandardCharsets.UTF_8).trim()))
+        .recoverWith(
+            NumberFormatException.class,
+            ex ->
+                Try.failure(
+                    new BackupException(
+                        "Unable to read the oldest oplog entry for Database %s".formatted(database),
+                        ex)));
+  }
+
+  // Entries older than the oldest one left in the oplog are gone, so a segment starting before it
+  // would silently miss writes
+  private Try<Long> checkCoverage(
+      final long start, final long oldest, final Option<Long> fullBackupStart) {
+    if (oldest <= start) {
+      return Try.success(start);
+    }
+
+    final var message =
+        "The oplog for Database %s was truncated, its oldest entry at %d is after the segment start at %d"
+            .formatted(database, oldest, start);
+    final var resumeFrom = fullBackupStart.filter(fullStart -> fullStart >= oldest);
+    if (resumeFrom.isEmpty()) {
+      return Try.failure(
+          new BackupException(message + ". Segments resume after the next full backup."));
+    }
+
+    // A full backup taken after the truncation covers the gap from here on, only point in time
+    // restores from older full backups lose the gap
+    log.warn("{}. Resuming segments from the full backup at {}", message, resumeFrom.get());
+    emailService.sendMongoErrorAlertEmail(
+        database,
+        new BackupException(
+            "%s. Segments resume from the full backup at %d".formatted(message, resumeFrom.get())));
+    return Try.success(resumeFrom.get());
+  }
+
+  private Try<Long> dumpSegment(final Path oplogDir, final long start, final long end) {
+    if (end <= start) {
+      return Try.success(0L);
+    }
+
+    final var outputDir = oplogDir.resolve(SEGMENT_NAME.formatted(start, end));
+    final var command =
+        new String[] {
+          propStore.getMongodumpCommand(),
+          oplogUri(),
+          MongoBackupTask.USE_TLS,
+          MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
+          MongoBackupTask.ALLOW_INVALID_CERTS,
+          OPLOG_COLLECTION_ARG,
+          String.format(
+              MongoBackupTask.QUERY_ARG, OPLOG_QUERY.formatted(escapeRegex(database), start, end)),
+          MongoBackupTask.GZIP_ARG,
+          MongoBackupTask.OUTPUT_PATH_ARG,
+          partialPath(outputDir).toString()
+        };
+
+    log.debug(
+        "Running MongoDB oplog backup for Database {} Command: {}",
+        database,
+        Arrays.toString(command));
+
+    return Try.of(() -> processProvider.provide(command, new HashMap<>()))
+        .flatMap(process -> readProcessIntoDirectory(process, outputDir))
+        .map(BackupArtifact::sizeBytes)
+        .onSuccess(
+            bytesWritten ->
+                log.info(
+                    "Successfully wrote MongoDB oplog segment for Database {} to {}",
+                    database,
+                    outputDir));
+  }
+
+  private String oplogUri() {
+    return String.format(
+        MongoBackupTask.URI_TEMPLATE,
+        propStore.getMongoUser(),
+        propStore.getMongoPassword(),
+        propStore.getMongoHost(),
+        propStore.getMongoPort(),
+        OPLOG_DATABASE,
+        propStore.getMongoAuthDb());
+  }
+}
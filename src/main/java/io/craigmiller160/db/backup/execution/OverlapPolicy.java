@@ -0,0 +1,31 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+public enum OverlapPolicy {
+  // Drop a trigger that fires while the previous run is still in flight
+  SKIP,
+  // Remember at most one trigger that fired while in flight, and run it as soon as the current run
+  // finishes
+  COALESCE;
+
+  public static OverlapPolicy fromProperty(final String value) {
+    return valueOf(value.trim().toUpperCase());
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes backup files and directory trees in the background over a small pool. Every file and
+ * directory removal draws from one rate limit shared by all cleanup tasks, so a large cleanup
+ * cannot starve the disk while backups are being written.
+ */
+public class ParallelDeleter {
+
+  private static final Logger log = LoggerFactory.getLogger(ParallelDeleter.class);
+  private static final int QUEUED_FILES_PER_THREAD = 64;
+
+  private final ExecutorService workers;
+  // Cleanups are walked one at a time, each file being handed to the workers as it is found
+  private final ExecutorService coordinator;
+  private final Semaphore queuedFiles;
+  private final int maxQueuedFiles;
+  private final long intervalNanos;
+  private long nextSlotNanos = 0;
+
+  public ParallelDeleter(final int threadCount, final int maxDeletesPerSec) {
+    final var threads = Math.max(1, threadCount);
+    this.workers =
+        Executors.newFixedThreadPool(
+            threads, Thread.ofPlatform().name("cleanup-worker-", 0).daemon().factory());
+    this.coordinator =
+        Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("cleanup-coordinator").daemon().factory());
+    this.maxQueuedFiles = threads * QUEUED_FILES_PER_THREAD;
+    this.queuedFiles = new Semaphore(maxQueuedFiles);
+    this.intervalNanos = maxDeletesPerSec > 0 ? TimeUnit.SECONDS.toNanos(1) / maxDeletesPerSec : 0;
+  }
+
+  public static ParallelDeleter of(final PropertyStore propStore) {
+    return new ParallelDeleter(
+        propStore.getOutputCleanupThreadCount(), propStore.getOutputCleanupMaxDeletesPerSec());
+  }
+
+  // Items that no longer exist count as removed, the callback only runs for items removed
+  // completely
+  public <T> CompletableFuture<CleanupResult> delete(
+      final Iterable<T> items, final Function<T, Path> toPath, final Consumer<T> onDeleted) {
+    try {
+      return CompletableFuture.supplyAsync(() -> deleteAll(items, toPath, onDeleted), coordinator);
+    } catch (final RejectedExecutionException ex) {
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  // Cleanups that have not started yet are dropped, the next run picks them up again
+  public boolean stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+    coordinator.shutdownNow();
+    final var coordinatorStopped = coordinator.awaitTermination(timeout, unit);
+    workers.shutdown();
+    return workers.awaitTermination(timeout, unit) && coordinatorStopped;
+  }
+
+  private <T> CleanupResult deleteAll(
+      final Iterable<T> items, final Function<T, Path> toPath, final Consumer<T> onDeleted) {
+    final var start = System.nanoTime();
+    var successCount = 0;
+    var failureCount = 0;
+    var filesDeleted = 0L;
+    var bytesDeleted = 0L;
+    for (final var item : items) {
+      final var deleted = deleteTree(toPath.apply(item));
+      if (deleted.isSuccess()) {
+        onDeleted.accept(item);
+        successCount++;
+        filesDeleted += deleted.get().files();
+        bytesDeleted += deleted.get().bytes();
+      } else {
+        log.debug("Failed to delete {}", toPath.apply(item), deleted.getCause());
+        failureCount++;
+      }
+    }
+
+    return new CleanupResult(
+        successCount,
+        failureCount,
+        filesDeleted,
+        bytesDeleted,
+        Duration.ofNanos(System.nanoTime() - start));
+  }
+
+  private Try<Deleted> deleteTree(final Path root) {
+    final var files = new AtomicLong(0);
+    final var bytes = new AtomicLong(0);
+    final var failure = new AtomicReference<Throwable>();
+    final var directories = new ArrayList<Path>();
+    final var walked =
+        Try.of(
+                () ->
+                    Files.walkFileTree(
+                        root,
+                        new SimpleFileVisitor<>() {
+                          @Override
+                          public FileVisitResult visitFile(
+                              final Path file, final BasicFileAttributes attrs) {
+                            queuedFiles.acquireUninterruptibly();
+                            try {
+                              workers.execute(
+                                  () -> {
+                                    try {
+                                      throttle();
+                                      Files.deleteIfExists(file);
+                                      files.incrementAndGet();
+                                      bytes.addAndGet(attrs.size());
+                                    } catch (final Exception ex) {
+                                      failure.compareAndSet(null, ex);
+                                    } finally {
+                                      queuedFiles.release();
+                                    }
+                                  });
+                            } catch (final RejectedExecutionException ex) {
+                              queuedFiles.release();
+                              throw ex;
+                            }
+                            return FileVisitResult.CONTINUE;
+                          }
+
+                          @Override
+                          public FileVisitResult postVisitDirectory(
+                              final Path dir, final IOException ex) throws IOException {
+                            if (ex != null) {
+                              throw ex;
+                            }
+                            directories.add(dir);
+                            return FileVisitResult.CONTINUE;
+                          }
+                        }))
+            .map(path -> root)
+            .recover(NoSuchFileException.class, ex -> root);
+
+    // Every queued delete is waited on, even after a failure, so none is still running once the
+    // directories are removed
+    queuedFiles.acquireUninterruptibly(maxQueuedFiles);
+    queuedFiles.release(maxQueuedFiles);
+
+    return walked
+        .flatMap(
+            path ->
+                Option.of(failure.get())
+                    .map(ex -> Try.<Path>failure(ex))
+                    .getOrElse(Try.success(path)))
+        .flatMap(path -> deleteDirectories(directories))
+        .map(v -> new Deleted(files.get(), bytes.get()));
+  }
+
+  private Try<Void> deleteDirectories(final List<Path> directories) {
+    // Directories are recorded after their contents, so parents are always removed last
+    return Try.run(
+        () -> {
+          for (final var directory : directories) {
+            throttle();
+            Files.deleteIfExists(directory);
+          }
+        });
+  }
+
+  private void throttle() throws InterruptedException {
+    if (intervalNanos == 0) {
+      return;
+    }
+    final long waitNanos;
+    synchronized (this) {
+      final var now = System.nanoTime();
+      final var slot = Math.max(now, nextSlotNanos);
+      nextSlotNanos = slot + intervalNanos;
+      waitNanos = slot - now;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  private record Deleted(long files, long bytes) {}
+}
@@ -18,14 +18,27 @@
 
 package io.craigmiller160.db.backup.execution;
 
+import io.craigmiller160.db.backup.compression.CompressionStage;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.PostgresDumpFormat;
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.dedup.ChunkingOutputStream;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.exception.BackupException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 import org.slf4j.Logger;
@@ -39,66 +52,125 @@ public class PostgresBackupTask extends AbstractBackupTask {
   public static final String PORT_ARG = "-p";
   public static final String USER_ARG = "-U";
   public static final String USE_INSERT_STATEMENTS = "--column-inserts";
+  public static final String FORMAT_ARG = "-F";
+  public static final String JOBS_ARG = "-j";
+  public static final String FILE_ARG = "-f";
+  public static final String COMPRESS_ARG = "-Z";
+  public static final String PSQL_CMD = "psql";
+  public static final String DATABASE_ARG = "-d";
+  public static final String QUERY_ARG = "-c";
+  public static final String[] PSQL_QUIET_ARGS = {"-X", "-A", "-t", "-v", "ON_ERROR_STOP=1"};
+
+  // Row counters catch data changes, the catalog entries catch DDL, grants and TRUNCATE
+  // (which rewrites the relfilenode without touching the counters), and the server start
+  // and stats reset times make sure a reset of the counters is never mistaken for no change.
+  static final String FINGERPRINT_QUERY =
+      """
+      SELECT md5(coalesce(string_agg(entry, '|' ORDER BY entry), '')) FROM (
+        SELECT 'T:' || relname || ':' || n_tup_ins || ':' || n_tup_upd || ':' || n_tup_del AS entry
+          FROM pg_stat_user_tables WHERE schemaname = %1$s
+        UNION ALL
+        SELECT 'C:' || c.relname || ':' || c.relkind || ':' || c.relfilenode || ':'
+            || coalesce(c.relacl::text, '') || ':' || coalesce(a.attname, '') || ':'
+            || coalesce(format_type(a.atttypid, a.atttypmod), '') || ':'
+            || coalesce(a.attnotnull::text, '') || ':' || coalesce(pg_get_expr(d.adbin, d.adrelid), '')
+          FROM pg_class c
+          JOIN pg_namespace n ON n.oid = c.relnamespace
+          LEFT JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped
+          LEFT JOIN pg_attrdef d ON d.adrelid = c.oid AND d.adnum = a.attnum
+          WHERE n.nspname = %1$s
+        UNION ALL
+        SELECT 'K:' || conname || ':' || pg_get_constraintdef(oid)
+          FROM pg_constraint WHERE connamespace = %1$s::regnamespace
+        UNION ALL
+        SELECT 'I:' || indexname || ':' || indexdef FROM pg_indexes WHERE schemaname = %1$s
+        UNION ALL
+        SELECT 'V:' || viewname || ':' || md5(definition) FROM pg_views WHERE schemaname = %1$s
+        UNION ALL
+        SELECT 'S:' || sequencename || ':' || coalesce(last_value, 0)
+          FROM pg_sequences WHERE schemaname = %1$s
+        UNION ALL
+        SELECT 'F:' || p.oid::regprocedure || ':' || md5(coalesce(p.prosrc, ''))
+            || ':' || coalesce(p.proacl::text, '')
+          FROM pg_proc p WHERE p.pronamespace = %1$s::regnamespace
+        UNION ALL
+        SELECT 'R:' || pg_postmaster_start_time() || ':' || coalesce(stats_reset::text, '')
+          FROM pg_stat_database WHERE datname = current_database()
+      ) entries
+      """;
 
   private static final Logger log = LoggerFactory.getLogger(PostgresBackupTask.class);
   public static final String PASSWORD_ENV = "PGPASSWORD";
 
+  private final BackupCatalog catalog;
   private final String database;
   private final String schema;
+  private final PostgresDumpFormat format;
+  private final Option<Integer> jobs;
+  private final CompressionStage compression;
+  private final boolean dedup;
+  private final boolean skipUnchanged;
 
   public PostgresBackupTask(
       final PropertyStore propStore,
-      final String database,
+      final BackupCatalog catalog,
+      final PostgresDatabaseConfig databaseConfig,
       final String schema,
+      final Duration timeout,
       final EmailService emailService,
       final ProcessProvider processProvider) {
-    super(propStore, processProvider, emailService);
-    this.database = database;
+    super(propStore, processProvider, emailService, timeout);
+    this.catalog = catalog;
+    this.database = databaseConfig.name();
     this.schema = schema;
+    this.format = Option.of(databaseConfig.format()).getOrElse(PostgresDumpFormat.PLAIN);
+    this.jobs = Option.of(databaseConfig.jobs());
+    this.compression = CompressionStage.of(databaseConfig.compression());
+    this.dedup = Option.of(databaseConfig.dedup()).getOrElse(false);
+    this.skipUnchanged = Option.of(databaseConfig.skipUnchanged()).getOrElse(false);
   }
 
   public PostgresBackupTask(
       final PropertyStore propStore,
-      final String database,
+      final BackupCatalog catalog,
+      final PostgresDatabaseConfig databaseConfig,
       final String schema,
+      final Duration timeout,
       final EmailService emailService) {
-    this(propStore, database, schema, emailService, ProcessProvider.DEFAULT);
+    this(
+        propStore, catalog, databaseConfig, schema, timeout, emailService, ProcessProvider.DEFAULT);
   }
 
   @Override
-  public void run() {
-    final var command =
-        new String[] {
-          PG_DUMP_CMD,
-          database,
-          SCHEMA_ARG,
-          schema,
-          HOST_ARG,
-          propStore.getPostgresHost(),
-          PORT_ARG,
-          propStore.getPostgresPort(),
-          USER_ARG,
-          propStore.getPostgresUser(),
-          USE_INSERT_STATEMENTS
-        };
-    final var environment = Map.of(PASSWORD_ENV, propStore.getPostgresPassword());
-
-    log.debug(
-        "Running Postgres backup for Database {} and Schema {} Command {}",
-        database,
-        schema,
-        Arrays.toString(command));
+  public Try<Long> execute() {
+    final var now = ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)).withNano(0);
+    final var timestamp = BackupConstants.FORMAT.format(now);
+    final var schemaDir =
+        Paths.get(
+            propStore.getOutputRootDirectory(), BackupConstants.POSTGRES_DIR, database, schema);
+    final var outputPath =
+        schemaDir.resolve(String.format("backup_%s%s", timestamp, getExtension()));
 
-    Try.of(() -> processProvider.provide(command, environment))
-        .flatMap(this::readProcess)
-        .flatMap(this::writeToFile)
+    return validateDedup()
+        .map(valid -> computeFingerprint())
+        .flatMap(
+            fingerprint ->
+                fingerprint
+                    .flatMap(value -> linkIfUnchanged(value, schemaDir, outputPath, catalog))
+                    .getOrElse(() -> dump(outputPath, fingerprint)))
+        .flatMap(
+            artifact ->
+                catalog
+                    .register(BackupCatalog.postgresTarget(database, schema), now, artifact)
+                    .map(entry -> artifact))
+        .map(BackupArtifact::sizeBytes)
         .onSuccess(
-            filePath ->
+            bytesWritten ->
                 log.info(
                     "Successfully wrote Postgres backup for Database {} and Schema {} to File {}",
                     database,
                     schema,
-                    filePath))
+                    outputPath.toAbsolutePath()))
         .onFailure(
             ex -> {
               log.error(
@@ -110,37 +182,221 @@ public class PostgresBackupTask extends AbstractBackupTask {
             });
   }
 
-  private Try<String> writeToFile(final String dbBackupText) {
-    final var outputRootDir = new File(propStore.getOutputRootDirectory());
-    final var postgresRootDir = new File(outputRootDir, BackupConstants.POSTGRES_DIR);
-    final var dbOutputDir = new File(postgresRootDir, database);
-    final var schemaOutputDir = new File(dbOutputDir, schema);
+  private Try<BackupArtifact> dump(final Path outputPath, final Option<String> fingerprint) {
+    final var command = createCommand(outputPath);
+    final var environment = Map.of(PASSWORD_ENV, propStore.getPostgresPassword());
 
-    if (!schemaOutputDir.exists() && !schemaOutputDir.mkdirs()) {
+    log.debug(
+        "Running Postgres backup for Database {} and Schema {} Command {}",
+        database,
+        schema,
+        Arrays.toString(command));
+
+    return Try.of(() -> processProvider.provide(command, environment))
+        .flatMap(process -> writeOutput(process, outputPath))
+        .andThen(
+            artifact ->
+                fingerprint.forEach(
+                    value ->
+                        new SchemaFingerprint(value, outputPath.getFileName().toString())
+                            .save(outputPath.getParent())
+                            .onFailure(
+                                ex ->
+                                    log.warn(
+                                        String.format(
+                                            "Unable to save fingerprint for Database %s and Schema %s",
+                                            database, schema),
+                                        ex))));
+  }
+
+  private Option<String> computeFingerprint() {
+    if (!skipUnchanged || format.isDirectory()) {
+      return Option.none();
+    }
+
+    final var command = new ArrayList<String>();
+    command.add(PSQL_CMD);
+    command.add(HOST_ARG);
+    command.add(propStore.getPostgresHost());
+    command.add(PORT_ARG);
+    command.add(propStore.getPostgresPort());
+    command.add(USER_ARG);
+    command.add(propStore.getPostgresUser());
+    command.add(DATABASE_ARG);
+    command.add(database);
+    command.addAll(Arrays.asList(PSQL_QUIET_ARGS));
+    command.add(QUERY_ARG);
+    command.add(String.format(FINGERPRINT_QUERY, quoteLiteral(schema)));
+    final var environment = Map.of(PASSWORD_ENV, propStore.getPostgresPassword());
+    final var output = new ByteArrayOutputStream();
+
+    return Try.of(() -> processProvider.provide(command.toArray(String[]::new), environment))
+        .flatMap(process -> readProcess(process, output))
+        .map(bytesRead -> output.toString(StandardCharsets.UTF_8).trim())
+        .filter(fingerprint -> !fingerprint.isEmpty())
+        .onFailure(
+            ex ->
+                log.warn(
+                    String.format(
+                        "Unable to fingerprint Database %s and Schema %s, running a full backup",
+                        database, schema),
+                    ex))
+        .toOption();
+  }
+
+  private Option<Try<BackupArtifact>> linkIfUnchanged(
+      final String fingerprint,
+      final Path schemaDir,
+      final Path outputPath,
+      final BackupCatalog catalog) {
+    return SchemaFingerprint.load(schemaDir)
+        .filter(previous -> previous.fingerprint().equals(fingerprint))
+        .map(previous -> schemaDir.resolve(previous.backupFileName()))
+        .filter(Files::exists)
+        .flatMap(
+            previousBackup ->
+                Try.of(() -> Files.createLink(outputPath, previousBackup))
+                    .flatMap(
+                        link ->
+                            new SchemaFingerprint(fingerprint, link.getFileName().toString())
+                                .save(schemaDir)
+                                .flatMap(saved -> Try.of(() -> Files.size(link)))
+                                .map(
+                                    size ->
+                                        new BackupArtifact(
+                                            link,
+                                            size,
+                                            catalog
+                                                .find(previousBackup)
+                                                .flatMap(BackupCatalog.Entry::checksum)))
+                                .map(AbstractBackupTask::writeChecksumSidecar))
+                    .onSuccess(
+                        artifact ->
+                            log.info(
+                                "Database {} and Schema {} unchanged since {}, linked instead of dumping",
+                                database,
+                                schema,
+                                previousBackup.getFileName()))
+                    .onFailure(
+                        ex ->
+                            log.warn(
+                                String.format(
+                                    "Unable to link unchanged backup for Database %s and Schema %s",
+                                    database, schema),
+                                ex))
+                    .toOption()
+                    .map(Try::success));
+  }
+
+  private static String quoteLiteral(final String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+
+  private String getExtension() {
+    if (format.isDirectory()) {
+      return format.getExtension();
+    }
+    if (dedup) {
+      return format.getExtension() + ChunkStore.MANIFEST_EXTENSION;
+    }
+    return format.getExtension() + compression.getExtension();
+  }
+
+  private Try<Boolean> validateDedup() {
+    if (!dedup) {
+      return Try.success(false);
+    }
+    if (format.isDirectory()) {
+      return Try.failure(
+          new BackupException(
+              String.format(
+                  "Dedup storage is not supported for the directory format for Database %s and Schema %s",
+                  database, schema)));
+    }
+    if (compression.isEnabled()) {
       return Try.failure(
           new BackupException(
               String.format(
-                  "Unable to create output directory: %s", schemaOutputDir.getAbsolutePath())));
+                  "Dedup storage cannot be combined with compression for Database %s and Schema %s",
+                  database, schema)));
+    }
+    return Try.success(true);
+  }
+
+  private String[] createCommand(final Path outputPath) {
+    final var command = new ArrayList<String>();
+    command.add(PG_DUMP_CMD);
+    command.add(database);
+    command.add(SCHEMA_ARG);
+    command.add(schema);
+    command.add(HOST_ARG);
+    command.add(propStore.getPostgresHost());
+    command.add(PORT_ARG);
+    command.add(propStore.getPostgresPort());
+    command.add(USER_ARG);
+    command.add(propStore.getPostgresUser());
+
+    if (format == PostgresDumpFormat.PLAIN) {
+      command.add(USE_INSERT_STATEMENTS);
+    } else {
+      command.add(FORMAT_ARG + format.getFlag());
     }
 
-    final var timestamp =
-        BackupConstants.FORMAT.format(ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)));
-    final var outputFile = new File(schemaOutputDir, String.format("backup_%s.sql", timestamp));
-
-    return Try.withResources(() -> new FileWriter(outputFile))
-        .of(
-            writer -> {
-              writer.write(dbBackupText);
-              return writer;
-            })
-        .map(writer -> outputFile.getAbsolutePath())
-        .recoverWith(
-            ex ->
-                Try.failure(
-                    new BackupException(
-                        String.format(
-                            "Error writing backup data for Database %s and Schema %s to File %s",
-                            database, schema, outputFile.getAbsolutePath()),
-                        ex)));
+    if (format.isDirectory()) {
+      // The directory format writes its own files, so compression is left to pg_dump
+      compression
+          .getType()
+          .forEach(
+              type -> {
+                if (type == CompressionType.ZSTD) {
+                  command.add(String.format("--compress=zstd:%d", compression.getLevel()));
+                } else {
+                  command.add(COMPRESS_ARG + compression.getLevel());
+                }
+              });
+    } else if (format == PostgresDumpFormat.CUSTOM && (compression.isEnabled() || dedup)) {
+      // Compressed output changes completely with every small edit, which defeats dedup
+      command.add(COMPRESS_ARG + 0);
+    }
+
+    if (format.isDirectory()) {
+      jobs.forEach(
+          jobCount -> {
+            command.add(JOBS_ARG);
+            command.add(String.valueOf(jobCount));
+          });
+      command.add(FILE_ARG);
+      command.add(partialPath(outputPath).toString());
+    } else if (jobs.isDefined()) {
+      log.warn(
+          "Parallel jobs are only supported by the directory format, ignoring for Database {} and Schema {}",
+          database,
+          schema);
+    }
+
+    return command.toArray(String[]::new);
+  }
+
+  private Try<BackupArtifact> writeOutput(final Process process, final Path outputPath) {
+    final Try<BackupArtifact> resultTry;
+    if (format.isDirectory()) {
+      resultTry = readProcessIntoDirectory(process, outputPath);
+    } else if (dedup) {
+      final var chunkStore = new ChunkStore(Paths.get(propStore.getOutputRootDirectory()));
+      resultTry =
+          readProcess(process, outputPath, output -> new ChunkingOutputStream(chunkStore, output));
+    } else {
+      resultTry = readProcess(process, outputPath, compression::wrap);
+    }
+
+    return resultTry.recoverWith(
+        IOException.class,
+        ex ->
+            Try.failure(
+                new BackupException(
+                    String.format(
+                        "Error writing backup data for Database %s and Schema %s to File %s",
+                        database, schema, outputPath.toAbsolutePath()),
+                    ex)));
   }
 }
@@ -0,0 +1,122 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.compression.CompressionStage;
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Try;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PostgresBaseBackupTask extends AbstractBackupTask {
+
+  public static final String PG_BASEBACKUP_CMD = "pg_basebackup";
+  public static final String DIRECTORY_ARG = "-D";
+  public static final String TAR_FORMAT_ARG = "-Ft";
+  public static final String FETCH_WAL_ARG = "-Xfetch";
+  public static final String FAST_CHECKPOINT_ARG = "--checkpoint=fast";
+
+  private static final Logger log = LoggerFactory.getLogger(PostgresBaseBackupTask.class);
+
+  private final CompressionStage compression;
+
+  public PostgresBaseBackupTask(
+      final PropertyStore propStore,
+      final PostgresWalConfig walConfig,
+      final Duration timeout,
+      final EmailService emailService,
+      final ProcessProvider processProvider) {
+    super(propStore, processProvider, emailService, timeout);
+    this.compression = CompressionStage.of(walConfig.compression());
+  }
+
+  public PostgresBaseBackupTask(
+      final PropertyStore propStore,
+      final PostgresWalConfig walConfig,
+      final Duration timeout,
+      final EmailService emailService) {
+    this(propStore, walConfig, timeout, emailService, ProcessProvider.DEFAULT);
+  }
+
+  public static Path getBaseBackupDirectory(final PropertyStore propStore) {
+    return Paths.get(
+        propStore.getOutputRootDirectory(),
+        BackupConstants.POSTGRES_WAL_DIR,
+        BackupConstants.BASE_BACKUP_DIR);
+  }
+
+  @Override
+  public Try<Long> execute() {
+    final var timestamp =
+        BackupConstants.FORMAT.format(ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)));
+    final var outputDir = getBaseBackupDirectory(propStore).resolve(timestamp);
+    final var command = createCommand(outputDir);
+    final var environment =
+        Map.of(PostgresBackupTask.PASSWORD_ENV, propStore.getPostgresPassword());
+    final var host = "%s:%s".formatted(propStore.getPostgresHost(), propStore.getPostgresPort());
+
+    log.debug(
+        "Running Postgres base backup for Host {} Command {}", host, Arrays.toString(command));
+
+    return Try.of(() -> processProvider.provide(command, environment))
+        .flatMap(process -> readProcessIntoDirectory(process, outputDir))
+        .map(BackupArtifact::sizeBytes)
+        .onSuccess(
+            bytesWritten ->
+                log.info(
+                    "Successfully wrote Postgres base backup for Host {} to Directory {}",
+                    host,
+                    outputDir.toAbsolutePath()))
+        .onFailure(
+            ex -> {
+              log.error(String.format("Error running Postgres base backup for Host %s", host), ex);
+              emailService.sendPostgresWalErrorAlertEmail(host, ex);
+            });
+  }
+
+  private String[] createCommand(final Path outputDir) {
+    final var command = new ArrayList<String>();
+    command.add(PG_BASEBACKUP_CMD);
+    command.add(PostgresBackupTask.HOST_ARG);
+    command.add(propStore.getPostgresHost());
+    command.add(PostgresBackupTask.PORT_ARG);
+    command.add(propStore.getPostgresPort());
+    command.add(PostgresBackupTask.USER_ARG);
+    command.add(propStore.getPostgresUser());
+    command.add(DIRECTORY_ARG);
+    command.add(partialPath(outputDir).toString());
+    command.add(TAR_FORMAT_ARG);
+    command.add(FETCH_WAL_ARG);
+    command.add(FAST_CHECKPOINT_ARG);
+    if (compression.isEnabled()) {
+      command.add(PostgresBackupTask.COMPRESS_ARG + compression.getLevel());
+    }
+    return command.toArray(String[]::new);
+  }
+}
@@ -18,14 +18,12 @@
 
 package io.craigmiller160.db.backup.execution;
 
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
 import io.craigmiller160.db.backup.properties.PropertyStore;
-import io.vavr.collection.Stream;
-import io.vavr.control.Try;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
+import io.vavr.control.Option;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,86 +32,78 @@ public class PostgresCleanupTask implements Runnable {
   private static final Logger log = LoggerFactory.getLogger(PostgresCleanupTask.class);
 
   private final PropertyStore propStore;
+  private final BackupCatalog catalog;
+  private final ParallelDeleter deleter;
   private final String database;
   private final String schema;
+  private final Option<RetentionPolicy> retention;
 
   public PostgresCleanupTask(
-      final PropertyStore propStore, final String database, final String schema) {
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database,
+      final String schema,
+      final RetentionConfig retention) {
     this.propStore = propStore;
+    this.catalog = catalog;
+    this.deleter = deleter;
     this.database = database;
     this.schema = schema;
+    this.retention = RetentionPolicy.of(retention);
+  }
+
+  public PostgresCleanupTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database,
+      final String schema) {
+    this(propStore, catalog, deleter, database, schema, null);
   }
 
   @Override
   public void run() {
-    log.debug("Running cleanup for Postgres Database {} and Schema {}", database, schema);
+    cleanup();
+  }
 
-    final var schemaOutputDir =
-        Paths.get(
-            propStore.getOutputRootDirectory(), BackupConstants.POSTGRES_DIR, database, schema);
-    if (!Files.exists(schemaOutputDir)) {
-      log.info(
-          "Directory to cleanup Postgres files does not exist: {}",
-          schemaOutputDir.toAbsolutePath().toString());
-      return;
-    }
+  public CompletableFuture<CleanupResult> cleanup() {
+    log.debug("Running cleanup for Postgres Database {} and Schema {}", database, schema);
 
+    final var target = BackupCatalog.postgresTarget(database, schema);
     final var oldestAllowed =
         ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE))
             .minusDays(propStore.getOutputCleanupAgeDays());
 
-    Try.of(
-            () ->
-                Stream.ofAll(Files.list(schemaOutputDir))
-                    .filter(
-                        path -> {
-                          final var fileName = path.getFileName().toString();
-                          final var timestampString =
-                              fileName.replace("backup_", "").replace(".sql", "");
-                          final var timestamp =
-                              LocalDateTime.parse(timestampString, BackupConstants.FORMAT)
-                                  .atZone(ZoneId.of(BackupConstants.TIME_ZONE));
-
-                          return oldestAllowed.compareTo(timestamp) > 0;
-                        })
-                    .foldLeft(
-                        new CleanupResult(0, 0),
-                        (result, path) ->
-                            Try.of(
-                                    () -> {
-                                      Files.delete(path);
-                                      return path;
-                                    })
-                                .map(
-                                    p ->
-                                        new CleanupResult(
-                                            result.successCount() + 1, result.failureCount()))
-                                .recoverWith(
-                                    ex -> {
-                                      log.debug(
-                                          String.format(
-                                              "Failed to cleanup Postgres file %s for Database %s and Schema %s",
-                                              path, database, schema),
-                                          ex);
-                                      return Try.success(
-                                          new CleanupResult(
-                                              result.successCount(), result.failureCount() + 1));
-                                    })
-                                .get()))
-        .onSuccess(
-            result ->
-                log.info(
-                    "Finished cleaning up Postgres Database {} and Schema {}. Success: {} Failure: {}",
-                    database,
-                    schema,
-                    result.successCount(),
-                    result.failureCount()))
-        .onFailure(
-            ex ->
+    return deleter
+        .delete(
+            retention
+                .map(policy -> policy.selectExpired(catalog.getEntries(target)))
+                .getOrElse(() -> catalog.getExpired(target, oldestAllowed)),
+            catalog::resolve,
+            entry -> {
+              catalog.remove(entry);
+              ChecksumSidecar.delete(catalog.resolve(entry));
+            })
+        .whenComplete(
+            (result, ex) -> {
+              if (ex != null) {
                 log.error(
                     String.format(
                         "Error attempting to cleanup Postgres Database %s and Schema %s",
                         database, schema),
-                    ex));
+                    ex);
+                return;
+              }
+              log.info(
+                  "Finished cleaning up Postgres Database {} and Schema {}. Success: {} Failure: {} Files: {} Bytes: {} Time: {}ms",
+                  database,
+                  schema,
+                  result.successCount(),
+                  result.failureCount(),
+                  result.filesDeleted(),
+                  result.bytesDeleted(),
+                  result.elapsed().toMillis());
+            });
   }
 }
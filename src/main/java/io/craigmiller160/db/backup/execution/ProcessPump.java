@@ -0,0 +1,141 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Try;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class ProcessPump {
+
+  public static final int DEFAULT_STDERR_TAIL_BYTES = 64 * 1024;
+  private static final long JOIN_TIMEOUT_SECS = 60;
+
+  private final Process process;
+  private final InputStream stdout;
+  private final InputStream stderr;
+  private final TailBuffer stderrTail;
+  private FutureTask<Long> stdoutTask;
+  private FutureTask<Long> stderrTask;
+
+  private ProcessPump(
+      final Process process,
+      final InputStream stdout,
+      final InputStream stderr,
+      final int stderrTailBytes) {
+    this.process = process;
+    this.stdout = stdout;
+    this.stderr = stderr;
+    this.stderrTail = new TailBuffer(stderrTailBytes);
+  }
+
+  public static ProcessPump attach(final Process process) {
+    return attach(process, DEFAULT_STDERR_TAIL_BYTES);
+  }
+
+  public static ProcessPump attach(final Process process, final int stderrTailBytes) {
+    return new ProcessPump(
+        process, process.getInputStream(), process.getErrorStream(), stderrTailBytes);
+  }
+
+  public ProcessPump start(final OutputStream stdoutSink) {
+    stdoutTask = new FutureTask<>(() -> drain(stdout, stdoutSink));
+    stderrTask = new FutureTask<>(() -> drain(stderr, stderrTail));
+    Thread.ofVirtual().name("process-stdout-" + process.pid()).start(stdoutTask);
+    Thread.ofVirtual().name("process-stderr-" + process.pid()).start(stderrTask);
+    return this;
+  }
+
+  private long drain(final InputStream stream, final OutputStream sink) throws Exception {
+    try (stream) {
+      return stream.transferTo(sink);
+    } catch (final Exception ex) {
+      // Nobody is reading the pipe anymore, so the child would block forever on a full buffer
+      process.destroy();
+      throw ex;
+    }
+  }
+
+  public Try<Long> awaitStdout() {
+    return await(stdoutTask);
+  }
+
+  public Try<String> awaitStderr() {
+    return await(stderrTask).map(bytesRead -> stderrTail.toString());
+  }
+
+  private Try<Long> await(final FutureTask<Long> task) {
+    return Try.of(() -> task.get(JOIN_TIMEOUT_SECS, TimeUnit.SECONDS))
+        .recoverWith(ExecutionException.class, ex -> Try.failure(ex.getCause()));
+  }
+
+  static class TailBuffer extends OutputStream {
+    private final byte[] buffer;
+    private int position = 0;
+    private boolean wrapped = false;
+
+    TailBuffer(final int capacity) {
+      this.buffer = new byte[capacity];
+    }
+
+    @Override
+    public synchronized void write(final int b) {
+      buffer[position] = (byte) b;
+      advance(1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] bytes, final int offset, final int length) {
+      if (length >= buffer.length) {
+        System.arraycopy(bytes, offset + length - buffer.length, buffer, 0, buffer.length);
+        position = 0;
+        wrapped = true;
+        return;
+      }
+
+      final var firstPart = Math.min(length, buffer.length - position);
+      System.arraycopy(bytes, offset, buffer, position, firstPart);
+      System.arraycopy(bytes, offset + firstPart, buffer, 0, length - firstPart);
+      advance(length);
+    }
+
+    private void advance(final int count) {
+      final var next = position + count;
+      if (next >= buffer.length) {
+        wrapped = true;
+      }
+      position = next % buffer.length;
+    }
+
+    @Override
+    public synchronized String toString() {
+      final var output = new ByteArrayOutputStream(buffer.length);
+      if (wrapped) {
+        output.write(buffer, position, buffer.length - position);
+      }
+      output.write(buffer, 0, position);
+      return output.toString(StandardCharsets.UTF_8).strip();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Try;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ProcessReaper {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessReaper.class);
+
+  private ProcessReaper() {}
+
+  public static void terminate(final Process process, final Duration gracePeriod) {
+    // Descendants must be collected up front, once the parent dies they get re-parented
+    final var descendants = process.descendants().toList();
+    log.debug("Terminating process {} and {} descendants", process.pid(), descendants.size());
+
+    descendants.forEach(ProcessHandle::destroy);
+    process.destroy();
+
+    final var exited =
+        Try.of(() -> process.waitFor(gracePeriod.toMillis(), TimeUnit.MILLISECONDS))
+            .getOrElse(false);
+    if (!exited || descendants.stream().anyMatch(ProcessHandle::isAlive)) {
+      log.warn(
+          "Process {} did not exit within {} seconds, killing it forcibly",
+          process.pid(),
+          gracePeriod.toSeconds());
+      descendants.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+      process.destroyForcibly();
+    }
+
+    Try.run(() -> process.waitFor(gracePeriod.toMillis(), TimeUnit.MILLISECONDS))
+        .onFailure(ex -> log.error("Interrupted while reaping process " + process.pid(), ex));
+  }
+}
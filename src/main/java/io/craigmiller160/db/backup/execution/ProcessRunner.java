@@ -0,0 +1,131 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.exception.BackupTimeoutException;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class ProcessRunner {
+
+  private final ProcessProvider processProvider;
+  private final Duration timeout;
+
+  public ProcessRunner(final ProcessProvider processProvider, final Duration timeout) {
+    this.processProvider = processProvider;
+    this.timeout = timeout;
+  }
+
+  @FunctionalInterface
+  public interface Input {
+    void writeTo(final OutputStream stdin) throws Exception;
+  }
+
+  public Try<String> run(
+      final String[] command,
+      final Map<String, String> environment,
+      final Option<Input> input,
+      final OutputStream output) {
+    return Try.of(() -> processProvider.provide(command, environment))
+        .flatMap(
+            process -> {
+              final var pump = ProcessPump.attach(process);
+              final var writer = input.map(in -> startWriter(process, in));
+              final var result = pump(process, pump, output).flatMap(bytes -> pump.awaitStderr());
+              final var written =
+                  writer
+                      .map(
+                          task ->
+                              Try.of(() -> task.get())
+                                  .recoverWith(
+                                      ExecutionException.class, ex -> Try.failure(ex.getCause())))
+                      .getOrElse(Try.success(null));
+              if (result.isFailure()) {
+                // A process that died early also breaks the pipe, that is not the interesting error
+                written.onFailure(ex -> result.getCause().addSuppressed(ex));
+                return result;
+              }
+              return written.flatMap(v -> result);
+            });
+  }
+
+  public Try<Long> readProcess(final Process process, final OutputStream output) {
+    return Try.of(() -> ProcessPump.attach(process)).flatMap(pump -> pump(process, pump, output));
+  }
+
+  Try<Long> pump(final Process process, final ProcessPump pump, final OutputStream output) {
+    return Try.of(() -> pump.start(output))
+        .flatMap(startedPump -> awaitExit(process, startedPump))
+        .flatMap(exitCode -> pump.awaitStdout())
+        .flatMap(bytesWritten -> pump.awaitStderr().map(stderr -> bytesWritten));
+  }
+
+  private FutureTask<Void> startWriter(final Process process, final Input input) {
+    final var task =
+        new FutureTask<Void>(
+            () -> {
+              try (final var stdin = process.getOutputStream()) {
+                input.writeTo(stdin);
+              } catch (final Exception ex) {
+                process.destroy();
+                throw ex;
+              }
+              return null;
+            });
+    Thread.ofVirtual().name("process-stdin-" + process.pid()).start(task);
+    return task;
+  }
+
+  private Try<Integer> awaitExit(final Process process, final ProcessPump pump) {
+    return Try.of(() -> process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS))
+        .flatMap(
+            exited -> {
+              if (exited) {
+                return Try.success(process.exitValue());
+              }
+
+              ProcessReaper.terminate(
+                  process, Duration.ofSeconds(BackupConstants.PROCESS_KILL_GRACE_SECS));
+              return pump.awaitStderr()
+                  .flatMap(
+                      content ->
+                          Try.failure(
+                              new BackupTimeoutException(
+                                  String.format(
+                                      "Process did not finish within %d seconds: %s",
+                                      timeout.toSeconds(), content))));
+            })
+        .flatMap(
+            exitCode -> {
+              if (exitCode == 0) {
+                return Try.success(exitCode);
+              }
+
+              return pump.awaitStderr()
+                  .flatMap(content -> Try.failure(new BackupException(content)));
+            });
+  }
+}
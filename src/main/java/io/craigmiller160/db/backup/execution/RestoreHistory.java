@@ -0,0 +1,85 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.restore.RestoreResult;
+import io.vavr.control.Try;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only record of every restore test, so restore times can be tracked as the backups grow.
+ */
+public class RestoreHistory {
+
+  private static final Logger log = LoggerFactory.getLogger(RestoreHistory.class);
+
+  public static final String HISTORY_FILE = "restore-history.tsv";
+  public static final String STATUS_OK = "ok";
+  public static final String STATUS_FAILED = "failed";
+
+  private final Path historyFile;
+
+  public RestoreHistory(final Path outputRoot) {
+    this.historyFile = outputRoot.resolve(HISTORY_FILE);
+  }
+
+  public Path getHistoryFile() {
+    return historyFile;
+  }
+
+  public synchronized void record(
+      final ZonedDateTime timestamp,
+      final String target,
+      final String artifact,
+      final Try<RestoreResult> result) {
+    final var restore = result.getOrElse(new RestoreResult(Duration.ZERO, 0, 0));
+    final var line =
+        String.join(
+                "\t",
+                String.valueOf(timestamp.toEpochSecond()),
+                target,
+                artifact,
+                String.valueOf(restore.elapsed().toMillis()),
+                String.valueOf(restore.sizeBytes()),
+                String.valueOf(restore.rows()),
+                result.isSuccess() ? STATUS_OK : STATUS_FAILED)
+            + "\n";
+    Try.of(
+            () -> {
+              Files.createDirectories(historyFile.getParent());
+              return Files.writeString(
+                  historyFile,
+                  line,
+                  StandardCharsets.UTF_8,
+                  StandardOpenOption.CREATE,
+                  StandardOpenOption.APPEND);
+            })
+        .onFailure(
+            ex ->
+                log.warn(
+                    "Unable to write restore history to {}", historyFile.toAbsolutePath(), ex));
+  }
+}
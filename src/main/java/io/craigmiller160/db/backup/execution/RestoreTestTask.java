@@ -0,0 +1,224 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.config.dto.RestoreTestConfig;
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.craigmiller160.db.backup.restore.ArtifactSource;
+import io.craigmiller160.db.backup.restore.MongoRestorer;
+import io.craigmiller160.db.backup.restore.PostgresRestorer;
+import io.craigmiller160.db.backup.restore.RestoreResult;
+import io.craigmiller160.db.backup.restore.ScratchMongod;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores the newest backup of every target into a scratch database and checks that data came
+ * back, recording how long it took. Postgres backups go into a throwaway database on the configured
+ * server, MongoDB backups into a throwaway mongod started just for the test.
+ */
+public class RestoreTestTask implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(RestoreTestTask.class);
+
+  public static final String SCRATCH_DATABASE_PREFIX = "restore_test_";
+  private static final int MAX_IDENTIFIER_LENGTH = 63;
+  private static final int SCRATCH_HASH_LENGTH = 12;
+  private static final String MONGOD_DIR = "mongod";
+
+  private final PropertyStore propStore;
+  private final BackupCatalog catalog;
+  private final EmailService emailService;
+  private final RestoreTestConfig config;
+  private final ProcessProvider processProvider;
+  private final Duration timeout;
+
+  public RestoreTestTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final EmailService emailService,
+      final RestoreTestConfig config,
+      final ProcessProvider processProvider) {
+    this.propStore = propStore;
+    this.catalog = catalog;
+    this.emailService = emailService;
+    this.config = config;
+    this.processProvider = processProvider;
+    this.timeout =
+        Duration.ofSeconds(
+            Option.of(config.timeoutSecs())
+                .getOrElse(BackupConstants.DEFAULT_RESTORE_TEST_TIMEOUT_SECS));
+  }
+
+  public RestoreTestTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final EmailService emailService,
+      final RestoreTestConfig config) {
+    this(propStore, catalog, emailService, config, ProcessProvider.DEFAULT);
+  }
+
+  @Override
+  public void run() {
+    log.debug("Running restore tests");
+    final var outputRoot = Paths.get(propStore.getOutputRootDirectory());
+    final var chunkStore = new ChunkStore(outputRoot);
+    final var history = new RestoreHistory(outputRoot);
+    final var processRunner = new ProcessRunner(processProvider, timeout);
+
+    final Map<String, BackupCatalog.Entry> newest =
+        catalog.getAllEntries().stream()
+            .filter(entry -> BackupCatalog.STATUS_OK.equals(entry.status()))
+            .collect(
+                Collectors.toMap(
+                    BackupCatalog.Entry::target,
+                    Function.identity(),
+                    (a, b) -> a.epochSecond() >= b.epochSecond() ? a : b,
+                    TreeMap::new));
+
+    var failed = 0;
+    for (final var entry : newest.values()) {
+      final var now = ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE));
+      final var result =
+          Try.of(() -> ArtifactSource.of(catalog.resolve(entry), chunkStore))
+              .flatMap(source -> restore(processRunner, outputRoot, entry.target(), source));
+      history.record(now, entry.target(), entry.relativePath(), result);
+      result
+          .onSuccess(
+              restore ->
+                  log.info(
+                      "Restore test of {} succeeded. Duration: {}ms Size: {} bytes Throughput: {} MB/s Rows: {}",
+                      entry.relativePath(),
+                      restore.elapsed().toMillis(),
+                      restore.sizeBytes(),
+                      String.format("%.2f", restore.getMegabytesPerSec()),
+                      restore.rows()))
+          .onFailure(
+              ex -> {
+                log.error(String.format("Restore test of %s failed", entry.relativePath()), ex);
+                emailService.sendRestoreTestErrorAlertEmail(entry.target(), ex);
+              });
+      if (result.isFailure()) {
+        failed++;
+      }
+    }
+
+    log.info("Finished restore tests. Tested: {} Failed: {}", newest.size(), failed);
+  }
+
+  private Try<RestoreResult> restore(
+      final ProcessRunner processRunner,
+      final Path outputRoot,
+      final String target,
+      final ArtifactSource source) {
+    final var parts = target.split("/");
+    final var jobs = Runtime.getRuntime().availableProcessors();
+    if (parts.length == 3 && target.equals(BackupCatalog.postgresTarget(parts[1], parts[2]))) {
+      return restorePostgres(processRunner, source, parts[1], parts[2], jobs);
+    }
+    if (parts.length == 2 && target.equals(BackupCatalog.mongoTarget(parts[1]))) {
+      return restoreMongo(processRunner, outputRoot, source, parts[1], jobs);
+    }
+    return Try.failure(new BackupException("Unknown backup target: " + target));
+  }
+
+  private Try<RestoreResult> restorePostgres(
+      final ProcessRunner processRunner,
+      final ArtifactSource source,
+      final String database,
+      final String schema,
+      final int jobs) {
+    final var restorer =
+        new PostgresRestorer(
+            processRunner,
+            Option.of(config.postgresHost()).getOrElse(propStore.getPostgresHost()),
+            Option.of(config.postgresPort())
+                .map(String::valueOf)
+                .getOrElse(propStore.getPostgresPort()),
+            propStore.getPostgresUser(),
+            propStore.getPostgresPassword());
+    final var scratch = getScratchDatabaseName(database + "_" + schema);
+    return restorer
+        .dropDatabase(scratch)
+        .flatMap(v -> restorer.createDatabase(scratch))
+        .flatMap(v -> restorer.restore(source, scratch, false, jobs))
+        .flatMap(result -> restorer.countRows(scratch).map(result::withRows))
+        .andFinally(
+            () ->
+                restorer
+                    .dropDatabase(scratch)
+                    .onFailure(ex -> log.warn("Unable to drop scratch Database {}", scratch, ex)));
+  }
+
+  private Try<RestoreResult> restoreMongo(
+      final ProcessRunner processRunner,
+      final Path outputRoot,
+      final ArtifactSource source,
+      final String database,
+      final int jobs) {
+    final var dbPath =
+        outputRoot
+            .resolve(BackupConstants.RESTORE_TEST_DIR)
+            .resolve(MONGOD_DIR + BackupConstants.PARTIAL_SUFFIX);
+    final var mongodCommand =
+        Option.of(config.mongodCommand()).getOrElse(BackupConstants.DEFAULT_MONGOD_COMMAND);
+    return Try.withResources(() -> ScratchMongod.start(processProvider, mongodCommand, dbPath))
+        .of(
+            mongod ->
+                new MongoRestorer(
+                        processRunner,
+                        propStore.getMongorestoreCommand(),
+                        mongod.getConnectionArgs())
+                    .restore(source, database, database, false, jobs, 0))
+        .flatMap(Function.identity());
+  }
+
+  // Names that only differ after the identifier limit would collide, so a truncated name ends
+  // with a hash of the full one
+  static String getScratchDatabaseName(final String name) {
+    final var scratch = SCRATCH_DATABASE_PREFIX + name.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    if (scratch.length() <= MAX_IDENTIFIER_LENGTH) {
+      return scratch;
+    }
+    final var digest =
+        Try.of(() -> MessageDigest.getInstance(AbstractBackupTask.CHECKSUM_ALGORITHM)).get();
+    final var hash =
+        HexFormat.of()
+            .formatHex(digest.digest(name.getBytes(StandardCharsets.UTF_8)))
+            .substring(0, SCRATCH_HASH_LENGTH);
+    return scratch.substring(0, MAX_IDENTIFIER_LENGTH - SCRATCH_HASH_LENGTH - 1) + "_" + hash;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
+import io.vavr.control.Option;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+public class RetentionPolicy {
+
+  private final int hourly;
+  private final int daily;
+  private final int weekly;
+  private final int monthly;
+  private final ZoneId zone;
+
+  RetentionPolicy(
+      final int hourly, final int daily, final int weekly, final int monthly, final ZoneId zone) {
+    this.hourly = hourly;
+    this.daily = daily;
+    this.weekly = weekly;
+    this.monthly = monthly;
+    this.zone = zone;
+  }
+
+  public static Option<RetentionPolicy> of(final RetentionConfig config) {
+    return Option.of(config)
+        .map(
+            retention ->
+                new RetentionPolicy(
+                    count(retention.hourly()),
+                    count(retention.daily()),
+                    count(retention.weekly()),
+                    count(retention.monthly()),
+                    ZoneId.of(BackupConstants.TIME_ZONE)))
+        .filter(policy -> policy.hourly + policy.daily + policy.weekly + policy.monthly > 0);
+  }
+
+  private static int count(final Integer value) {
+    return Math.max(0, Option.of(value).getOrElse(0));
+  }
+
+  // Each tier keeps the newest backup in each of its most recent N periods. A backup kept by
+  // any tier survives, and the newest backup is always kept so a policy can never empty a target.
+  public List<BackupCatalog.Entry> selectExpired(final List<BackupCatalog.Entry> entries) {
+    final var newestFirst = new ArrayList<>(entries);
+    newestFirst.sort(Comparator.comparingLong(BackupCatalog.Entry::epochSecond).reversed());
+
+    final var kept = new HashSet<BackupCatalog.Entry>();
+    if (!newestFirst.isEmpty()) {
+      kept.add(newestFirst.get(0));
+    }
+    keepPerPeriod(newestFirst, hourly, time -> time.truncatedTo(ChronoUnit.HOURS), kept);
+    keepPerPeriod(newestFirst, daily, time -> time.toLocalDate(), kept);
+    keepPerPeriod(
+        newestFirst,
+        weekly,
+        time ->
+            time.get(IsoFields.WEEK_BASED_YEAR) * 100L
+                + time.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR),
+        kept);
+    keepPerPeriod(newestFirst, monthly, time -> YearMonth.from(time), kept);
+
+    return entries.stream().filter(entry -> !kept.contains(entry)).toList();
+  }
+
+  private void keepPerPeriod(
+      final List<BackupCatalog.Entry> newestFirst,
+      final int periods,
+      final Function<ZonedDateTime, Object> period,
+      final Set<BackupCatalog.Entry> kept) {
+    final var seen = new HashSet<>();
+    for (final var entry : newestFirst) {
+      if (seen.size() >= periods) {
+        return;
+      }
+      if (seen.add(period.apply(Instant.ofEpochSecond(entry.epochSecond()).atZone(zone)))) {
+        kept.add(entry);
+      }
+    }
+  }
+}
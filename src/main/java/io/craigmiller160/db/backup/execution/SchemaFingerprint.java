@@ -0,0 +1,55 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public record SchemaFingerprint(String fingerprint, String backupFileName) {
+  public static final String FINGERPRINT_FILE = ".fingerprint";
+
+  public static Option<SchemaFingerprint> load(final Path schemaDir) {
+    final var file = schemaDir.resolve(FINGERPRINT_FILE);
+    if (!Files.exists(file)) {
+      return Option.none();
+    }
+
+    return Try.of(() -> Files.readString(file, StandardCharsets.UTF_8).trim().split("\t"))
+        .toOption()
+        .filter(parts -> parts.length == 2)
+        .map(parts -> new SchemaFingerprint(parts[0], parts[1]));
+  }
+
+  public Try<Path> save(final Path schemaDir) {
+    final var file = schemaDir.resolve(FINGERPRINT_FILE);
+    final var partialFile = schemaDir.resolve(FINGERPRINT_FILE + BackupConstants.PARTIAL_SUFFIX);
+    return Try.of(
+            () ->
+                Files.writeString(
+                    partialFile,
+                    String.format("%s\t%s%n", fingerprint, backupFileName),
+                    StandardCharsets.UTF_8))
+        .flatMap(
+            path -> Try.of(() -> Files.move(partialFile, file, StandardCopyOption.ATOMIC_MOVE)));
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class StaggerStrategy {
+
+  private final long staggerSecs;
+  private final long jitterSecs;
+
+  public StaggerStrategy(final long staggerSecs, final long jitterSecs, final long intervalSecs) {
+    this.staggerSecs = Math.max(0, Math.min(staggerSecs, intervalSecs));
+    this.jitterSecs = Math.max(0, jitterSecs);
+  }
+
+  public long getInitialDelaySecs(final String taskKey) {
+    return getOffsetSecs(taskKey) + getJitterSecs();
+  }
+
+  long getOffsetSecs(final String taskKey) {
+    if (staggerSecs == 0) {
+      return 0;
+    }
+    return Math.floorMod(taskKey.hashCode(), staggerSecs);
+  }
+
+  private long getJitterSecs() {
+    if (jitterSecs == 0) {
+      return 0;
+    }
+    return ThreadLocalRandom.current().nextLong(jitterSecs + 1);
+  }
+}
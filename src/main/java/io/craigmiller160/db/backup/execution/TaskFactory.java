@@ -18,34 +18,104 @@
 
 package io.craigmiller160.db.backup.execution;
 
+import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.config.dto.RestoreTestConfig;
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class TaskFactory {
 
-  public Runnable createPostgresBackupTask(
+  public BackupTask createPostgresBackupTask(
       final PropertyStore propStore,
+      final BackupCatalog catalog,
       final EmailService emailService,
-      final String database,
-      final String schema) {
-    return new PostgresBackupTask(propStore, database, schema, emailService);
+      final PostgresDatabaseConfig database,
+      final String schema,
+      final Duration timeout) {
+    return new PostgresBackupTask(propStore, catalog, database, schema, timeout, emailService);
   }
 
-  public Runnable createLivenessCheckTask(final PropertyStore propStore) {
-    return new LivenessCheckTask(propStore);
+  public Runnable createLivenessCheckTask(
+      final PropertyStore propStore, final Supplier<Map<String, TaskRunState>> runStates) {
+    return new LivenessCheckTask(propStore, runStates);
   }
 
   public Runnable createPostgresCleanupTask(
-      final PropertyStore propStore, final String database, final String schema) {
-    return new PostgresCleanupTask(propStore, database, schema);
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database,
+      final String schema,
+      final RetentionConfig retention) {
+    return new PostgresCleanupTask(propStore, catalog, deleter, database, schema, retention);
+  }
+
+  public BackupTask createMongoBackupTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final EmailService emailService,
+      final MongoDatabaseConfig database,
+      final Duration timeout) {
+    return new MongoBackupTask(propStore, catalog, database, timeout, emailService);
+  }
+
+  public BackupTask createMongoOplogTask(
+      final PropertyStore propStore,
+      final EmailService emailService,
+      final MongoDatabaseConfig database,
+      final Duration timeout) {
+    return new MongoOplogTask(propStore, database, timeout, emailService);
+  }
+
+  public Runnable createMongoCleanupTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final ParallelDeleter deleter,
+      final String database,
+      final RetentionConfig retention) {
+    return new MongoCleanupTask(propStore, catalog, deleter, database, retention);
   }
 
-  public Runnable createMongoBackupTask(
-      final PropertyStore propStore, final EmailService emailService, final String database) {
-    return new MongoBackupTask(propStore, database, emailService);
+  public Runnable createChunkGarbageCollectionTask(final PropertyStore propStore) {
+    return new ChunkGarbageCollectionTask(propStore);
+  }
+
+  public Runnable createBackupVerificationTask(
+      final PropertyStore propStore, final BackupCatalog catalog, final EmailService emailService) {
+    return new BackupVerificationTask(propStore, catalog, emailService);
+  }
+
+  public Runnable createRestoreTestTask(
+      final PropertyStore propStore,
+      final BackupCatalog catalog,
+      final EmailService emailService,
+      final RestoreTestConfig restoreTestConfig) {
+    return new RestoreTestTask(propStore, catalog, emailService, restoreTestConfig);
+  }
+
+  public WalReceiverSupervisor createWalReceiverSupervisor(
+      final PropertyStore propStore,
+      final EmailService emailService,
+      final PostgresWalConfig walConfig) {
+    return new WalReceiverSupervisor(propStore, walConfig, emailService);
+  }
+
+  public BackupTask createPostgresBaseBackupTask(
+      final PropertyStore propStore,
+      final EmailService emailService,
+      final PostgresWalConfig walConfig,
+      final Duration timeout) {
+    return new PostgresBaseBackupTask(propStore, walConfig, timeout, emailService);
   }
 
-  public Runnable createMongoCleanupTask(final PropertyStore propStore, final String database) {
-    return new MongoCleanupTask(propStore, database);
+  public Runnable createWalRetentionTask(
+      final PropertyStore propStore, final PostgresWalConfig walConfig) {
+    return new WalRetentionTask(propStore, walConfig);
   }
 }
@@ -0,0 +1,127 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.vavr.control.Option;
+import java.time.Duration;
+import java.time.Instant;
+
+public class TaskRunState {
+
+  private final String name;
+  private boolean inFlight = false;
+  private boolean rerunRequested = false;
+  private Instant lastStart;
+  private Instant lastEnd;
+  private Duration lastDuration;
+  private Duration lastInterval;
+  private long runCount = 0;
+  private long overrunCount = 0;
+  private long skippedCount = 0;
+  private long coalescedCount = 0;
+
+  public TaskRunState(final String name) {
+    this.name = name;
+  }
+
+  synchronized boolean tryStart() {
+    if (inFlight) {
+      return false;
+    }
+    inFlight = true;
+    return true;
+  }
+
+  synchronized boolean recordOverlap(final OverlapPolicy policy) {
+    overrunCount++;
+    if (policy == OverlapPolicy.COALESCE && !rerunRequested) {
+      rerunRequested = true;
+      coalescedCount++;
+      return true;
+    }
+    skippedCount++;
+    return false;
+  }
+
+  synchronized void recordStart(final Instant start, final Duration interval) {
+    lastStart = start;
+    lastInterval = interval;
+  }
+
+  synchronized boolean recordEnd(final Instant end) {
+    lastEnd = end;
+    lastDuration = Duration.between(lastStart, end);
+    runCount++;
+    if (rerunRequested) {
+      rerunRequested = false;
+      return true;
+    }
+    inFlight = false;
+    return false;
+  }
+
+  synchronized void abort() {
+    inFlight = false;
+    rerunRequested = false;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized boolean isInFlight() {
+    return inFlight;
+  }
+
+  public synchronized Option<Instant> getLastStart() {
+    return Option.of(lastStart);
+  }
+
+  public synchronized Option<Instant> getLastEnd() {
+    return Option.of(lastEnd);
+  }
+
+  public synchronized Option<Duration> getLastDuration() {
+    return Option.of(lastDuration);
+  }
+
+  public synchronized long getRunCount() {
+    return runCount;
+  }
+
+  public synchronized long getOverrunCount() {
+    return overrunCount;
+  }
+
+  public synchronized long getSkippedCount() {
+    return skippedCount;
+  }
+
+  public synchronized long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  // How much of its scheduled interval the last run used up, anything above 1.0 overran
+  public synchronized double getOverrunRatio() {
+    if (lastDuration == null || lastInterval == null || lastInterval.isZero()) {
+      return 0.0;
+    }
+    return (double) lastDuration.toMillis() / lastInterval.toMillis();
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.schedule.Schedule;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TaskTimer {
+
+  private static final Logger log = LoggerFactory.getLogger(TaskTimer.class);
+
+  private final DelayQueue<TimerEntry> queue = new DelayQueue<>();
+  private final Map<String, TaskRunState> runStates = new ConcurrentHashMap<>();
+  private final ZoneId zone;
+  private final OverlapPolicy overlapPolicy;
+  private final ToLongFunction<String> priority;
+  private final Thread timerThread;
+  private volatile boolean running = true;
+
+  public TaskTimer(final ZoneId zone, final OverlapPolicy overlapPolicy) {
+    this(zone, overlapPolicy, name -> 0L);
+  }
+
+  public TaskTimer(
+      final ZoneId zone, final OverlapPolicy overlapPolicy, final ToLongFunction<String> priority) {
+    this.zone = zone;
+    this.overlapPolicy = overlapPolicy;
+    this.priority = priority;
+    this.timerThread = Thread.ofPlatform().name("backup-timer").daemon().unstarted(this::loop);
+  }
+
+  public void start() {
+    timerThread.start();
+  }
+
+  public void schedule(
+      final String name,
+      final Runnable task,
+      final Schedule schedule,
+      final long staggerSecs,
+      final Executor lane) {
+    final var firstFire = schedule.first(now(), staggerSecs);
+    final var state = runStates.computeIfAbsent(name, TaskRunState::new);
+    log.info("Scheduling {} to first run at {}", name, firstFire);
+    queue.add(new TimerEntry(name, task, schedule, staggerSecs, firstFire, lane, state));
+  }
+
+  public Map<String, TaskRunState> getRunStates() {
+    return Map.copyOf(runStates);
+  }
+
+  public void stop() {
+    running = false;
+    timerThread.interrupt();
+    queue.clear();
+  }
+
+  private void loop() {
+    while (running) {
+      try {
+        final var due = new ArrayList<TimerEntry>();
+        due.add(queue.take());
+        queue.drainTo(due);
+        // When several targets are due together, hand them off in priority order. The keys are
+        // read up front so a history update mid-sort cannot change them.
+        final var keys =
+            due.stream()
+                .map(TimerEntry::name)
+                .distinct()
+                .collect(Collectors.toMap(name -> name, priority::applyAsLong));
+        due.sort(Comparator.comparingLong((TimerEntry entry) -> keys.get(entry.name())).reversed());
+        due.forEach(
+            entry -> {
+              queue.add(entry.reschedule(nextFire(entry)));
+              trigger(entry);
+            });
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void trigger(final TimerEntry entry) {
+    final var interval =
+        Duration.between(
+            entry.fireAt(), entry.schedule().next(entry.fireAt(), entry.staggerSecs()));
+    if (entry.state().tryStart()) {
+      dispatch(entry, interval);
+      return;
+    }
+
+    final var coalesced = entry.state().recordOverlap(overlapPolicy);
+    log.warn(
+        "{} is still in flight from its previous trigger, {} (overruns so far: {})",
+        entry.name(),
+        coalesced ? "it will run again as soon as it finishes" : "skipping this run",
+        entry.state().getOverrunCount());
+  }
+
+  private void dispatch(final TimerEntry entry, final Duration interval) {
+    try {
+      // The timer thread only hands the job off, it never waits on the job itself
+      entry.lane().execute(new NamedJob(entry.name(), () -> runEntry(entry, interval)));
+    } catch (final RejectedExecutionException ex) {
+      entry.state().abort();
+      log.debug("{} rejected because the scheduler is shutting down", entry.name());
+    }
+  }
+
+  private void runEntry(final TimerEntry entry, final Duration interval) {
+    final var state = entry.state();
+    state.recordStart(Instant.now(), interval);
+    try {
+      entry.task().run();
+    } catch (final Throwable ex) {
+      log.error("Unexpected error running scheduled task {}", entry.name(), ex);
+    } finally {
+      final var rerun = state.recordEnd(Instant.now());
+      logRun(entry.name(), state, interval);
+      if (rerun && running) {
+        dispatch(entry, interval);
+      } else if (rerun) {
+        state.abort();
+      }
+    }
+  }
+
+  private void logRun(final String name, final TaskRunState state, final Duration interval) {
+    final var duration = state.getLastDuration().getOrElse(Duration.ZERO);
+    final var ratio = state.getOverrunRatio();
+    if (ratio > 1.0) {
+      log.warn(
+          "{} took {}s which overran its {}s interval (overrun ratio {})",
+          name,
+          duration.toSeconds(),
+          interval.toSeconds(),
+          String.format("%.2f", ratio));
+    } else {
+      log.debug(
+          "{} took {}s of its {}s interval (overrun ratio {})",
+          name,
+          duration.toSeconds(),
+          interval.toSeconds(),
+          String.format("%.2f", ratio));
+    }
+  }
+
+  private ZonedDateTime nextFire(final TimerEntry entry) {
+    final var now = now();
+    final var next = entry.schedule().next(entry.fireAt(), entry.staggerSecs());
+    // If the timer itself fell behind, missed slots are not replayed one after another
+    return next.isBefore(now) ? entry.schedule().next(now, entry.staggerSecs()) : next;
+  }
+
+  private ZonedDateTime now() {
+    return ZonedDateTime.now(zone);
+  }
+
+  private record TimerEntry(
+      String name,
+      Runnable task,
+      Schedule schedule,
+      long staggerSecs,
+      ZonedDateTime fireAt,
+      Executor lane,
+      TaskRunState state)
+      implements Delayed {
+    TimerEntry reschedule(final ZonedDateTime nextFireAt) {
+      return new TimerEntry(name, task, schedule, staggerSecs, nextFireAt, lane, state);
+    }
+
+    @Override
+    public long getDelay(final TimeUnit unit) {
+      return unit.convert(
+          fireAt.toInstant().toEpochMilli() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(final Delayed other) {
+      return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.compression.CompressionStage;
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WalReceiverSupervisor {
+
+  public static final String PG_RECEIVEWAL_CMD = "pg_receivewal";
+  public static final String DIRECTORY_ARG = "-D";
+  public static final String SLOT_ARG = "--slot=%s";
+  public static final String CREATE_SLOT_ARG = "--create-slot";
+  public static final String IF_NOT_EXISTS_ARG = "--if-not-exists";
+  public static final String NO_LOOP_ARG = "--no-loop";
+  public static final String COMPRESS_ARG = "-Z";
+
+  private static final Logger log = LoggerFactory.getLogger(WalReceiverSupervisor.class);
+  private static final Duration MIN_BACKOFF = Duration.ofSeconds(5);
+  private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+  private static final Duration HEALTHY_RUN = Duration.ofMinutes(10);
+
+  private final PropertyStore propStore;
+  private final EmailService emailService;
+  private final ProcessProvider processProvider;
+  private final String slot;
+  private final CompressionStage compression;
+  private final Duration minBackoff;
+  private final Duration maxBackoff;
+  private final Object lock = new Object();
+  private final AtomicInteger restartCount = new AtomicInteger(0);
+  private volatile boolean running = false;
+  private volatile Process currentProcess;
+  private Thread thread;
+
+  public WalReceiverSupervisor(
+      final PropertyStore propStore,
+      final PostgresWalConfig walConfig,
+      final EmailService emailService) {
+    this(propStore, walConfig, emailService, ProcessProvider.DEFAULT, MIN_BACKOFF, MAX_BACKOFF);
+  }
+
+  WalReceiverSupervisor(
+      final PropertyStore propStore,
+      final PostgresWalConfig walConfig,
+      final EmailService emailService,
+      final ProcessProvider processProvider,
+      final Duration minBackoff,
+      final Duration maxBackoff) {
+    this.propStore = propStore;
+    this.emailService = emailService;
+    this.processProvider = processProvider;
+    this.slot = Option.of(walConfig.slot()).getOrElse(BackupConstants.DEFAULT_WAL_SLOT);
+    this.compression = CompressionStage.of(walConfig.compression());
+    this.minBackoff = minBackoff;
+    this.maxBackoff = maxBackoff;
+  }
+
+  public static Path getWalDirectory(final PropertyStore propStore) {
+    return Paths.get(
+        propStore.getOutputRootDirectory(),
+        BackupConstants.POSTGRES_WAL_DIR,
+        BackupConstants.WAL_SEGMENT_DIR);
+  }
+
+  public void start() {
+    running = true;
+    thread = Thread.ofPlatform().name("wal-receiver").daemon().start(this::supervise);
+  }
+
+  public boolean stop(final long timeout, final TimeUnit unit) {
+    running = false;
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+    if (thread == null) {
+      return true;
+    }
+
+    // pg_receivewal flushes the current segment and exits cleanly on SIGTERM
+    Option.of(currentProcess).forEach(Process::destroy);
+    return Try.of(
+            () -> {
+              thread.join(unit.toMillis(timeout));
+              if (thread.isAlive()) {
+                Option.of(currentProcess)
+                    .forEach(
+                        process ->
+                            ProcessReaper.terminate(
+                                process,
+                                Duration.ofSeconds(BackupConstants.PROCESS_KILL_GRACE_SECS)));
+                return false;
+              }
+              return true;
+            })
+        .getOrElse(false);
+  }
+
+  public int getRestartCount() {
+    return restartCount.get();
+  }
+
+  private void supervise() {
+    final var host = getHost();
+    var backoff = minBackoff;
+    var alerted = false;
+    while (running) {
+      final var started = Instant.now();
+      final var result =
+          Try.of(() -> Files.createDirectories(getWalDirectory(propStore)))
+              .flatMap(dir -> runProcess(createSlotCommand()))
+              .flatMap(exitCode -> runProcess(createReceiveCommand()));
+      if (!running) {
+        break;
+      }
+
+      if (Duration.between(started, Instant.now()).compareTo(HEALTHY_RUN) >= 0) {
+        backoff = minBackoff;
+        alerted = false;
+      }
+
+      // pg_receivewal only returns on its own when it loses the connection or fails
+      final Throwable ex =
+          result.fold(
+              error -> error, exitCode -> new BackupException("pg_receivewal exited unexpectedly"));
+      log.error(
+          String.format(
+              "WAL receiver for Postgres Host %s stopped, restarting in %d seconds",
+              host, backoff.toSeconds()),
+          ex);
+      if (!alerted) {
+        emailService.sendPostgresWalErrorAlertEmail(host, ex);
+        alerted = true;
+      }
+
+      restartCount.incrementAndGet();
+      waitFor(backoff);
+      final var doubled = backoff.multipliedBy(2);
+      backoff = doubled.compareTo(maxBackoff) > 0 ? maxBackoff : doubled;
+    }
+    log.info("WAL receiver for Postgres Host {} stopped", host);
+  }
+
+  private void waitFor(final Duration duration) {
+    synchronized (lock) {
+      if (running) {
+        Try.run(() -> lock.wait(duration.toMillis()));
+      }
+    }
+  }
+
+  private Try<Integer> runProcess(final String[] command) {
+    log.debug("Running WAL receiver Command {}", Arrays.toString(command));
+    final var environment =
+        Map.of(PostgresBackupTask.PASSWORD_ENV, propStore.getPostgresPassword());
+    return Try.of(() -> processProvider.provide(command, environment))
+        .flatMap(
+            process -> {
+              currentProcess = process;
+              if (!running) {
+                process.destroy();
+              }
+              final var pump = ProcessPump.attach(process).start(OutputStream.nullOutputStream());
+              return Try.of(process::waitFor)
+                  .flatMap(
+                      exitCode -> {
+                        if (exitCode == 0 || !running) {
+                          return Try.success(exitCode);
+                        }
+                        return pump.awaitStderr()
+                            .flatMap(content -> Try.failure(new BackupException(content)));
+                      });
+            });
+  }
+
+  private List<String> createBaseCommand() {
+    final var command = new ArrayList<String>();
+    command.add(PG_RECEIVEWAL_CMD);
+    command.add(PostgresBackupTask.HOST_ARG);
+    command.add(propStore.getPostgresHost());
+    command.add(PostgresBackupTask.PORT_ARG);
+    command.add(propStore.getPostgresPort());
+    command.add(PostgresBackupTask.USER_ARG);
+    command.add(propStore.getPostgresUser());
+    command.add(SLOT_ARG.formatted(slot));
+    return command;
+  }
+
+  private String[] createSlotCommand() {
+    final var command = createBaseCommand();
+    command.add(CREATE_SLOT_ARG);
+    command.add(IF_NOT_EXISTS_ARG);
+    return command.toArray(String[]::new);
+  }
+
+  private String[] createReceiveCommand() {
+    final var command = createBaseCommand();
+    command.add(DIRECTORY_ARG);
+    command.add(getWalDirectory(propStore).toString());
+    command.add(NO_LOOP_ARG);
+    if (compression.isEnabled()) {
+      // Only gzip is supported by pg_receivewal, which is enforced when the config is read
+      command.add(COMPRESS_ARG + compression.getLevel());
+    }
+    return command.toArray(String[]::new);
+  }
+
+  private String getHost() {
+    return "%s:%s".formatted(propStore.getPostgresHost(), propStore.getPostgresPort());
+  }
+}
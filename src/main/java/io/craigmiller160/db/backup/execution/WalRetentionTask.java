@@ -0,0 +1,141 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.Tuple;
+import io.vavr.collection.Stream;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WalRetentionTask implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(WalRetentionTask.class);
+  private static final String HISTORY_SUFFIX = ".history";
+
+  private final PropertyStore propStore;
+  private final int baseBackupRetention;
+
+  public WalRetentionTask(final PropertyStore propStore, final PostgresWalConfig walConfig) {
+    this.propStore = propStore;
+    this.baseBackupRetention =
+        Math.max(
+            1,
+            Option.of(walConfig.baseBackupRetention())
+                .getOrElse(BackupConstants.DEFAULT_BASE_BACKUP_RETENTION));
+  }
+
+  @Override
+  public void run() {
+    final var baseDir = PostgresBaseBackupTask.getBaseBackupDirectory(propStore);
+    final var walDir = WalReceiverSupervisor.getWalDirectory(propStore);
+    if (!Files.exists(baseDir)) {
+      log.info("No Postgres base backups exist yet, skipping WAL retention");
+      return;
+    }
+
+    Try.of(
+            () ->
+                Stream.ofAll(Files.list(baseDir))
+                    .flatMap(
+                        path ->
+                            BackupFileNames.parseTimestamp(path.getFileName().toString())
+                                .map(timestamp -> Tuple.of(path, timestamp)))
+                    .sorted(Comparator.comparing(tuple -> tuple._2, Comparator.reverseOrder())))
+        .onSuccess(
+            baseBackups -> {
+              final var removedBaseBackups =
+                  delete(baseBackups.drop(baseBackupRetention).map(tuple -> tuple._1));
+              log.info(
+                  "Finished removing old Postgres base backups. Success: {} Failure: {}",
+                  removedBaseBackups.successCount(),
+                  removedBaseBackups.failureCount());
+
+              // A segment last written before the oldest kept base backup started cannot hold
+              // anything needed to replay from that backup
+              baseBackups
+                  .take(baseBackupRetention)
+                  .lastOption()
+                  .map(
+                      oldest ->
+                          oldest
+                              ._2
+                              .toInstant()
+                              .minus(Duration.ofMinutes(BackupConstants.WAL_RETENTION_GRACE_MINS)))
+                  .forEach(cutoff -> pruneWal(walDir, cutoff));
+            })
+        .onFailure(ex -> log.error("Error applying Postgres WAL retention", ex));
+  }
+
+  private void pruneWal(final Path walDir, final Instant cutoff) {
+    if (!Files.exists(walDir)) {
+      return;
+    }
+
+    Try.of(
+            () ->
+                Stream.ofAll(Files.list(walDir))
+                    .filter(
+                        path -> {
+                          final var fileName = path.getFileName().toString();
+                          return !fileName.endsWith(HISTORY_SUFFIX)
+                              && !fileName.endsWith(BackupConstants.PARTIAL_SUFFIX);
+                        })
+                    .filter(
+                        path ->
+                            Try.of(() -> Files.getLastModifiedTime(path).toInstant())
+                                .map(modified -> modified.isBefore(cutoff))
+                                .getOrElse(false)))
+        .map(this::delete)
+        .onSuccess(
+            result ->
+                log.info(
+                    "Finished removing Postgres WAL segments older than {}. Success: {} Failure: {}",
+                    cutoff,
+                    result.successCount(),
+                    result.failureCount()))
+        .onFailure(ex -> log.error("Error removing old Postgres WAL segments", ex));
+  }
+
+  private CleanupResult delete(final Stream<Path> paths) {
+    return paths.foldLeft(
+        new CleanupResult(0, 0),
+        (result, path) ->
+            Try.run(
+                    () -> {
+                      if (Files.isDirectory(path)) {
+                        FileUtils.deleteDirectory(path.toFile());
+                      } else {
+                        Files.delete(path);
+                      }
+                    })
+                .map(v -> new CleanupResult(result.successCount() + 1, result.failureCount()))
+                .onFailure(ex -> log.debug("Failed to remove Postgres WAL file " + path, ex))
+                .getOrElse(new CleanupResult(result.successCount(), result.failureCount() + 1)));
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class WorkQueue {
+
+  private static final Logger log = LoggerFactory.getLogger(WorkQueue.class);
+
+  private final ExecutorService workers;
+  private final ToLongFunction<String> priority;
+  private final Map<String, HostLane> lanes = new ConcurrentHashMap<>();
+  private final AtomicLong sequence = new AtomicLong(0);
+
+  public WorkQueue(final ExecutorService workers) {
+    this(workers, name -> 0L);
+  }
+
+  // The priority of a job is read once when it is queued, higher values run first
+  public WorkQueue(final ExecutorService workers, final ToLongFunction<String> priority) {
+    this.workers = workers;
+    this.priority = priority;
+  }
+
+  public Executor forHost(final String host, final int maxConcurrent) {
+    return lanes.computeIfAbsent(host, key -> new HostLane(key, maxConcurrent));
+  }
+
+  public int getPendingCount(final String host) {
+    final var lane = lanes.get(host);
+    if (lane == null) {
+      return 0;
+    }
+    synchronized (lane) {
+      return lane.pending.size();
+    }
+  }
+
+  public boolean stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+    lanes
+        .values()
+        .forEach(
+            lane -> {
+              synchronized (lane) {
+                lane.pending.clear();
+              }
+            });
+    workers.shutdown();
+    return workers.awaitTermination(timeout, unit);
+  }
+
+  private static String getName(final Runnable job) {
+    if (job instanceof NamedJob namedJob) {
+      return namedJob.name();
+    }
+    return "";
+  }
+
+  private record PendingJob(long priority, long sequence, Runnable job) {}
+
+  private class HostLane implements Executor {
+    private final String host;
+    private final int maxConcurrent;
+    // Waiting jobs are ordered by priority, falling back to arrival order
+    private final Queue<PendingJob> pending =
+        new PriorityQueue<>(
+            Comparator.comparingLong(PendingJob::priority)
+                .reversed()
+                .thenComparingLong(PendingJob::sequence));
+    private int running = 0;
+
+    private HostLane(final String host, final int maxConcurrent) {
+      this.host = host;
+      this.maxConcurrent = maxConcurrent;
+    }
+
+    @Override
+    public void execute(final Runnable job) {
+      synchronized (this) {
+        if (maxConcurrent > 0 && running >= maxConcurrent) {
+          log.debug("Host {} is busy, queueing job ({} already waiting)", host, pending.size());
+          pending.add(
+              new PendingJob(priority.applyAsLong(getName(job)), sequence.getAndIncrement(), job));
+          return;
+        }
+        running++;
+      }
+      dispatch(job);
+    }
+
+    private void dispatch(final Runnable job) {
+      try {
+        workers.execute(
+            () -> {
+              try {
+                job.run();
+              } finally {
+                onComplete();
+              }
+            });
+      } catch (final RejectedExecutionException ex) {
+        synchronized (this) {
+          running--;
+        }
+        throw ex;
+      }
+    }
+
+    private void onComplete() {
+      final PendingJob next;
+      synchronized (this) {
+        next = pending.poll();
+        if (next == null) {
+          running--;
+          return;
+        }
+      }
+      try {
+        dispatch(next.job());
+      } catch (final RejectedExecutionException ex) {
+        log.debug("Dropping queued job for host {} because the work queue is shutting down", host);
+      }
+    }
+  }
+}
@@ -38,7 +38,13 @@ public class PropertyStore {
   public static final String DB_MONGO_PASSWORD = "db.mongo.password";
   public static final String DB_MONGO_AUTH_DB = "db.mongo.auth-database";
   public static final String EXECUTOR_THREAD_COUNT = "executor.thread-count";
+  public static final String EXECUTOR_MODE = "executor.mode";
+  public static final String EXECUTOR_OVERLAP_POLICY = "executor.overlap-policy";
   public static final String EXECUTOR_INTERVAL_SECS = "executor.interval-secs";
+  public static final String EXECUTOR_STAGGER_SECS = "executor.stagger-secs";
+  public static final String EXECUTOR_JITTER_SECS = "executor.jitter-secs";
+  public static final String EXECUTOR_POSTGRES_MAX_CONCURRENT = "executor.postgres.max-concurrent";
+  public static final String EXECUTOR_MONGO_MAX_CONCURRENT = "executor.mongo.max-concurrent";
   public static final String OUTPUT_ROOT_DIR = "output.root-directory";
   public static final String CONFIG_FILE = "config.file";
   public static final String EMAIL_HOST = "email.host";
@@ -49,7 +55,15 @@ public class PropertyStore {
   public static final String AUTH_CLIENT_SECRET = "auth.client-secret";
   public static final String AUTH_REALM = "auth.realm";
   public static final String OUTPUT_CLEANUP_AGE_DAYS = "output.cleanup.age-days";
+  public static final String OUTPUT_CLEANUP_THREADS = "output.cleanup.threads";
+  public static final String OUTPUT_CLEANUP_MAX_DELETES_PER_SEC =
+      "output.cleanup.max-deletes-per-sec";
   public static final String MONGODUMP_COMMAND = "mongodump.command";
+  public static final String MONGORESTORE_COMMAND = "mongorestore.command";
+  public static final String MONGOSH_COMMAND = "mongosh.command";
+  public static final String VERIFY_INTERVAL_SECS = "verify.interval-secs";
+  public static final String VERIFY_MAX_BYTES_PER_SEC = "verify.max-bytes-per-sec";
+  public static final String VERIFY_MAX_BYTES_PER_RUN = "verify.max-bytes-per-run";
 
   private static final Map<String, PropertyValidator> PROPERTY_VALIDATION_MAP =
       HashMap.ofEntries(
@@ -63,7 +77,13 @@ public class PropertyStore {
           Tuple.of(DB_MONGO_PASSWORD, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(DB_MONGO_AUTH_DB, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(EXECUTOR_THREAD_COUNT, PropertyValidator.IS_NUMERIC),
+          Tuple.of(EXECUTOR_MODE, PropertyValidator.isOneOf("platform", "virtual")),
+          Tuple.of(EXECUTOR_OVERLAP_POLICY, PropertyValidator.isOneOf("skip", "coalesce")),
           Tuple.of(EXECUTOR_INTERVAL_SECS, PropertyValidator.IS_NUMERIC),
+          Tuple.of(EXECUTOR_STAGGER_SECS, PropertyValidator.IS_NUMERIC),
+          Tuple.of(EXECUTOR_JITTER_SECS, PropertyValidator.IS_NUMERIC),
+          Tuple.of(EXECUTOR_POSTGRES_MAX_CONCURRENT, PropertyValidator.IS_NUMERIC),
+          Tuple.of(EXECUTOR_MONGO_MAX_CONCURRENT, PropertyValidator.IS_NUMERIC),
           Tuple.of(OUTPUT_ROOT_DIR, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(CONFIG_FILE, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(EMAIL_HOST, PropertyValidator.IS_NOT_BLANK),
@@ -74,7 +94,14 @@ public class PropertyStore {
           Tuple.of(AUTH_CLIENT_SECRET, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(AUTH_REALM, PropertyValidator.IS_NOT_BLANK),
           Tuple.of(OUTPUT_CLEANUP_AGE_DAYS, PropertyValidator.IS_NUMERIC),
-          Tuple.of(MONGODUMP_COMMAND, PropertyValidator.IS_NOT_BLANK));
+          Tuple.of(OUTPUT_CLEANUP_THREADS, PropertyValidator.IS_NUMERIC),
+          Tuple.of(OUTPUT_CLEANUP_MAX_DELETES_PER_SEC, PropertyValidator.IS_NUMERIC),
+          Tuple.of(MONGODUMP_COMMAND, PropertyValidator.IS_NOT_BLANK),
+          Tuple.of(MONGORESTORE_COMMAND, PropertyValidator.IS_NOT_BLANK),
+          Tuple.of(MONGOSH_COMMAND, PropertyValidator.IS_NOT_BLANK),
+          Tuple.of(VERIFY_INTERVAL_SECS, PropertyValidator.IS_NUMERIC),
+          Tuple.of(VERIFY_MAX_BYTES_PER_SEC, PropertyValidator.IS_NUMERIC),
+          Tuple.of(VERIFY_MAX_BYTES_PER_RUN, PropertyValidator.IS_NUMERIC));
 
   private final Properties props;
 
@@ -120,10 +147,34 @@ public class PropertyStore {
     return Integer.parseInt(props.getProperty(EXECUTOR_THREAD_COUNT));
   }
 
+  public String getExecutorMode() {
+    return props.getProperty(EXECUTOR_MODE);
+  }
+
+  public String getExecutorOverlapPolicy() {
+    return props.getProperty(EXECUTOR_OVERLAP_POLICY);
+  }
+
   public int getExecutorIntervalSecs() {
     return Integer.parseInt(props.getProperty(EXECUTOR_INTERVAL_SECS));
   }
 
+  public int getExecutorStaggerSecs() {
+    return Integer.parseInt(props.getProperty(EXECUTOR_STAGGER_SECS));
+  }
+
+  public int getExecutorJitterSecs() {
+    return Integer.parseInt(props.getProperty(EXECUTOR_JITTER_SECS));
+  }
+
+  public int getExecutorPostgresMaxConcurrent() {
+    return Integer.parseInt(props.getProperty(EXECUTOR_POSTGRES_MAX_CONCURRENT));
+  }
+
+  public int getExecutorMongoMaxConcurrent() {
+    return Integer.parseInt(props.getProperty(EXECUTOR_MONGO_MAX_CONCURRENT));
+  }
+
   public String getOutputRootDirectory() {
     return props.getProperty(OUTPUT_ROOT_DIR);
   }
@@ -164,6 +215,14 @@ public class PropertyStore {
     return Integer.parseInt(props.getProperty(OUTPUT_CLEANUP_AGE_DAYS));
   }
 
+  public int getOutputCleanupThreadCount() {
+    return Integer.parseInt(props.getProperty(OUTPUT_CLEANUP_THREADS));
+  }
+
+  public int getOutputCleanupMaxDeletesPerSec() {
+    return Integer.parseInt(props.getProperty(OUTPUT_CLEANUP_MAX_DELETES_PER_SEC));
+  }
+
   public String getMongoHost() {
     return props.getProperty(DB_MONGO_HOST);
   }
@@ -187,4 +246,24 @@ public class PropertyStore {
   public String getMongodumpCommand() {
     return props.getProperty(MONGODUMP_COMMAND);
   }
+
+  public String getMongorestoreCommand() {
+    return props.getProperty(MONGORESTORE_COMMAND);
+  }
+
+  public String getMongoshCommand() {
+    return props.getProperty(MONGOSH_COMMAND);
+  }
+
+  public int getVerifyIntervalSecs() {
+    return Integer.parseInt(props.getProperty(VERIFY_INTERVAL_SECS));
+  }
+
+  public long getVerifyMaxBytesPerSec() {
+    return Long.parseLong(props.getProperty(VERIFY_MAX_BYTES_PER_SEC));
+  }
+
+  public long getVerifyMaxBytesPerRun() {
+    return Long.parseLong(props.getProperty(VERIFY_MAX_BYTES_PER_RUN));
+  }
 }
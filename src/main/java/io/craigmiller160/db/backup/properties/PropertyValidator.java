@@ -26,5 +26,9 @@ public interface PropertyValidator {
   PropertyValidator IS_NUMERIC =
       (value) -> StringUtils.isNotBlank(value) && StringUtils.isNumeric(value);
 
+  static PropertyValidator isOneOf(final String... allowed) {
+    return (value) -> StringUtils.equalsAnyIgnoreCase(StringUtils.trim(value), allowed);
+  }
+
   boolean validate(final String value);
 }
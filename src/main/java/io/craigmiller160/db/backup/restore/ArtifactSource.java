@@ -0,0 +1,169 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import com.github.luben.zstd.ZstdInputStream;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.vavr.control.Option;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A backup as it is stored on disk. Files can be compressed or deduplicated into a manifest, and
+ * are turned back into the plain dump output on the fly while they are read.
+ */
+public class ArtifactSource {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+  private static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+
+  private final Path path;
+  private final ChunkStore chunkStore;
+  private final boolean manifest;
+  private final Option<CompressionType> compression;
+  private final UnaryOperator<OutputStream> outputDecorator;
+
+  private ArtifactSource(
+      final Path path,
+      final ChunkStore chunkStore,
+      final boolean manifest,
+      final Option<CompressionType> compression,
+      final UnaryOperator<OutputStream> outputDecorator) {
+    this.path = path;
+    this.chunkStore = chunkStore;
+    this.manifest = manifest;
+    this.compression = compression;
+    this.outputDecorator = outputDecorator;
+  }
+
+  public static ArtifactSource of(final Path path, final ChunkStore chunkStore) throws IOException {
+    if (!Files.exists(path)) {
+      throw new IOException("Backup does not exist: " + path);
+    }
+    final var manifest = path.getFileName().toString().endsWith(ChunkStore.MANIFEST_EXTENSION);
+    // Compression is detected from the content, since mongodump's own --gzip archives share the
+    // .gz extension but are not gzip streams
+    final Option<CompressionType> compression =
+        Files.isDirectory(path) || manifest ? Option.none() : detectCompression(path);
+    return new ArtifactSource(path, chunkStore, manifest, compression, UnaryOperator.identity());
+  }
+
+  public ArtifactSource withOutput(final UnaryOperator<OutputStream> decorator) {
+    return new ArtifactSource(path, chunkStore, manifest, compression, decorator);
+  }
+
+  private static Option<CompressionType> detectCompression(final Path path) throws IOException {
+    final byte[] header;
+    try (final var input = Files.newInputStream(path)) {
+      header = input.readNBytes(ZSTD_MAGIC.length);
+    }
+    if (startsWith(header, GZIP_MAGIC)) {
+      return Option.some(CompressionType.GZIP);
+    }
+    if (startsWith(header, ZSTD_MAGIC)) {
+      return Option.some(CompressionType.ZSTD);
+    }
+    return Option.none();
+  }
+
+  private static boolean startsWith(final byte[] header, final byte[] magic) {
+    return header.length >= magic.length
+        && Arrays.equals(Arrays.copyOf(header, magic.length), magic);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public boolean isDirectory() {
+    return Files.isDirectory(path);
+  }
+
+  public boolean isManifest() {
+    return manifest;
+  }
+
+  public Option<CompressionType> getCompression() {
+    return compression;
+  }
+
+  // Whether a tool can be pointed straight at the file instead of being fed it through stdin
+  public boolean isReadableInPlace() {
+    return isDirectory() || (!manifest && compression.isEmpty());
+  }
+
+  // The name before any compression or dedup extension was added
+  public String getDumpName() {
+    final var fileName = path.getFileName().toString();
+    if (manifest) {
+      return fileName.substring(0, fileName.length() - ChunkStore.MANIFEST_EXTENSION.length());
+    }
+    return compression
+        .map(CompressionType::getExtension)
+        .filter(fileName::endsWith)
+        .map(extension -> fileName.substring(0, fileName.length() - extension.length()))
+        .getOrElse(fileName);
+  }
+
+  public long getSizeBytes() throws IOException {
+    return isDirectory() ? FileUtils.sizeOfDirectory(path.toFile()) : Files.size(path);
+  }
+
+  public long writeTo(final OutputStream output) throws IOException {
+    final var decorated = outputDecorator.apply(output);
+    final long bytes;
+    if (manifest) {
+      bytes = chunkStore.restore(path, decorated);
+    } else {
+      try (final var input = open()) {
+        bytes = input.transferTo(decorated);
+      }
+    }
+    decorated.flush();
+    return bytes;
+  }
+
+  public Path materialize(final Path file) throws IOException {
+    try (final var output = Files.newOutputStream(file)) {
+      writeTo(output);
+    }
+    return file;
+  }
+
+  private InputStream open() throws IOException {
+    final var input = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+    if (compression.isEmpty()) {
+      return input;
+    }
+    return switch (compression.get()) {
+      case GZIP -> new GZIPInputStream(input, BUFFER_SIZE);
+      case ZSTD -> new ZstdInputStream(input);
+    };
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.execution.MongoBackupTask;
+import io.craigmiller160.db.backup.execution.ProcessRunner;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MongoRestorer {
+
+  private static final Logger log = LoggerFactory.getLogger(MongoRestorer.class);
+
+  public static final String DIR_ARG = "--dir=%s";
+  public static final String ARCHIVE_PATH_ARG = "--archive=%s";
+  public static final String NS_INCLUDE_ARG = "--nsInclude=%s.*";
+  public static final String NS_FROM_ARG = "--nsFrom=%s.*";
+  public static final String NS_TO_ARG = "--nsTo=%s.*";
+  public static final String DROP_ARG = "--drop";
+  public static final String PARALLEL_COLLECTIONS_ARG = "--numParallelCollections=%d";
+  public static final String INSERTION_WORKERS_ARG = "--numInsertionWorkersPerCollection=%d";
+  private static final Pattern RESULT_PATTERN =
+      Pattern.compile(
+          "(\\d+) document\\(s\\) restored successfully\\. (\\d+) document\\(s\\) failed to restore");
+
+  private final ProcessRunner processRunner;
+  private final String restoreCommand;
+  private final List<String> connectionArgs;
+
+  public MongoRestorer(
+      final ProcessRunner processRunner,
+      final String restoreCommand,
+      final List<String> connectionArgs) {
+    this.processRunner = processRunner;
+    this.restoreCommand = restoreCommand;
+    this.connectionArgs = connectionArgs;
+  }
+
+  // The rows of the result are the documents mongorestore reports as restored
+  public Try<RestoreResult> restore(
+      final ArtifactSource source,
+      final String sourceDatabase,
+      final String targetDatabase,
+      final boolean drop,
+      final int parallelCollections,
+      final int insertionWorkers) {
+    final var start = System.nanoTime();
+    return Try.of(source::getSizeBytes)
+        .flatMap(
+            sizeBytes ->
+                Try.of(() -> restoreArgs(source))
+                    .flatMap(
+                        restoreArgs -> {
+                          final var command = new ArrayList<String>();
+                          command.add(restoreCommand);
+                          command.addAll(connectionArgs);
+                          command.add(NS_INCLUDE_ARG.formatted(sourceDatabase));
+                          command.add(NS_FROM_ARG.formatted(sourceDatabase));
+                          command.add(NS_TO_ARG.formatted(targetDatabase));
+                          if (drop) {
+                            command.add(DROP_ARG);
+                          }
+                          if (parallelCollections > 0) {
+                            command.add(PARALLEL_COLLECTIONS_ARG.formatted(parallelCollections));
+                          }
+                          if (insertionWorkers > 0) {
+                            command.add(INSERTION_WORKERS_ARG.formatted(insertionWorkers));
+                          }
+                          command.addAll(restoreArgs);
+                          log.debug("Running MongoDB restore Command: {}", command);
+                          return processRunner.run(
+                              command.toArray(String[]::new),
+                              Map.of(),
+                              source.isReadableInPlace()
+                                  ? Option.none()
+                                  : Option.<ProcessRunner.Input>some(source::writeTo),
+                              OutputStream.nullOutputStream());
+                        })
+                    .flatMap(MongoRestorer::parseRestoredCount)
+                    .map(
+                        documents ->
+                            new RestoreResult(
+                                Duration.ofNanos(System.nanoTime() - start),
+                                sizeBytes,
+                                documents)));
+  }
+
+  private static List<String> restoreArgs(final ArtifactSource source) throws IOException {
+    final var args = new ArrayList<String>();
+    if (source.isDirectory()) {
+      args.add(DIR_ARG.formatted(source.getPath()));
+      try (final var files = Files.walk(source.getPath())) {
+        if (files.anyMatch(
+            file -> file.getFileName().toString().endsWith(MongoBackupTask.GZIP_EXTENSION))) {
+          args.add(MongoBackupTask.GZIP_ARG);
+        }
+      }
+      return args;
+    }
+
+    if (source.isReadableInPlace()) {
+      args.add(ARCHIVE_PATH_ARG.formatted(source.getPath()));
+    } else {
+      args.add(MongoBackupTask.ARCHIVE_ARG);
+    }
+    // mongodump's own --gzip output keeps the .gz name but is not a plain gzip stream, so it was
+    // not decompressed on the way in and mongorestore has to do it
+    if (source.getDumpName().endsWith(MongoBackupTask.GZIP_EXTENSION)
+        && !source.getCompression().contains(CompressionType.GZIP)) {
+      args.add(MongoBackupTask.GZIP_ARG);
+    }
+    return args;
+  }
+
+  static Try<Long> parseRestoredCount(final String stderr) {
+    final var matcher = RESULT_PATTERN.matcher(stderr);
+    if (!matcher.find()) {
+      return Try.failure(
+          new BackupException("Unable to find restore results in mongorestore output: " + stderr));
+    }
+    final var restored = Long.parseLong(matcher.group(1));
+    final var failed = Long.parseLong(matcher.group(2));
+    if (failed > 0) {
+      return Try.failure(
+          new BackupException("%d document(s) failed to restore: %s".formatted(failed, stderr)));
+    }
+    return Try.success(restored);
+  }
+}
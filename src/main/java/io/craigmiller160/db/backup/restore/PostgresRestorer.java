@@ -0,0 +1,219 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.execution.BackupConstants;
+import io.craigmiller160.db.backup.execution.ProcessRunner;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PostgresRestorer {
+
+  private static final Logger log = LoggerFactory.getLogger(PostgresRestorer.class);
+
+  public static final String PSQL_CMD = "psql";
+  public static final String PG_RESTORE_CMD = "pg_restore";
+  public static final String PASSWORD_ENV = "PGPASSWORD";
+  public static final String MAINTENANCE_DATABASE = "postgres";
+  public static final String CUSTOM_EXTENSION = ".dump";
+  public static final String TAR_EXTENSION = ".tar";
+  private static final String HOST_ARG = "-h";
+  private static final String PORT_ARG = "-p";
+  private static final String USER_ARG = "-U";
+  private static final String DATABASE_ARG = "-d";
+  private static final String QUERY_ARG = "-c";
+  private static final String FILE_ARG = "-f";
+  private static final String JOBS_ARG = "-j";
+  private static final List<String> PSQL_RESTORE_ARGS = List.of("-v", "ON_ERROR_STOP=1", "-q");
+  private static final List<String> PSQL_QUERY_ARGS = List.of("-X", "-A", "-t", "-q");
+  private static final List<String> PG_RESTORE_ARGS = List.of("--no-owner", "--no-acl");
+  private static final List<String> PG_RESTORE_CLEAN_ARGS = List.of("--clean", "--if-exists");
+  static final String ROW_COUNT_QUERY =
+      """
+      SELECT count(*) || '|' || coalesce(sum((xpath('/row/c/text()', query_to_xml(
+        format('SELECT count(*) AS c FROM %I.%I', schemaname, tablename), false, true, '')))[1]
+        ::text::bigint), 0)
+      FROM pg_tables
+      WHERE schemaname NOT IN ('pg_catalog', 'information_schema')""";
+
+  private final ProcessRunner processRunner;
+  private final String host;
+  private final String port;
+  private final String user;
+  private final String password;
+
+  public PostgresRestorer(
+      final ProcessRunner processRunner,
+      final String host,
+      final String port,
+      final String user,
+      final String password) {
+    this.processRunner = processRunner;
+    this.host = host;
+    this.port = port;
+    this.user = user;
+    this.password = password;
+  }
+
+  // psql has no equivalent of --clean, so plain SQL backups are replayed as they are
+  public Try<RestoreResult> restore(
+      final ArtifactSource source, final String database, final boolean clean, final int jobs) {
+    final var dumpName = source.getDumpName();
+    final var archive =
+        source.isDirectory()
+            || dumpName.endsWith(CUSTOM_EXTENSION)
+            || dumpName.endsWith(TAR_EXTENSION);
+    // pg_restore can only work in parallel from a directory or a seekable custom format file, so
+    // a compressed or deduplicated custom dump is unpacked next to it first
+    final var parallel = jobs > 1 && (source.isDirectory() || dumpName.endsWith(CUSTOM_EXTENSION));
+    final Option<Path> unpacked =
+        parallel && !source.isReadableInPlace()
+            ? Option.some(
+                source
+                    .getPath()
+                    .resolveSibling(dumpName + ".restore" + BackupConstants.PARTIAL_SUFFIX))
+            : Option.none();
+
+    final var start = System.nanoTime();
+    return Try.of(source::getSizeBytes)
+        .flatMap(
+            sizeBytes ->
+                Try.of(
+                        () ->
+                            unpacked.isDefined()
+                                ? Option.some(source.materialize(unpacked.get()))
+                                : Option.when(source.isReadableInPlace(), source::getPath))
+                    .flatMap(
+                        inPlace -> {
+                          final var command =
+                              restoreCommand(
+                                  database, archive, clean, parallel ? jobs : 1, inPlace);
+                          log.debug("Running Postgres restore Command: {}", command);
+                          return processRunner.run(
+                              command.toArray(String[]::new),
+                              Map.of(PASSWORD_ENV, password),
+                              inPlace.isEmpty()
+                                  ? Option.<ProcessRunner.Input>some(source::writeTo)
+                                  : Option.none(),
+                              OutputStream.nullOutputStream());
+                        })
+                    .map(
+                        stderr ->
+                            new RestoreResult(
+                                Duration.ofNanos(System.nanoTime() - start), sizeBytes, 0)))
+        .andFinally(() -> unpacked.forEach(file -> Try.run(() -> Files.deleteIfExists(file))));
+  }
+
+  private List<String> restoreCommand(
+      final String database,
+      final boolean archive,
+      final boolean clean,
+      final int jobs,
+      final Option<Path> inPlace) {
+    final var command = new ArrayList<String>();
+    command.add(archive ? PG_RESTORE_CMD : PSQL_CMD);
+    command.addAll(connectionArgs(database));
+    if (archive) {
+      command.addAll(PG_RESTORE_ARGS);
+      if (clean) {
+        command.addAll(PG_RESTORE_CLEAN_ARGS);
+      }
+      if (jobs > 1) {
+        command.add(JOBS_ARG);
+        command.add(String.valueOf(jobs));
+      }
+      inPlace.forEach(path -> command.add(path.toString()));
+    } else {
+      command.addAll(PSQL_RESTORE_ARGS);
+      inPlace.forEach(
+          path -> {
+            command.add(FILE_ARG);
+            command.add(path.toString());
+          });
+    }
+    return command;
+  }
+
+  // Fails if the database has no tables at all
+  public Try<Long> countRows(final String database) {
+    final var output = new ByteArrayOutputStream();
+    final var command = new ArrayList<String>();
+    command.add(PSQL_CMD);
+    command.addAll(connectionArgs(database));
+    command.addAll(PSQL_QUERY_ARGS);
+    command.add(QUERY_ARG);
+    command.add(ROW_COUNT_QUERY);
+    return processRunner
+        .run(command.toArray(String[]::new), Map.of(PASSWORD_ENV, password), Option.none(), output)
+        .flatMap(
+            stderr -> {
+              final var counts = output.toString(StandardCharsets.UTF_8).trim().split("\\|");
+              return Try.of(() -> new long[] {Long.parseLong(counts[0]), Long.parseLong(counts[1])})
+                  .filter(
+                      parsed -> parsed[0] > 0,
+                      parsed ->
+                          new BackupException(
+                              "No tables were restored into Database %s".formatted(database)))
+                  .map(parsed -> parsed[1]);
+            });
+  }
+
+  public Try<String> createDatabase(final String database) {
+    return runMaintenanceQuery("CREATE DATABASE %s".formatted(quoteIdentifier(database)));
+  }
+
+  public Try<String> dropDatabase(final String database) {
+    return runMaintenanceQuery(
+        "DROP DATABASE IF EXISTS %s WITH (FORCE)".formatted(quoteIdentifier(database)));
+  }
+
+  private Try<String> runMaintenanceQuery(final String query) {
+    final var command = new ArrayList<String>();
+    command.add(PSQL_CMD);
+    command.addAll(connectionArgs(MAINTENANCE_DATABASE));
+    command.addAll(PSQL_QUERY_ARGS);
+    command.add(QUERY_ARG);
+    command.add(query);
+    return processRunner.run(
+        command.toArray(String[]::new),
+        Map.of(PASSWORD_ENV, password),
+        Option.none(),
+        OutputStream.nullOutputStream());
+  }
+
+  private List<String> connectionArgs(final String database) {
+    return List.of(HOST_ARG, host, PORT_ARG, port, USER_ARG, user, DATABASE_ARG, database);
+  }
+
+  private static String quoteIdentifier(final String value) {
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically logs how far a restore has got. Bytes are counted as they are streamed to the
+ * restore tool, when a tool reads the backup itself only the elapsed time is known.
+ */
+public class ProgressReporter implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ProgressReporter.class);
+  private static final double MEGABYTE = 1024d * 1024d;
+
+  private final String label;
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong bytesStreamed = new AtomicLong();
+  private final ScheduledExecutorService executor;
+
+  public ProgressReporter(final String label, final Duration interval) {
+    this.label = label;
+    this.executor =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("restore-progress").daemon().factory());
+    executor.scheduleAtFixedRate(
+        this::report, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public OutputStream wrap(final OutputStream output) {
+    return new FilterOutputStream(output) {
+      @Override
+      public void write(final int b) throws IOException {
+        out.write(b);
+        bytesStreamed.incrementAndGet();
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        bytesStreamed.addAndGet(len);
+      }
+    };
+  }
+
+  public long getBytesStreamed() {
+    return bytesStreamed.get();
+  }
+
+  private void report() {
+    final var elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+    final var bytes = bytesStreamed.get();
+    if (bytes == 0) {
+      log.info("Restoring {}: {}s elapsed", label, elapsed.toSeconds());
+      return;
+    }
+    final var megabytes = bytes / MEGABYTE;
+    log.info(
+        "Restoring {}: {} MB streamed at {} MB/s, {}s elapsed",
+        label,
+        String.format("%.1f", megabytes),
+        String.format("%.2f", megabytes / Math.max(elapsed.toMillis() / 1000d, 0.001)),
+        elapsed.toSeconds());
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
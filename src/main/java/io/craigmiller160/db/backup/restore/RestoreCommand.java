@@ -0,0 +1,275 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.execution.BackupCatalog;
+import io.craigmiller160.db.backup.execution.BackupConstants;
+import io.craigmiller160.db.backup.execution.MongoBackupTask;
+import io.craigmiller160.db.backup.execution.ProcessProvider;
+import io.craigmiller160.db.backup.execution.ProcessRunner;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restores a stored backup into the configured database server, run as {@code restore <target>
+ * [timestamp] [options]}. The restore runs in parallel wherever the backup format allows it.
+ * Existing data is only dropped with {@code --force}, which is also required to restore into the
+ * database the backup was taken from.
+ */
+public class RestoreCommand {
+
+  private static final Logger log = LoggerFactory.getLogger(RestoreCommand.class);
+
+  public static final String COMMAND = "restore";
+  public static final String USAGE =
+      """
+      Usage: restore <target> [timestamp] [--into=<database>] [--force] [--jobs=<n>] [--insertion-workers=<n>] [--timeout-secs=<n>]
+        target     postgres/{database}/{schema} or mongodb/{database}
+        timestamp  yyyyMMddHHmmss of the backup to restore, the newest one if omitted
+        --into     database to restore into, the one the backup was taken from if omitted
+        --force    drop existing data first, required to restore into the source database""";
+  public static final String MONGO_URI_TEMPLATE =
+      "--uri=mongodb://%s:%s@%s:%d/?authSource=%s&tls=true";
+  private static final String INTO_OPTION = "--into=";
+  private static final String FORCE_OPTION = "--force";
+  private static final String JOBS_OPTION = "--jobs=";
+  private static final String INSERTION_WORKERS_OPTION = "--insertion-workers=";
+  private static final String TIMEOUT_OPTION = "--timeout-secs=";
+  private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(10);
+
+  private final PropertyStore propStore;
+  private final ProcessProvider processProvider;
+
+  public RestoreCommand(final PropertyStore propStore, final ProcessProvider processProvider) {
+    this.propStore = propStore;
+    this.processProvider = processProvider;
+  }
+
+  public RestoreCommand(final PropertyStore propStore) {
+    this(propStore, ProcessProvider.DEFAULT);
+  }
+
+  record Options(
+      String target,
+      Option<String> timestamp,
+      Option<String> into,
+      boolean force,
+      int jobs,
+      int insertionWorkers,
+      Duration timeout) {}
+
+  public Try<RestoreResult> run(final String[] args) {
+    final var outputRoot = Paths.get(propStore.getOutputRootDirectory());
+    // The service may be appending to the catalog while this runs
+    final var catalog = BackupCatalog.readOnly(outputRoot);
+    final var chunkStore = new ChunkStore(outputRoot);
+    return parseOptions(args)
+        .flatMap(RestoreCommand::checkDestination)
+        .flatMap(
+            options ->
+                findBackup(catalog, options)
+                    .flatMap(
+                        entry ->
+                            Try.of(() -> ArtifactSource.of(catalog.resolve(entry), chunkStore))
+                                .flatMap(source -> restore(options, entry, source))));
+  }
+
+  static Try<Options> parseOptions(final String[] args) {
+    return Try.of(
+        () -> {
+          final var positional = List.of(args).filter(arg -> !arg.startsWith("--"));
+          final var flags = List.of(args).filter(arg -> arg.startsWith("--"));
+          if (positional.isEmpty() || positional.size() > 2) {
+            throw new BackupException(USAGE);
+          }
+          final var unknown =
+              flags.find(
+                  flag ->
+                      !FORCE_OPTION.equals(flag)
+                          && !List.of(
+                                  INTO_OPTION,
+                                  JOBS_OPTION,
+                                  INSERTION_WORKERS_OPTION,
+                                  TIMEOUT_OPTION)
+                              .exists(flag::startsWith));
+          if (unknown.isDefined()) {
+            throw new BackupException("Unknown option %s%n%s".formatted(unknown.get(), USAGE));
+          }
+          final Function<String, Option<String>> flag =
+              name ->
+                  flags
+                      .findLast(arg -> arg.startsWith(name))
+                      .map(arg -> arg.substring(name.length()));
+          return new Options(
+              positional.get(0),
+              positional.drop(1).headOption(),
+              flag.apply(INTO_OPTION),
+              flags.contains(FORCE_OPTION),
+              parsePositive(JOBS_OPTION, flag.apply(JOBS_OPTION), Integer::parseInt)
+                  .getOrElse(Runtime.getRuntime().availableProcessors()),
+              parsePositive(
+                      INSERTION_WORKERS_OPTION,
+                      flag.apply(INSERTION_WORKERS_OPTION),
+                      Integer::parseInt)
+                  .getOrElse(0),
+              Duration.ofSeconds(
+                  parsePositive(TIMEOUT_OPTION, flag.apply(TIMEOUT_OPTION), Long::parseLong)
+                      .getOrElse((long) BackupConstants.DEFAULT_RESTORE_TIMEOUT_SECS)));
+        });
+  }
+
+  private static <T extends Number> Option<T> parsePositive(
+      final String option, final Option<String> value, final Function<String, T> parser)
+      throws BackupException {
+    if (value.isEmpty()) {
+      return Option.none();
+    }
+    final var parsed = Try.of(() -> parser.apply(value.get())).filter(n -> n.longValue() > 0);
+    if (parsed.isFailure()) {
+      throw new BackupException(
+          "%s must be a positive number, was %s%n%s".formatted(option, value.get(), USAGE));
+    }
+    return parsed.toOption();
+  }
+
+  // Restoring over the source database replaces live data, so it has to be asked for explicitly
+  static Try<Options> checkDestination(final Options options) {
+    final var parts = options.target().split("/");
+    final var sourceDatabase = parts.length > 1 ? parts[1] : "";
+    if (!options.force() && options.into().forAll(sourceDatabase::equals)) {
+      return Try.failure(
+          new BackupException(
+              "Restoring into the source database %s requires --force, or use --into=<database>%n%s"
+                  .formatted(sourceDatabase, USAGE)));
+    }
+    return Try.success(options);
+  }
+
+  static Try<BackupCatalog.Entry> findBackup(final BackupCatalog catalog, final Options options) {
+    final var entries = List.ofAll(catalog.getEntries(options.target()));
+    if (entries.isEmpty()) {
+      return Try.failure(new BackupException("No backups found for " + options.target()));
+    }
+    if (options.timestamp().isEmpty()) {
+      return entries
+          .filter(entry -> BackupCatalog.STATUS_OK.equals(entry.status()))
+          .lastOption()
+          .toTry(() -> new BackupException("No good backups found for " + options.target()));
+    }
+    return Try.of(
+            () ->
+                LocalDateTime.parse(options.timestamp().get(), BackupConstants.FORMAT)
+                    .atZone(ZoneId.of(BackupConstants.TIME_ZONE))
+                    .toEpochSecond())
+        .flatMap(
+            epochSecond ->
+                entries
+                    .find(entry -> entry.epochSecond() == epochSecond)
+                    .toTry(
+                        () ->
+                            new BackupException(
+                                "No backup of %s found at %s"
+                                    .formatted(options.target(), options.timestamp().get()))))
+        .peek(
+            entry -> {
+              if (!BackupCatalog.STATUS_OK.equals(entry.status())) {
+                log.warn("Backup {} is marked {}", entry.relativePath(), entry.status());
+              }
+            });
+  }
+
+  private Try<RestoreResult> restore(
+      final Options options, final BackupCatalog.Entry entry, final ArtifactSource source) {
+    final var processRunner = new ProcessRunner(processProvider, options.timeout());
+    final var parts = options.target().split("/");
+    log.info("Restoring {} with {} jobs", entry.relativePath(), options.jobs());
+    return Try.withResources(() -> new ProgressReporter(entry.relativePath(), PROGRESS_INTERVAL))
+        .of(
+            progress -> {
+              final var tracked = source.withOutput(progress::wrap);
+              if (parts.length == 3
+                  && options.target().equals(BackupCatalog.postgresTarget(parts[1], parts[2]))) {
+                return new PostgresRestorer(
+                        processRunner,
+                        propStore.getPostgresHost(),
+                        propStore.getPostgresPort(),
+                        propStore.getPostgresUser(),
+                        propStore.getPostgresPassword())
+                    .restore(
+                        tracked,
+                        options.into().getOrElse(parts[1]),
+                        options.force(),
+                        options.jobs());
+              }
+              if (parts.length == 2
+                  && options.target().equals(BackupCatalog.mongoTarget(parts[1]))) {
+                return new MongoRestorer(
+                        processRunner,
+                        propStore.getMongorestoreCommand(),
+                        getMongoConnectionArgs().asJava())
+                    .restore(
+                        tracked,
+                        parts[1],
+                        options.into().getOrElse(parts[1]),
+                        options.force(),
+                        options.jobs(),
+                        options.insertionWorkers());
+              }
+              return Try.<RestoreResult>failure(
+                  new BackupException("Unknown backup target: " + options.target()));
+            })
+        .flatMap(Function.identity())
+        .onSuccess(
+            result -> {
+              log.info(
+                  "Restored {} in {}s. Size: {} bytes Throughput: {} MB/s",
+                  entry.relativePath(),
+                  result.elapsed().toSeconds(),
+                  result.sizeBytes(),
+                  String.format("%.2f", result.getMegabytesPerSec()));
+              if (result.rows() > 0) {
+                log.info("Restored {} documents", result.rows());
+              }
+            });
+  }
+
+  private List<String> getMongoConnectionArgs() {
+    return List.of(
+        MONGO_URI_TEMPLATE.formatted(
+            propStore.getMongoUser(),
+            propStore.getMongoPassword(),
+            propStore.getMongoHost(),
+            propStore.getMongoPort(),
+            propStore.getMongoAuthDb()),
+        MongoBackupTask.USE_TLS,
+        MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
+        MongoBackupTask.ALLOW_INVALID_CERTS);
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import java.time.Duration;
+
+public record RestoreResult(Duration elapsed, long sizeBytes, long rows) {
+  public RestoreResult withRows(final long rows) {
+    return new RestoreResult(elapsed, sizeBytes, rows);
+  }
+
+  public double getMegabytesPerSec() {
+    final var seconds = Math.max(elapsed.toMillis(), 1) / 1000d;
+    return sizeBytes / (1024d * 1024d) / seconds;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.execution.BackupConstants;
+import io.craigmiller160.db.backup.execution.ProcessProvider;
+import io.craigmiller160.db.backup.execution.ProcessPump;
+import io.craigmiller160.db.backup.execution.ProcessReaper;
+import io.vavr.control.Try;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A throwaway mongod on a loopback port with its own data directory, so restores can be tested
+ * without touching the real server. Everything is deleted again on close.
+ */
+public class ScratchMongod implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ScratchMongod.class);
+
+  public static final String LOOPBACK = "127.0.0.1";
+  private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+  private static final Duration STARTUP_POLL = Duration.ofMillis(250);
+
+  private final Process process;
+  private final Path dbPath;
+  private final int port;
+
+  private ScratchMongod(final Process process, final Path dbPath, final int port) {
+    this.process = process;
+    this.dbPath = dbPath;
+    this.port = port;
+  }
+
+  public static ScratchMongod start(
+      final ProcessProvider processProvider, final String mongodCommand, final Path dbPath)
+      throws Exception {
+    FileUtils.deleteDirectory(dbPath.toFile());
+    Files.createDirectories(dbPath);
+    final var port = findFreePort();
+    final String[] command = {
+      mongodCommand,
+      "--dbpath",
+      dbPath.toString(),
+      "--port",
+      String.valueOf(port),
+      "--bind_ip",
+      LOOPBACK,
+      "--quiet"
+    };
+    log.debug("Starting scratch mongod on port {} with data in {}", port, dbPath);
+    final var process = processProvider.provide(command, Map.of());
+    final var mongod = new ScratchMongod(process, dbPath, port);
+    ProcessPump.attach(process).start(OutputStream.nullOutputStream());
+    try {
+      mongod.awaitReady();
+    } catch (final Exception ex) {
+      mongod.close();
+      throw ex;
+    }
+    return mongod;
+  }
+
+  private static int findFreePort() throws IOException {
+    try (final var socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private void awaitReady() throws Exception {
+    final var deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new BackupException(
+            "Scratch mongod exited during startup with code " + process.exitValue());
+      }
+      try (final var socket = new Socket()) {
+        socket.connect(new InetSocketAddress(LOOPBACK, port), (int) STARTUP_POLL.toMillis());
+        return;
+      } catch (final IOException ex) {
+        Thread.sleep(STARTUP_POLL.toMillis());
+      }
+    }
+    throw new BackupException(
+        "Scratch mongod did not start within %d seconds".formatted(STARTUP_TIMEOUT.toSeconds()));
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public List<String> getConnectionArgs() {
+    return List.of("--host=" + LOOPBACK, "--port=" + port);
+  }
+
+  @Override
+  public void close() {
+    ProcessReaper.terminate(process, Duration.ofSeconds(BackupConstants.PROCESS_KILL_GRACE_SECS));
+    Try.run(() -> FileUtils.deleteDirectory(dbPath.toFile()))
+        .onFailure(ex -> log.error("Unable to delete scratch mongod data in " + dbPath, ex));
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+public class CronSchedule implements Schedule {
+
+  private static final int MAX_SEARCH_YEARS = 5;
+
+  private final String expression;
+  private final BitSet minutes;
+  private final BitSet hours;
+  private final BitSet daysOfMonth;
+  private final BitSet months;
+  private final BitSet daysOfWeek;
+  private final boolean anyDayOfMonth;
+  private final boolean anyDayOfWeek;
+
+  public CronSchedule(final String expression) {
+    final var fields = expression.trim().split("\\s+");
+    if (fields.length != 5) {
+      throw new IllegalArgumentException(
+          "Cron expression must have 5 fields (minute hour day-of-month month day-of-week): "
+              + expression);
+    }
+    this.expression = expression;
+    this.minutes = parseField(fields[0], 0, 59);
+    this.hours = parseField(fields[1], 0, 23);
+    this.daysOfMonth = parseField(fields[2], 1, 31);
+    this.months = parseField(fields[3], 1, 12);
+    this.daysOfWeek = parseField(fields[4], 0, 7);
+    // Both 0 and 7 mean Sunday
+    if (daysOfWeek.get(7)) {
+      daysOfWeek.set(0);
+    }
+    this.anyDayOfMonth = fields[2].startsWith("*");
+    this.anyDayOfWeek = fields[4].startsWith("*");
+  }
+
+  @Override
+  public ZonedDateTime next(final ZonedDateTime after) {
+    final var limit = after.plusYears(MAX_SEARCH_YEARS);
+    var time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+    while (time.isBefore(limit)) {
+      if (!months.get(time.getMonthValue())) {
+        time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+      } else if (!matchesDay(time)) {
+        time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+      } else if (!hours.get(time.getHour())) {
+        time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+      } else if (!minutes.get(time.getMinute())) {
+        time = time.plusMinutes(1);
+      } else {
+        return time;
+      }
+    }
+    throw new IllegalStateException("Cron expression never fires: " + expression);
+  }
+
+  private boolean matchesDay(final ZonedDateTime time) {
+    final var dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+    final var dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+    // Standard cron behavior: if both day fields are restricted, either one can match
+    if (!anyDayOfMonth && !anyDayOfWeek) {
+      return dayOfMonth || dayOfWeek;
+    }
+    return dayOfMonth && dayOfWeek;
+  }
+
+  private static BitSet parseField(final String field, final int min, final int max) {
+    final var bits = new BitSet(max + 1);
+    for (final var part : field.split(",")) {
+      final var stepParts = part.split("/", -1);
+      if (stepParts.length > 2) {
+        throw new IllegalArgumentException("Invalid cron field: " + field);
+      }
+      final var step = stepParts.length == 2 ? parseNumber(stepParts[1], field) : 1;
+      if (step <= 0) {
+        throw new IllegalArgumentException("Invalid cron step: " + field);
+      }
+
+      final int start;
+      final int end;
+      if ("*".equals(stepParts[0])) {
+        start = min;
+        end = max;
+      } else if (stepParts[0].contains("-")) {
+        final var rangeParts = stepParts[0].split("-", -1);
+        if (rangeParts.length != 2) {
+          throw new IllegalArgumentException("Invalid cron range: " + field);
+        }
+        start = parseNumber(rangeParts[0], field);
+        end = parseNumber(rangeParts[1], field);
+      } else {
+        start = parseNumber(stepParts[0], field);
+        end = stepParts.length == 2 ? max : start;
+      }
+
+      if (start < min || end > max || start > end) {
+        throw new IllegalArgumentException(
+            String.format("Cron field out of range %d-%d: %s", min, max, field));
+      }
+      for (int value = start; value <= end; value += step) {
+        bits.set(value);
+      }
+    }
+    return bits;
+  }
+
+  private static int parseNumber(final String value, final String field) {
+    try {
+      return Integer.parseInt(value);
+    } catch (final NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid cron field: " + field, ex);
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import java.time.ZonedDateTime;
+
+public class IntervalSchedule implements Schedule {
+
+  private final long intervalSecs;
+
+  public IntervalSchedule(final long intervalSecs) {
+    if (intervalSecs <= 0) {
+      throw new IllegalArgumentException("Interval must be greater than 0: " + intervalSecs);
+    }
+    this.intervalSecs = intervalSecs;
+  }
+
+  @Override
+  public ZonedDateTime next(final ZonedDateTime after) {
+    return after.plusSeconds(intervalSecs);
+  }
+
+  // The offset of the first run carries over to every later one
+  @Override
+  public ZonedDateTime next(final ZonedDateTime after, final long staggerSecs) {
+    return next(after);
+  }
+
+  @Override
+  public ZonedDateTime first(final ZonedDateTime now, final long staggerSecs) {
+    return now.plusSeconds(staggerSecs);
+  }
+}
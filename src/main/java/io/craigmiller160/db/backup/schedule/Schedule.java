@@ -0,0 +1,35 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import java.time.ZonedDateTime;
+
+public interface Schedule {
+  ZonedDateTime next(final ZonedDateTime after);
+
+  // Every fire is shifted by the offset, so targets sharing e.g. a cron expression never start
+  // together
+  default ZonedDateTime next(final ZonedDateTime after, final long staggerSecs) {
+    return next(after.minusSeconds(staggerSecs)).plusSeconds(staggerSecs);
+  }
+
+  default ZonedDateTime first(final ZonedDateTime now, final long staggerSecs) {
+    return next(now, staggerSecs);
+  }
+}
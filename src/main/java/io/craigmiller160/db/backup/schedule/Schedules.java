@@ -0,0 +1,67 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import io.craigmiller160.db.backup.config.dto.ScheduleConfig;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+
+public class Schedules {
+
+  private Schedules() {}
+
+  public static Try<Schedule> of(final ScheduleConfig config, final long defaultIntervalSecs) {
+    return Try.of(() -> create(config, defaultIntervalSecs))
+        // Make sure the schedule can actually produce a fire time, e.g. "0 0 30 2 *" never does
+        .andThenTry(schedule -> schedule.next(ZonedDateTime.now()));
+  }
+
+  private static Schedule create(final ScheduleConfig config, final long defaultIntervalSecs) {
+    if (config == null) {
+      return new IntervalSchedule(defaultIntervalSecs);
+    }
+
+    final var hasWindow = config.windowStart() != null || config.windowEnd() != null;
+    if (config.cron() != null) {
+      if (config.intervalSecs() != null || hasWindow) {
+        throw new IllegalArgumentException(
+            "A cron schedule cannot be combined with intervalSecs or a window");
+      }
+      return new CronSchedule(config.cron());
+    }
+
+    final var intervalSchedule =
+        new IntervalSchedule(
+            Option.of(config.intervalSecs())
+                .map(Integer::longValue)
+                .getOrElse(defaultIntervalSecs));
+    if (!hasWindow) {
+      return intervalSchedule;
+    }
+    if (config.windowStart() == null || config.windowEnd() == null) {
+      throw new IllegalArgumentException("Both windowStart and windowEnd must be set");
+    }
+    return new WindowedSchedule(
+        intervalSchedule,
+        LocalTime.parse(config.windowStart()),
+        LocalTime.parse(config.windowEnd()));
+  }
+}
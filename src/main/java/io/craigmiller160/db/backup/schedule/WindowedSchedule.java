@@ -0,0 +1,79 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+
+public class WindowedSchedule implements Schedule {
+
+  private final Schedule delegate;
+  private final LocalTime windowStart;
+  private final LocalTime windowEnd;
+
+  public WindowedSchedule(
+      final Schedule delegate, final LocalTime windowStart, final LocalTime windowEnd) {
+    if (windowStart.equals(windowEnd)) {
+      throw new IllegalArgumentException("Window start and end cannot be the same: " + windowStart);
+    }
+    this.delegate = delegate;
+    this.windowStart = windowStart;
+    this.windowEnd = windowEnd;
+  }
+
+  @Override
+  public ZonedDateTime next(final ZonedDateTime after) {
+    return moveIntoWindow(delegate.next(after), 0);
+  }
+
+  @Override
+  public ZonedDateTime next(final ZonedDateTime after, final long staggerSecs) {
+    return moveIntoWindow(delegate.next(after, staggerSecs), staggerSecs);
+  }
+
+  @Override
+  public ZonedDateTime first(final ZonedDateTime now, final long staggerSecs) {
+    return moveIntoWindow(delegate.first(now, staggerSecs), staggerSecs);
+  }
+
+  boolean isInWindow(final ZonedDateTime time) {
+    final var localTime = time.toLocalTime();
+    if (windowStart.isBefore(windowEnd)) {
+      return !localTime.isBefore(windowStart) && localTime.isBefore(windowEnd);
+    }
+    // The window wraps around midnight, e.g. 22:00 - 04:00
+    return !localTime.isBefore(windowStart) || localTime.isBefore(windowEnd);
+  }
+
+  // Targets pushed to the start of the window keep their stagger offset within it
+  private ZonedDateTime moveIntoWindow(final ZonedDateTime time, final long staggerSecs) {
+    if (isInWindow(time)) {
+      return time;
+    }
+    final var sameDayStart = time.with(windowStart);
+    final var start = sameDayStart.isAfter(time) ? sameDayStart : sameDayStart.plusDays(1);
+    return start.plusSeconds(staggerSecs % getWindowSecs());
+  }
+
+  private long getWindowSecs() {
+    final var secs = Duration.between(windowStart, windowEnd).toSeconds();
+    return secs > 0 ? secs : secs + Duration.ofDays(1).toSeconds();
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.compression;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.luben.zstd.ZstdInputStream;
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+public class CompressionStageTest {
+
+  private static final byte[] DATA =
+      "INSERT INTO table VALUES (1, 'abc');\n".repeat(100_000).getBytes(StandardCharsets.UTF_8);
+
+  private byte[] compress(final CompressionStage stage) throws Exception {
+    final var output = new ByteArrayOutputStream();
+    try (final var compressed = stage.wrap(output)) {
+      compressed.write(DATA);
+    }
+    return output.toByteArray();
+  }
+
+  @Test
+  public void test_none() throws Exception {
+    final var stage = CompressionStage.of(null);
+    assertFalse(stage.isEnabled());
+    assertEquals("", stage.getExtension());
+    assertArrayEquals(DATA, compress(stage));
+  }
+
+  @Test
+  public void test_gzip() throws Exception {
+    final var stage = CompressionStage.of(new CompressionConfig(CompressionType.GZIP, 1, null));
+    assertTrue(stage.isEnabled());
+    assertEquals(".gz", stage.getExtension());
+
+    final var compressed = compress(stage);
+    assertTrue(compressed.length < DATA.length);
+    final var decompressed =
+        new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes();
+    assertArrayEquals(DATA, decompressed);
+  }
+
+  @Test
+  public void test_gzip_parallel() throws Exception {
+    final var stage = CompressionStage.of(new CompressionConfig(CompressionType.GZIP, null, 4));
+    final var compressed = compress(stage);
+    assertTrue(DATA.length > ParallelGzipOutputStream.BLOCK_SIZE);
+    final var decompressed =
+        new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes();
+    assertArrayEquals(DATA, decompressed);
+  }
+
+  @Test
+  public void test_zstd() throws Exception {
+    final var stage = CompressionStage.of(new CompressionConfig(CompressionType.ZSTD, 5, 2));
+    assertEquals(".zst", stage.getExtension());
+
+    final var compressed = compress(stage);
+    assertTrue(compressed.length < DATA.length);
+    final var decompressed =
+        new ZstdInputStream(new ByteArrayInputStream(compressed)).readAllBytes();
+    assertArrayEquals(DATA, decompressed);
+  }
+}
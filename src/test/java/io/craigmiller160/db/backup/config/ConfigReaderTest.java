@@ -19,13 +19,18 @@
 package io.craigmiller160.db.backup.config;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.craigmiller160.db.backup.config.dto.BackupConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
 import io.craigmiller160.db.backup.config.dto.MongoBackupConfig;
 import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
 import io.craigmiller160.db.backup.config.dto.PostgresBackupConfig;
 import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.exception.ConfigReadException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Try;
 import java.util.List;
 import java.util.Properties;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,6 +45,7 @@ public class ConfigReaderTest {
   public void setup() {
     final var properties = new Properties();
     properties.setProperty("config.file", "backup_config.json");
+    properties.setProperty(PropertyStore.EXECUTOR_INTERVAL_SECS, "3600");
     propStore = new PropertyStore(properties);
     configReader = new ConfigReader(propStore);
   }
@@ -56,4 +62,83 @@ public class ConfigReaderTest {
     final var actual = configReader.readBackupConfig().get();
     assertEquals(expected, actual);
   }
+
+  private static MongoDatabaseConfig mongoDatabase(
+      final Integer numParallelCollections,
+      final List<String> includeCollections,
+      final List<String> excludeCollections,
+      final String query) {
+    return new MongoDatabaseConfig(
+        "db",
+        null,
+        null,
+        null,
+        null,
+        numParallelCollections,
+        includeCollections,
+        excludeCollections,
+        null,
+        query,
+        null,
+        null,
+        null,
+        null);
+  }
+
+  private Try<BackupConfig> validateMongo(final MongoDatabaseConfig database) {
+    return configReader.validate(
+        new BackupConfig(
+            new PostgresBackupConfig(List.of()), new MongoBackupConfig(List.of(database))));
+  }
+
+  @Test
+  public void test_validate_mongoTuning() {
+    assertTrue(validateMongo(mongoDatabase(4, List.of("users"), null, "{}")).isSuccess());
+    assertTrue(validateMongo(mongoDatabase(null, null, List.of("logs"), null)).isSuccess());
+
+    final var tooManyIncludes =
+        validateMongo(mongoDatabase(null, List.of("one", "two"), null, null));
+    assertTrue(tooManyIncludes.getCause() instanceof ConfigReadException);
+    assertTrue(
+        validateMongo(mongoDatabase(null, List.of("one"), List.of("two"), null)).isFailure());
+    assertTrue(validateMongo(mongoDatabase(null, null, null, "{}")).isFailure());
+    assertTrue(validateMongo(mongoDatabase(0, null, null, null)).isFailure());
+  }
+
+  private Try<BackupConfig> validateCompression(final CompressionConfig compression) {
+    return configReader.validate(
+        new BackupConfig(
+            new PostgresBackupConfig(
+                List.of(
+                    new PostgresDatabaseConfig(
+                        "db",
+                        List.of("public"),
+                        null,
+                        null,
+                        null,
+                        compression,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null))),
+            new MongoBackupConfig(List.of())));
+  }
+
+  @Test
+  public void test_validate_compression() {
+    assertTrue(validateCompression(null).isSuccess());
+    assertTrue(validateCompression(new CompressionConfig(CompressionType.GZIP, 9, 4)).isSuccess());
+    assertTrue(validateCompression(new CompressionConfig(CompressionType.ZSTD, 22, 1)).isSuccess());
+
+    final var gzipLevel =
+        validateCompression(new CompressionConfig(CompressionType.GZIP, 10, null));
+    assertTrue(gzipLevel.getCause() instanceof ConfigReadException);
+    assertTrue(
+        validateCompression(new CompressionConfig(CompressionType.GZIP, -2, null)).isFailure());
+    assertTrue(
+        validateCompression(new CompressionConfig(CompressionType.ZSTD, 23, null)).isFailure());
+    assertTrue(
+        validateCompression(new CompressionConfig(CompressionType.ZSTD, null, 0)).isFailure());
+  }
 }
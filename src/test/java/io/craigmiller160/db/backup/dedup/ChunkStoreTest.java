@@ -0,0 +1,155 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ChunkStoreTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+
+  private ChunkStore chunkStore;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    chunkStore = new ChunkStore(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private String put(final String content) throws IOException {
+    final var data = content.getBytes(StandardCharsets.UTF_8);
+    final var hash = HexFormat.of().formatHex(ChunkStore.newDigest().digest(data));
+    chunkStore.put(hash, data, data.length);
+    return hash;
+  }
+
+  @Test
+  public void test_put() throws Exception {
+    final var data = "Hello World".getBytes(StandardCharsets.UTF_8);
+    final var hash = HexFormat.of().formatHex(ChunkStore.newDigest().digest(data));
+
+    assertTrue(chunkStore.put(hash, data, data.length));
+    assertFalse(chunkStore.put(hash, data, data.length));
+    assertEquals(
+        "Hello World", Files.readString(chunkStore.getChunkPath(hash), StandardCharsets.UTF_8));
+    assertEquals(
+        hash.substring(0, 2), chunkStore.getChunkPath(hash).getParent().getFileName().toString());
+  }
+
+  @Test
+  public void test_restore_corruptChunk() throws Exception {
+    final var hash = put("Hello World");
+    Files.writeString(chunkStore.getChunkPath(hash), "Hello Wxrld");
+    final var manifest = OUTPUT_ROOT.resolve("backup.manifest");
+    Files.writeString(manifest, ChunkStore.MANIFEST_HEADER + "\n" + hash + " 11\n");
+
+    assertThrows(
+        IOException.class, () -> chunkStore.restore(manifest, new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void test_deleteUnreferenced() throws Exception {
+    final var live = put("Live");
+    final var dead = put("Dead");
+    final var fresh = put("Fresh");
+    final var old = Instant.now().minus(Duration.ofDays(2));
+    Files.setLastModifiedTime(chunkStore.getChunkPath(live), FileTime.from(old));
+    Files.setLastModifiedTime(chunkStore.getChunkPath(dead), FileTime.from(old));
+
+    final var deleted =
+        chunkStore.deleteUnreferenced(() -> Set.of(live), Instant.now().minus(Duration.ofDays(1)));
+
+    assertEquals(1, deleted);
+    assertTrue(Files.exists(chunkStore.getChunkPath(live)));
+    assertFalse(Files.exists(chunkStore.getChunkPath(dead)));
+    // Too new to be collected, it may belong to a backup that is still running
+    assertTrue(Files.exists(chunkStore.getChunkPath(fresh)));
+  }
+
+  @Test
+  public void test_deleteUnreferenced_manifestCommittedMeanwhile() throws Exception {
+    final var reused = put("Reused");
+    final var old = Instant.now().minus(Duration.ofDays(2));
+    Files.setLastModifiedTime(chunkStore.getChunkPath(reused), FileTime.from(old));
+    final var reads = new AtomicInteger(0);
+
+    final var deleted =
+        chunkStore.deleteUnreferenced(
+            () -> reads.getAndIncrement() == 0 ? Set.of() : Set.of(reused),
+            Instant.now().minus(Duration.ofDays(1)));
+
+    assertEquals(0, deleted);
+    assertEquals(2, reads.get());
+    assertTrue(Files.exists(chunkStore.getChunkPath(reused)));
+  }
+
+  @Test
+  public void test_deleteUnreferenced_restoresChunkSetAside() throws Exception {
+    final var live = put("Live");
+    final var chunkPath = chunkStore.getChunkPath(live);
+    final var aside = chunkPath.resolveSibling(live + ".gc");
+    Files.move(chunkPath, aside);
+
+    chunkStore.deleteUnreferenced(() -> Set.of(live), Instant.now().minus(Duration.ofDays(1)));
+
+    assertTrue(Files.exists(chunkPath));
+    assertFalse(Files.exists(aside));
+  }
+
+  @Test
+  public void test_put_rewritesCollectedChunk() throws Exception {
+    final var data = "Hello World".getBytes(StandardCharsets.UTF_8);
+    final var hash = HexFormat.of().formatHex(ChunkStore.newDigest().digest(data));
+    chunkStore.put(hash, data, data.length);
+    Files.setLastModifiedTime(
+        chunkStore.getChunkPath(hash), FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+    chunkStore.deleteUnreferenced(Set::of, Instant.now().minus(Duration.ofDays(1)));
+
+    assertTrue(chunkStore.put(hash, data, data.length));
+    assertEquals(
+        "Hello World", Files.readString(chunkStore.getChunkPath(hash), StandardCharsets.UTF_8));
+  }
+}
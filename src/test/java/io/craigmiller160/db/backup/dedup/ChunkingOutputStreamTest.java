@@ -0,0 +1,111 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.dedup;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ChunkingOutputStreamTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+
+  private ChunkStore chunkStore;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    Files.createDirectories(OUTPUT_ROOT);
+    chunkStore = new ChunkStore(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private static byte[] randomData(final int size) {
+    final var data = new byte[size];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  private ChunkingOutputStream writeManifest(final Path manifest, final byte[] data)
+      throws Exception {
+    final var chunkingOutput =
+        new ChunkingOutputStream(chunkStore, Files.newOutputStream(manifest));
+    try (chunkingOutput) {
+      // Odd sized writes, to make sure boundaries don't depend on how the data is written
+      for (int offset = 0; offset < data.length; offset += 7919) {
+        chunkingOutput.write(data, offset, Math.min(7919, data.length - offset));
+      }
+    }
+    return chunkingOutput;
+  }
+
+  @Test
+  public void test_write_roundTrip() throws Exception {
+    final var data = randomData(3 * 1024 * 1024);
+    final var manifest = OUTPUT_ROOT.resolve("backup.sql.manifest");
+    final var chunkingOutput = writeManifest(manifest, data);
+
+    assertTrue(chunkingOutput.getNewChunks() > 1);
+    final var restored = new ByteArrayOutputStream();
+    assertEquals(data.length, chunkStore.restore(manifest, restored));
+    assertArrayEquals(data, restored.toByteArray());
+
+    Files.lines(manifest)
+        .skip(1)
+        .forEach(
+            line -> {
+              final var length = Integer.parseInt(line.split(" ")[1]);
+              assertTrue(length <= ChunkingOutputStream.MAX_CHUNK_SIZE);
+            });
+  }
+
+  @Test
+  public void test_write_dedupAfterInsert() throws Exception {
+    final var data = randomData(3 * 1024 * 1024);
+    final var first = writeManifest(OUTPUT_ROOT.resolve("first.manifest"), data);
+
+    // Insert a few bytes in the middle, only the chunks around the insert should change
+    final var changed = new byte[data.length + 10];
+    System.arraycopy(data, 0, changed, 0, data.length / 2);
+    System.arraycopy(data, data.length / 2, changed, data.length / 2 + 10, data.length / 2);
+    final var second = writeManifest(OUTPUT_ROOT.resolve("second.manifest"), changed);
+
+    assertTrue(second.getReusedChunks() >= first.getNewChunks() - 3);
+    assertTrue(second.getNewChunks() <= 3);
+
+    final var restored = new ByteArrayOutputStream();
+    chunkStore.restore(OUTPUT_ROOT.resolve("second.manifest"), restored);
+    assertArrayEquals(changed, restored.toByteArray());
+  }
+}
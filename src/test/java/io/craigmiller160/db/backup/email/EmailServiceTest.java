@@ -131,6 +131,132 @@ public class EmailServiceTest {
         emailRequest);
   }
 
+  @Test
+  public void test_sendPostgresWalErrorAlertEmail() throws Exception {
+    final var tokenResponseDto = new TokenResponse(ACCESS_TOKEN, "");
+    final var tokenResponse =
+        new TestHttpResponse(200, objectMapper.writeValueAsString(tokenResponseDto));
+    final var emailResponse = new TestHttpResponse(204, "");
+    final var tokenRequest = "grant_type=client_credentials";
+
+    final var emailText =
+        String.format(
+            "%s%n%s",
+            EmailService.POSTGRES_WAL_ERROR_ALERT_MESSAGE.formatted(DATABASE),
+            EmailService.GENERIC_MESSAGE.formatted(
+                NOW.format(EmailService.FORMATTER),
+                String.format("%s - %s", EXCEPTION.getClass().getName(), EXCEPTION.getMessage())));
+    final var emailRequestDto =
+        new EmailRequest(
+            List.of(EMAIL_TO),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            EmailService.ERROR_ALERT_SUBJECT,
+            emailText);
+    final var emailRequest = objectMapper.writeValueAsString(emailRequestDto);
+
+    when(httpClient.send(any(), any())).thenReturn(tokenResponse).thenReturn(emailResponse);
+
+    emailService.sendPostgresWalErrorAlertEmail(DATABASE, EXCEPTION);
+
+    final var requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+
+    verify(httpClient, times(2)).send(requestCaptor.capture(), any());
+    assertEquals(2, requestCaptor.getAllValues().size());
+    testHttpRequest(
+        requestCaptor.getAllValues().get(0),
+        URI.create(String.format("%s%s", AUTH_HOST, emailService.getTokenUri())),
+        tokenRequest);
+    testHttpRequest(
+        requestCaptor.getAllValues().get(1),
+        URI.create(String.format("%s%s", EMAIL_HOST, EmailService.EMAIL_URI)),
+        emailRequest);
+  }
+
+  @Test
+  public void test_sendVerifyErrorAlertEmail() throws Exception {
+    final var tokenResponseDto = new TokenResponse(ACCESS_TOKEN, "");
+    final var tokenResponse =
+        new TestHttpResponse(200, objectMapper.writeValueAsString(tokenResponseDto));
+    final var emailResponse = new TestHttpResponse(204, "");
+    final var tokenRequest = "grant_type=client_credentials";
+
+    final var emailText =
+        String.format(
+            "%s%n%s",
+            EmailService.VERIFY_ERROR_ALERT_MESSAGE.formatted(DATABASE),
+            EmailService.GENERIC_MESSAGE.formatted(
+                NOW.format(EmailService.FORMATTER),
+                String.format("%s - %s", EXCEPTION.getClass().getName(), EXCEPTION.getMessage())));
+    final var emailRequestDto =
+        new EmailRequest(
+            List.of(EMAIL_TO),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            EmailService.ERROR_ALERT_SUBJECT,
+            emailText);
+    final var emailRequest = objectMapper.writeValueAsString(emailRequestDto);
+
+    when(httpClient.send(any(), any())).thenReturn(tokenResponse).thenReturn(emailResponse);
+
+    emailService.sendVerifyErrorAlertEmail(DATABASE, EXCEPTION);
+
+    final var requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+
+    verify(httpClient, times(2)).send(requestCaptor.capture(), any());
+    assertEquals(2, requestCaptor.getAllValues().size());
+    testHttpRequest(
+        requestCaptor.getAllValues().get(0),
+        URI.create(String.format("%s%s", AUTH_HOST, emailService.getTokenUri())),
+        tokenRequest);
+    testHttpRequest(
+        requestCaptor.getAllValues().get(1),
+        URI.create(String.format("%s%s", EMAIL_HOST, EmailService.EMAIL_URI)),
+        emailRequest);
+  }
+
+  @Test
+  public void test_sendRestoreTestErrorAlertEmail() throws Exception {
+    final var tokenResponseDto = new TokenResponse(ACCESS_TOKEN, "");
+    final var tokenResponse =
+        new TestHttpResponse(200, objectMapper.writeValueAsString(tokenResponseDto));
+    final var emailResponse = new TestHttpResponse(204, "");
+    final var tokenRequest = "grant_type=client_credentials";
+
+    final var emailText =
+        String.format(
+            "%s%n%s",
+            EmailService.RESTORE_TEST_ERROR_ALERT_MESSAGE.formatted(DATABASE),
+            EmailService.GENERIC_MESSAGE.formatted(
+                NOW.format(EmailService.FORMATTER),
+                String.format("%s - %s", EXCEPTION.getClass().getName(), EXCEPTION.getMessage())));
+    final var emailRequestDto =
+        new EmailRequest(
+            List.of(EMAIL_TO),
+            Collections.emptyList(),
+            Collections.emptyList(),
+            EmailService.ERROR_ALERT_SUBJECT,
+            emailText);
+    final var emailRequest = objectMapper.writeValueAsString(emailRequestDto);
+
+    when(httpClient.send(any(), any())).thenReturn(tokenResponse).thenReturn(emailResponse);
+
+    emailService.sendRestoreTestErrorAlertEmail(DATABASE, EXCEPTION);
+
+    final var requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+
+    verify(httpClient, times(2)).send(requestCaptor.capture(), any());
+    assertEquals(2, requestCaptor.getAllValues().size());
+    testHttpRequest(
+        requestCaptor.getAllValues().get(0),
+        URI.create(String.format("%s%s", AUTH_HOST, emailService.getTokenUri())),
+        tokenRequest);
+    testHttpRequest(
+        requestCaptor.getAllValues().get(1),
+        URI.create(String.format("%s%s", EMAIL_HOST, EmailService.EMAIL_URI)),
+        emailRequest);
+  }
+
   @Test
   public void test_sendMongoErrorAlertEmail() throws Exception {
     final var tokenResponseDto = new TokenResponse(ACCESS_TOKEN, "");
@@ -0,0 +1,165 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.vavr.control.Option;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BackupCatalogTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final ZoneId ZONE = ZoneId.of(BackupConstants.TIME_ZONE);
+  private static final String TARGET = BackupCatalog.postgresTarget("db", "public");
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private BackupArtifact artifact(final String name) {
+    return new BackupArtifact(
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public", name)),
+        10,
+        Option.of("abc"));
+  }
+
+  @Test
+  public void test_registerAndExpire() {
+    final var catalog = new BackupCatalog(OUTPUT_ROOT);
+    catalog.register(TARGET, ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZONE), artifact("a.sql"));
+    catalog.register(TARGET, ZonedDateTime.of(2020, 1, 3, 0, 0, 0, 0, ZONE), artifact("c.sql"));
+    catalog.register(TARGET, ZonedDateTime.of(2020, 1, 2, 0, 0, 0, 0, ZONE), artifact("b.sql"));
+
+    final var expired = catalog.getExpired(TARGET, ZonedDateTime.of(2020, 1, 3, 0, 0, 0, 0, ZONE));
+    assertEquals(2, expired.size());
+    assertTrue(expired.get(0).relativePath().endsWith("a.sql"));
+    assertTrue(expired.get(1).relativePath().endsWith("b.sql"));
+    assertEquals(Option.of("abc"), expired.get(0).checksum());
+
+    catalog.remove(expired.get(0));
+
+    final var reloaded = new BackupCatalog(OUTPUT_ROOT);
+    final var entries = reloaded.getEntries(TARGET);
+    assertEquals(2, entries.size());
+    assertTrue(entries.get(0).relativePath().endsWith("b.sql"));
+    assertTrue(entries.get(1).relativePath().endsWith("c.sql"));
+    assertEquals(List.of(), reloaded.getEntries(BackupCatalog.mongoTarget("db")));
+  }
+
+  @Test
+  public void test_ignoresTruncatedLine() throws Exception {
+    final var catalog = new BackupCatalog(OUTPUT_ROOT);
+    catalog.register(TARGET, ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZONE), artifact("a.sql"));
+    Files.writeString(
+        OUTPUT_ROOT.resolve(BackupCatalog.CATALOG_FILE),
+        "A\t" + TARGET + "\t1577",
+        StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND);
+
+    assertEquals(1, new BackupCatalog(OUTPUT_ROOT).getEntries(TARGET).size());
+  }
+
+  @Test
+  public void test_rebuildFromDisk() throws Exception {
+    final var schemaDir =
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public"));
+    final var mongoDir = OUTPUT_ROOT.resolve(Paths.get(BackupConstants.MONGO_DIR, "db"));
+    Files.createDirectories(schemaDir);
+    Files.createDirectories(mongoDir.resolve("20200101000000"));
+    Files.createDirectories(mongoDir.resolve(BackupConstants.OPLOG_DIR));
+    Files.writeString(schemaDir.resolve("backup_20200101000000.sql"), "data");
+    Files.writeString(schemaDir.resolve("backup_20200102000000.sql.partial"), "data");
+    Files.writeString(schemaDir.resolve("stray.tmp"), "data");
+    ChecksumSidecar.write(schemaDir.resolve("backup_20200101000000.sql"), "a".repeat(64));
+
+    final var catalog = new BackupCatalog(OUTPUT_ROOT);
+    final var postgresEntries = catalog.getEntries(TARGET);
+    assertEquals(1, postgresEntries.size());
+    assertEquals(4, postgresEntries.get(0).sizeBytes());
+    assertEquals(Option.of("a".repeat(64)), postgresEntries.get(0).checksum());
+    assertEquals(
+        BackupFileNames.parseTimestamp("20200101000000").get().toEpochSecond(),
+        postgresEntries.get(0).epochSecond());
+    assertEquals(1, catalog.getEntries(BackupCatalog.mongoTarget("db")).size());
+    assertTrue(Files.exists(OUTPUT_ROOT.resolve(BackupCatalog.CATALOG_FILE)));
+  }
+
+  @Test
+  public void test_register_appendFails() throws Exception {
+    // A directory in place of the catalog file makes every write fail
+    Files.createDirectories(OUTPUT_ROOT.resolve(BackupCatalog.CATALOG_FILE));
+    final var catalog = new BackupCatalog(OUTPUT_ROOT);
+
+    final var result =
+        catalog.register(TARGET, ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZONE), artifact("a.sql"));
+
+    assertTrue(result.isFailure());
+    assertEquals(List.of(), catalog.getEntries(TARGET));
+  }
+
+  @Test
+  public void test_readOnly() throws Exception {
+    final var schemaDir =
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public"));
+    Files.createDirectories(schemaDir);
+    Files.writeString(schemaDir.resolve("backup_20200101000000.sql"), "data");
+    final var catalogFile = OUTPUT_ROOT.resolve(BackupCatalog.CATALOG_FILE);
+
+    // A missing catalog is only rebuilt in memory
+    final var rebuilt = BackupCatalog.readOnly(OUTPUT_ROOT);
+    assertEquals(1, rebuilt.getEntries(TARGET).size());
+    assertFalse(Files.exists(catalogFile));
+    assertTrue(
+        rebuilt
+            .register(TARGET, ZonedDateTime.of(2020, 1, 2, 0, 0, 0, 0, ZONE), artifact("b.sql"))
+            .isFailure());
+
+    // Nor is a catalog that is due for compaction rewritten
+    new BackupCatalog(OUTPUT_ROOT).getEntries(TARGET);
+    final var lines = new ArrayList<>(Files.readAllLines(catalogFile));
+    for (int i = 0; i < 200; i++) {
+      lines.add("D\tpostgres/db/public/removed_%d.sql".formatted(i));
+    }
+    Files.write(catalogFile, lines);
+    assertEquals(1, BackupCatalog.readOnly(OUTPUT_ROOT).getEntries(TARGET).size());
+    assertEquals(lines, Files.readAllLines(catalogFile));
+  }
+}
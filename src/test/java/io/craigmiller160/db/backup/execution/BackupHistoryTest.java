@@ -0,0 +1,127 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BackupHistoryTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final String SMALL = "postgres/db/small";
+  private static final String LARGE = "postgres/db/large";
+  private static final String NEW = "postgres/db/new";
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @Test
+  public void test_record_persisted() throws Exception {
+    final var history = BackupHistory.load(OUTPUT_ROOT);
+    history.record(SMALL, Duration.ofSeconds(10), 1000);
+    history.record(LARGE, Duration.ofMinutes(30), 5000000);
+    history.record(SMALL, Duration.ofSeconds(20), 2000);
+
+    final var historyFile = OUTPUT_ROOT.resolve(BackupHistory.HISTORY_FILE);
+    assertEquals(3, Files.readAllLines(historyFile, StandardCharsets.UTF_8).size());
+
+    final var reloaded = BackupHistory.load(OUTPUT_ROOT);
+    assertEquals(new BackupHistory.Entry(2, 13000, 2000), reloaded.get(SMALL).get());
+    assertEquals(new BackupHistory.Entry(1, 1800000, 5000000), reloaded.get(LARGE).get());
+  }
+
+  @Test
+  public void test_record_movingAverage() {
+    final var history = BackupHistory.load(OUTPUT_ROOT);
+    history.record(SMALL, Duration.ofSeconds(10), 1000);
+    history.record(SMALL, Duration.ofSeconds(20), 2000);
+
+    final var entry = history.get(SMALL).get();
+    assertEquals(2, entry.samples());
+    assertEquals(13000, entry.avgDurationMillis());
+    assertEquals(2000, entry.lastSizeBytes());
+  }
+
+  @Test
+  public void test_load_ignoresInvalidLines() throws Exception {
+    Files.createDirectories(OUTPUT_ROOT);
+    Files.writeString(
+        OUTPUT_ROOT.resolve(BackupHistory.HISTORY_FILE),
+        "%s\t1\t500\t10\ngarbage\n%s\tx\t1\t1\n".formatted(SMALL, LARGE),
+        StandardCharsets.UTF_8);
+
+    final var history = BackupHistory.load(OUTPUT_ROOT);
+    assertEquals(new BackupHistory.Entry(1, 500, 10), history.get(SMALL).get());
+    assertTrue(history.get(LARGE).isEmpty());
+  }
+
+  @Test
+  public void test_load_compacts() throws Exception {
+    Files.createDirectories(OUTPUT_ROOT);
+    final var historyFile = OUTPUT_ROOT.resolve(BackupHistory.HISTORY_FILE);
+    final var lines =
+        IntStream.rangeClosed(1, 150)
+            .mapToObj(index -> "%s\t%d\t500\t10".formatted(SMALL, index))
+            .collect(Collectors.joining("\n", "", "\n"));
+    Files.writeString(historyFile, lines, StandardCharsets.UTF_8);
+
+    final var history = BackupHistory.load(OUTPUT_ROOT);
+    assertEquals(new BackupHistory.Entry(150, 500, 10), history.get(SMALL).get());
+    assertEquals(
+        List.of("%s\t150\t500\t10".formatted(SMALL)),
+        Files.readAllLines(historyFile, StandardCharsets.UTF_8));
+    assertTrue(
+        Files.notExists(
+            OUTPUT_ROOT.resolve(BackupHistory.HISTORY_FILE + BackupConstants.PARTIAL_SUFFIX)));
+  }
+
+  @Test
+  public void test_getPriority() {
+    final var history = BackupHistory.load(OUTPUT_ROOT);
+    history.record(SMALL, Duration.ofSeconds(10), 1000);
+    history.record(LARGE, Duration.ofMinutes(30), 5000000);
+
+    final var targets = new ArrayList<>(List.of(SMALL, LARGE, NEW));
+    targets.sort(Comparator.comparingLong(history::getPriority).reversed());
+    assertEquals(List.of(NEW, LARGE, SMALL), targets);
+  }
+}
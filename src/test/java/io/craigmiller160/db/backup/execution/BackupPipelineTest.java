@@ -0,0 +1,89 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.vavr.control.Try;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BackupPipelineTest {
+
+  private static final String NAME = "postgres/db/schema";
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+
+  private BackupHistory history;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    history = BackupHistory.load(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @Test
+  public void test_run() {
+    final var backupCount = new AtomicInteger(0);
+    final var cleanupCount = new AtomicInteger(0);
+    final var pipeline =
+        new BackupPipeline(
+            NAME,
+            () -> {
+              backupCount.incrementAndGet();
+              return Try.success(100L);
+            },
+            cleanupCount::incrementAndGet,
+            history);
+
+    pipeline.run();
+
+    assertEquals(1, backupCount.get());
+    assertEquals(1, cleanupCount.get());
+    assertEquals(100L, history.get(NAME).get().lastSizeBytes());
+  }
+
+  @Test
+  public void test_run_backupFailed() {
+    final var cleanupCount = new AtomicInteger(0);
+    final var pipeline =
+        new BackupPipeline(
+            NAME,
+            () -> Try.failure(new BackupException("Dying")),
+            cleanupCount::incrementAndGet,
+            history);
+
+    pipeline.run();
+
+    assertEquals(0, cleanupCount.get());
+    assertTrue(history.get(NAME).isEmpty());
+  }
+}
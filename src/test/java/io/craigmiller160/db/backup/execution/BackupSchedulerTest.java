@@ -26,17 +26,26 @@ import io.craigmiller160.db.backup.config.dto.MongoBackupConfig;
 import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
 import io.craigmiller160.db.backup.config.dto.PostgresBackupConfig;
 import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
+import io.craigmiller160.db.backup.config.dto.ScheduleConfig;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.properties.PropertyStore;
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
 import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.File;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -48,7 +57,10 @@ public class BackupSchedulerTest {
   private static final String SCHEMA_1 = "schema1";
   private static final String SCHEMA_2 = "schema2";
   private static final String SCHEMA_3 = "schema3";
+  private static final String OUTPUT_ROOT =
+      String.format("%s/%s", System.getProperty("user.dir"), "target/output");
 
+  private Properties properties;
   private PropertyStore propStore;
   private BackupConfig backupConfig;
   private EmailService emailService;
@@ -57,10 +69,24 @@ public class BackupSchedulerTest {
 
   @BeforeEach
   public void setup() {
-    final var properties = new Properties();
+    properties = new Properties();
     properties.setProperty(PropertyStore.EXECUTOR_THREAD_COUNT, "4");
+    properties.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
+    properties.setProperty(PropertyStore.EXECUTOR_MODE, "platform");
+    properties.setProperty(PropertyStore.EXECUTOR_OVERLAP_POLICY, "coalesce");
     properties.setProperty(PropertyStore.EXECUTOR_INTERVAL_SECS, "300000");
+    properties.setProperty(PropertyStore.EXECUTOR_STAGGER_SECS, "0");
+    properties.setProperty(PropertyStore.EXECUTOR_JITTER_SECS, "0");
+    properties.setProperty(PropertyStore.EXECUTOR_POSTGRES_MAX_CONCURRENT, "2");
+    properties.setProperty(PropertyStore.EXECUTOR_MONGO_MAX_CONCURRENT, "1");
+    properties.setProperty(PropertyStore.DB_POSTGRES_HOST, "localhost");
+    properties.setProperty(PropertyStore.DB_POSTGRES_PORT, "5432");
+    properties.setProperty(PropertyStore.DB_MONGO_HOST, "localhost");
+    properties.setProperty(PropertyStore.DB_MONGO_PORT, "27017");
     properties.setProperty(PropertyStore.EMAIL_CONNECT_TIMEOUT_SECS, "30");
+    properties.setProperty(PropertyStore.VERIFY_INTERVAL_SECS, "0");
+    properties.setProperty(PropertyStore.OUTPUT_CLEANUP_THREADS, "2");
+    properties.setProperty(PropertyStore.OUTPUT_CLEANUP_MAX_DELETES_PER_SEC, "0");
     propStore = new PropertyStore(properties);
     backupConfig =
         new BackupConfig(
@@ -76,8 +102,9 @@ public class BackupSchedulerTest {
   }
 
   @AfterEach
-  public void after() {
+  public void after() throws Exception {
     backupScheduler.stop();
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
   }
 
   @Test
@@ -116,9 +143,102 @@ public class BackupSchedulerTest {
     assertTrue(livenessCheckPropStore.isDefined());
   }
 
+  @Test
+  public void test_start_perDatabaseSchedule() throws Exception {
+    final var yearly = new ScheduleConfig("0 0 1 1 *", null, null, null);
+    backupConfig =
+        new BackupConfig(
+            new PostgresBackupConfig(
+                List.of(
+                    new PostgresDatabaseConfig(DB_NAME, List.of(SCHEMA_1)),
+                    new PostgresDatabaseConfig(
+                        DB_NAME_2,
+                        List.of(SCHEMA_3),
+                        null,
+                        null,
+                        null,
+                        null,
+                        yearly,
+                        null,
+                        null,
+                        null,
+                        null))),
+            new MongoBackupConfig(List.of()));
+    backupScheduler.stop();
+    backupScheduler = new BackupScheduler(propStore, backupConfig, backupTaskFactory, emailService);
+
+    backupScheduler.start();
+    Thread.sleep(1000);
+    assertTrue(backupScheduler.stop());
+
+    assertEquals(
+        List.of(Tuple.of(DB_NAME, SCHEMA_1)), backupTaskFactory.getPostgresBackupTaskProps());
+    assertEquals(
+        List.of(Tuple.of(DB_NAME, SCHEMA_1)), backupTaskFactory.getPostgresCleanupTaskProps());
+  }
+
+  @Test
+  public void test_start_timeouts() throws Exception {
+    backupConfig =
+        new BackupConfig(
+            new PostgresBackupConfig(
+                List.of(
+                    new PostgresDatabaseConfig(
+                        DB_NAME,
+                        List.of(SCHEMA_1, SCHEMA_2),
+                        600,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        Map.of(SCHEMA_2, 7200)),
+                    new PostgresDatabaseConfig(DB_NAME_2, List.of(SCHEMA_3))),
+                1800,
+                null),
+            new MongoBackupConfig(List.of()));
+    backupScheduler.stop();
+    backupScheduler = new BackupScheduler(propStore, backupConfig, backupTaskFactory, emailService);
+
+    backupScheduler.start();
+    assertTrue(backupScheduler.stop());
+
+    assertEquals(
+        Map.of(
+            SCHEMA_1,
+            Duration.ofSeconds(600),
+            SCHEMA_2,
+            Duration.ofSeconds(7200),
+            SCHEMA_3,
+            Duration.ofSeconds(1800)),
+        backupTaskFactory.getPostgresBackupTimeouts());
+  }
+
+  @Test
+  public void test_start_virtualThreads() throws Exception {
+    properties.setProperty(PropertyStore.EXECUTOR_MODE, "virtual");
+    backupScheduler.stop();
+    backupScheduler =
+        new BackupScheduler(
+            new PropertyStore(properties), backupConfig, backupTaskFactory, emailService);
+
+    backupScheduler.start();
+    Thread.sleep(1000);
+    assertTrue(backupScheduler.stop());
+
+    final var backupThreads = backupTaskFactory.getBackupThreads();
+    assertEquals(5, backupThreads.size());
+    backupThreads.forEach(thread -> assertTrue(thread.isVirtual()));
+    assertEquals(3, backupTaskFactory.getPostgresCleanupTaskProps().size());
+    assertEquals(2, backupTaskFactory.getMongoCleanupTaskProps().size());
+  }
+
   private static class TestTaskFactory extends TaskFactory {
     private final List<Tuple2<String, String>> postgresBackupTaskProps =
         Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Duration> postgresBackupTimeouts = new ConcurrentHashMap<>();
     private final List<Tuple2<String, String>> postgresCleanupTaskProps =
         Collections.synchronizedList(new ArrayList<>());
     private final AtomicReference<PropertyStore> livenessCheckPropStore =
@@ -127,20 +247,27 @@ public class BackupSchedulerTest {
         Collections.synchronizedList(new ArrayList<>());
     private final List<String> mongoCleanupTaskProps =
         Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> backupThreads = Collections.synchronizedList(new ArrayList<>());
 
     @Override
-    public Runnable createPostgresBackupTask(
+    public BackupTask createPostgresBackupTask(
         final PropertyStore propStore,
+        final BackupCatalog catalog,
         final EmailService emailService,
-        final String database,
-        final String schema) {
+        final PostgresDatabaseConfig database,
+        final String schema,
+        final Duration timeout) {
+      postgresBackupTimeouts.put(schema, timeout);
       return () -> {
-        postgresBackupTaskProps.add(Tuple.of(database, schema));
+        postgresBackupTaskProps.add(Tuple.of(database.name(), schema));
+        backupThreads.add(Thread.currentThread());
+        return Try.success(0L);
       };
     }
 
     @Override
-    public Runnable createLivenessCheckTask(final PropertyStore propStore) {
+    public Runnable createLivenessCheckTask(
+        final PropertyStore propStore, final Supplier<Map<String, TaskRunState>> runStates) {
       return () -> {
         livenessCheckPropStore.set(propStore);
       };
@@ -148,22 +275,38 @@ public class BackupSchedulerTest {
 
     @Override
     public Runnable createPostgresCleanupTask(
-        final PropertyStore propStore, final String database, final String schema) {
+        final PropertyStore propStore,
+        final BackupCatalog catalog,
+        final ParallelDeleter deleter,
+        final String database,
+        final String schema,
+        final RetentionConfig retention) {
       return () -> {
         postgresCleanupTaskProps.add(Tuple.of(database, schema));
       };
     }
 
     @Override
-    public Runnable createMongoBackupTask(
-        final PropertyStore propStore, final EmailService emailService, final String database) {
+    public BackupTask createMongoBackupTask(
+        final PropertyStore propStore,
+        final BackupCatalog catalog,
+        final EmailService emailService,
+        final MongoDatabaseConfig database,
+        final Duration timeout) {
       return () -> {
-        mongoBackupTaskProps.add(database);
+        mongoBackupTaskProps.add(database.name());
+        backupThreads.add(Thread.currentThread());
+        return Try.success(0L);
       };
     }
 
     @Override
-    public Runnable createMongoCleanupTask(final PropertyStore propStore, final String database) {
+    public Runnable createMongoCleanupTask(
+        final PropertyStore propStore,
+        final BackupCatalog catalog,
+        final ParallelDeleter deleter,
+        final String database,
+        final RetentionConfig retention) {
       return () -> {
         mongoCleanupTaskProps.add(database);
       };
@@ -173,6 +316,10 @@ public class BackupSchedulerTest {
       return new ArrayList<>(postgresBackupTaskProps);
     }
 
+    public Map<String, Duration> getPostgresBackupTimeouts() {
+      return Map.copyOf(postgresBackupTimeouts);
+    }
+
     public Option<PropertyStore> getLivenessCheckPropStore() {
       return Option.of(livenessCheckPropStore.get());
     }
@@ -185,6 +332,10 @@ public class BackupSchedulerTest {
       return new ArrayList<>(mongoCleanupTaskProps);
     }
 
+    public List<Thread> getBackupThreads() {
+      return new ArrayList<>(backupThreads);
+    }
+
     public List<String> getMongoBackupTaskProps() {
       return new ArrayList<>(mongoBackupTaskProps);
     }
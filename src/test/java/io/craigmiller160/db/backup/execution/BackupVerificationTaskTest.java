@@ -0,0 +1,165 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.dedup.ChunkingOutputStream;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class BackupVerificationTaskTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final ZoneId ZONE = ZoneId.of(BackupConstants.TIME_ZONE);
+  private static final String TARGET = BackupCatalog.postgresTarget("db", "public");
+
+  @Mock private EmailService emailService;
+  private Properties props;
+  private BackupCatalog catalog;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    props = new Properties();
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT.toString());
+    props.setProperty(PropertyStore.VERIFY_MAX_BYTES_PER_SEC, "0");
+    props.setProperty(PropertyStore.VERIFY_MAX_BYTES_PER_RUN, "1000");
+    catalog = new BackupCatalog(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private Path writeBackup(final String name, final int day, final String content)
+      throws Exception {
+    final var path =
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public", name));
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, content, StandardCharsets.UTF_8);
+    return register(path, day);
+  }
+
+  private Path writeManifest(final String name, final int day, final byte[] data) throws Exception {
+    final var path =
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public", name));
+    Files.createDirectories(path.getParent());
+    try (final var output =
+        new ChunkingOutputStream(new ChunkStore(OUTPUT_ROOT), Files.newOutputStream(path))) {
+      output.write(data, 0, data.length);
+    }
+    return register(path, day);
+  }
+
+  private Path register(final Path path, final int day) throws Exception {
+    final var checksum =
+        HexFormat.of()
+            .formatHex(
+                MessageDigest.getInstance(AbstractBackupTask.CHECKSUM_ALGORITHM)
+                    .digest(Files.readAllBytes(path)));
+    catalog.register(
+        TARGET,
+        ZonedDateTime.of(2020, 1, day, 0, 0, 0, 0, ZONE),
+        new BackupArtifact(path, Files.size(path), Option.of(checksum)));
+    return path;
+  }
+
+  @Test
+  public void test_run() throws Exception {
+    final var good = writeBackup("backup_20200101000000.sql", 1, "good backup");
+    final var bad = writeBackup("backup_20200102000000.sql", 2, "bad backup");
+    Files.writeString(bad, "bad bqckup", StandardCharsets.UTF_8);
+
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+
+    assertEquals(BackupCatalog.STATUS_OK, catalog.find(good).get().status());
+    assertEquals(BackupCatalog.STATUS_CORRUPT, catalog.find(bad).get().status());
+    verify(emailService, times(1))
+        .sendVerifyErrorAlertEmail(eq(catalog.find(bad).get().relativePath()), any());
+  }
+
+  @Test
+  public void test_run_incremental() throws Exception {
+    props.setProperty(PropertyStore.VERIFY_MAX_BYTES_PER_RUN, "15");
+    writeBackup("backup_20200101000000.sql", 1, "first backup");
+    writeBackup("backup_20200102000000.sql", 2, "second backup");
+    final var third = writeBackup("backup_20200103000000.sql", 3, "third backup");
+
+    // Only one backup fits in each run, so the third is reached on the third run. A new task each
+    // time, as after a restart, so the position has to come from disk
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+    Files.writeString(third, "third bqckup", StandardCharsets.UTF_8);
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+
+    assertEquals(BackupCatalog.STATUS_CORRUPT, catalog.find(third).get().status());
+    verify(emailService, times(1)).sendVerifyErrorAlertEmail(any(), any());
+    assertEquals(
+        catalog.find(third).get().relativePath(),
+        Files.readString(OUTPUT_ROOT.resolve(BackupVerificationTask.POSITION_FILE)).trim());
+  }
+
+  @Test
+  public void test_run_manifestCountsChunkBytes() throws Exception {
+    final var first = writeBackup("backup_20200101000000.sql", 1, "first backup");
+    final var data = new byte[64 * 1024];
+    new Random(42).nextBytes(data);
+    final var manifest = writeManifest("backup_20200102000000.sql.manifest", 2, data);
+    final var positionFile = OUTPUT_ROOT.resolve(BackupVerificationTask.POSITION_FILE);
+
+    // Both files fit in the budget, but the chunks behind the manifest do not
+    props.setProperty(
+        PropertyStore.VERIFY_MAX_BYTES_PER_RUN,
+        String.valueOf(Files.size(first) + Files.size(manifest) + 1024));
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+    assertEquals(catalog.find(first).get().relativePath(), Files.readString(positionFile).trim());
+
+    new BackupVerificationTask(new PropertyStore(props), catalog, emailService).run();
+    assertEquals(
+        catalog.find(manifest).get().relativePath(), Files.readString(positionFile).trim());
+    assertEquals(BackupCatalog.STATUS_OK, catalog.find(manifest).get().status());
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ChunkGarbageCollectionTaskTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final String LIVE_HASH = "aa" + "1".repeat(62);
+  private static final String RUNNING_HASH = "bb" + "2".repeat(62);
+  private static final String DEAD_HASH = "cc" + "3".repeat(62);
+
+  private ChunkStore chunkStore;
+  private ChunkGarbageCollectionTask task;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    final var props = new Properties();
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT.toString());
+    task = new ChunkGarbageCollectionTask(new PropertyStore(props));
+    chunkStore = new ChunkStore(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private void writeChunk(final String hash) throws Exception {
+    final var path = chunkStore.getChunkPath(hash);
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, hash);
+    Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+  }
+
+  private void writeManifest(final Path manifest, final String hash) throws Exception {
+    Files.createDirectories(manifest.getParent());
+    Files.writeString(
+        manifest, ChunkStore.MANIFEST_HEADER + "\n" + hash + " 64\n", StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void test_run() throws Exception {
+    writeChunk(LIVE_HASH);
+    writeChunk(RUNNING_HASH);
+    writeChunk(DEAD_HASH);
+    writeManifest(
+        OUTPUT_ROOT.resolve(
+            Paths.get(BackupConstants.POSTGRES_DIR, "db", "schema", "backup_1.sql.manifest")),
+        LIVE_HASH);
+    writeManifest(
+        OUTPUT_ROOT.resolve(
+            Paths.get(
+                BackupConstants.MONGO_DIR,
+                "db",
+                "1.archive" + ChunkStore.MANIFEST_EXTENSION + BackupConstants.PARTIAL_SUFFIX)),
+        RUNNING_HASH);
+
+    task.run();
+
+    assertTrue(Files.exists(chunkStore.getChunkPath(LIVE_HASH)));
+    assertTrue(Files.exists(chunkStore.getChunkPath(RUNNING_HASH)));
+    assertFalse(Files.exists(chunkStore.getChunkPath(DEAD_HASH)));
+  }
+
+  private Path partialManifest() throws Exception {
+    final var manifest =
+        OUTPUT_ROOT.resolve(
+            Paths.get(
+                BackupConstants.MONGO_DIR,
+                "db",
+                "1.archive" + ChunkStore.MANIFEST_EXTENSION + BackupConstants.PARTIAL_SUFFIX));
+    Files.createDirectories(manifest.getParent());
+    return manifest;
+  }
+
+  @Test
+  public void test_run_emptyPartialManifest() throws Exception {
+    writeChunk(LIVE_HASH);
+    writeChunk(DEAD_HASH);
+    writeManifest(
+        OUTPUT_ROOT.resolve(
+            Paths.get(BackupConstants.POSTGRES_DIR, "db", "schema", "backup_1.sql.manifest")),
+        LIVE_HASH);
+    // Nothing has been flushed to the manifest of the running backup yet
+    Files.createFile(partialManifest());
+
+    task.run();
+
+    assertTrue(Files.exists(chunkStore.getChunkPath(LIVE_HASH)));
+    assertFalse(Files.exists(chunkStore.getChunkPath(DEAD_HASH)));
+  }
+
+  @Test
+  public void test_run_truncatedPartialManifest() throws Exception {
+    writeChunk(RUNNING_HASH);
+    writeChunk(DEAD_HASH);
+    Files.writeString(
+        partialManifest(),
+        ChunkStore.MANIFEST_HEADER + "\n" + RUNNING_HASH + " 64\n" + DEAD_HASH.substring(0, 20),
+        StandardCharsets.UTF_8);
+
+    task.run();
+
+    assertTrue(Files.exists(chunkStore.getChunkPath(RUNNING_HASH)));
+    assertFalse(Files.exists(chunkStore.getChunkPath(DEAD_HASH)));
+  }
+}
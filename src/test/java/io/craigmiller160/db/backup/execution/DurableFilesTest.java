@@ -0,0 +1,90 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DurableFilesTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    Files.createDirectories(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @Test
+  public void test_newOutputStream_moveIntoPlace() throws Exception {
+    final var outputFile = OUTPUT_ROOT.resolve("backup_20200101000000.sql");
+    final var partialFile = DurableFiles.partialPath(outputFile);
+    try (final var output = DurableFiles.newOutputStream(partialFile)) {
+      output.write("Hello World".getBytes(StandardCharsets.UTF_8));
+    }
+
+    DurableFiles.moveIntoPlace(partialFile, outputFile);
+
+    assertFalse(Files.exists(partialFile));
+    assertEquals("Hello World", Files.readString(outputFile));
+  }
+
+  @Test
+  public void test_sweepPartials() throws Exception {
+    final var schemaDir =
+        OUTPUT_ROOT.resolve(Paths.get(BackupConstants.POSTGRES_DIR, "db", "public"));
+    final var mongoDir = OUTPUT_ROOT.resolve(Paths.get(BackupConstants.MONGO_DIR, "db"));
+    final var walDir =
+        OUTPUT_ROOT.resolve(
+            Paths.get(BackupConstants.POSTGRES_WAL_DIR, BackupConstants.WAL_SEGMENT_DIR));
+    Files.createDirectories(schemaDir);
+    Files.createDirectories(mongoDir.resolve("20200101000000.partial").resolve("db"));
+    Files.createDirectories(walDir);
+    Files.writeString(schemaDir.resolve("backup_20200101000000.sql"), "complete");
+    Files.writeString(schemaDir.resolve("backup_20200102000000.sql.partial"), "truncated");
+    Files.writeString(
+        mongoDir.resolve("20200101000000.partial").resolve("db").resolve("users.bson"), "data");
+    Files.writeString(walDir.resolve("000000010000000000000002.partial"), "receiving");
+
+    final var removed = DurableFiles.sweepPartials(OUTPUT_ROOT, Set.of(walDir));
+
+    assertEquals(2, removed);
+    assertTrue(Files.exists(schemaDir.resolve("backup_20200101000000.sql")));
+    assertFalse(Files.exists(schemaDir.resolve("backup_20200102000000.sql.partial")));
+    assertFalse(Files.exists(mongoDir.resolve("20200101000000.partial")));
+    assertTrue(Files.exists(walDir.resolve("000000010000000000000002.partial")));
+  }
+}
@@ -27,9 +27,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Map;
 import java.util.Properties;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -55,6 +61,7 @@ public class LivenessCheckTaskTest {
                 exit 0
             fi""";
 
+  private PropertyStore propStore;
   private LivenessCheckTask livenessCheckTask;
 
   @BeforeEach
@@ -64,7 +71,7 @@ public class LivenessCheckTaskTest {
     final var properties = new Properties();
     properties.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
     properties.setProperty(PropertyStore.EXECUTOR_INTERVAL_SECS, INTERVAL_SECS);
-    final var propStore = new PropertyStore(properties);
+    propStore = new PropertyStore(properties);
 
     livenessCheckTask = new TestLivenessCheckTask(propStore);
   }
@@ -85,11 +92,39 @@ public class LivenessCheckTaskTest {
     assertEquals(EXPECTED_TEXT, text);
   }
 
+  @Test
+  public void test_run_taskStatus() throws Exception {
+    final var finished = new TaskRunState("postgres/db/public");
+    finished.tryStart();
+    finished.recordStart(Instant.parse("2020-01-01T01:00:00Z"), Duration.ofSeconds(100));
+    finished.recordEnd(Instant.parse("2020-01-01T01:02:30Z"));
+    final var running = new TaskRunState("mongodb/db");
+    running.tryStart();
+    running.recordStart(Instant.parse("2020-01-01T01:01:00Z"), Duration.ofSeconds(100));
+
+    new TestLivenessCheckTask(
+            propStore, () -> Map.of(finished.getName(), finished, running.getName(), running))
+        .run();
+
+    final var lines = Files.readAllLines(Paths.get(OUTPUT_ROOT, LivenessCheckTask.STATUS_FILE));
+    assertEquals(3, lines.size());
+    assertTrue(lines.get(0).startsWith("task\tstate"));
+    assertEquals("mongodb/db\trunning\t2020-01-01T01:01:00Z\t-\t-\t0\t0\t0\t0\t0.00", lines.get(1));
+    assertEquals(
+        "postgres/db/public\tidle\t2020-01-01T01:00:00Z\t2020-01-01T01:02:30Z\t150\t1\t0\t0\t0\t1.50",
+        lines.get(2));
+  }
+
   private static class TestLivenessCheckTask extends LivenessCheckTask {
     public TestLivenessCheckTask(final PropertyStore propStore) {
       super(propStore);
     }
 
+    public TestLivenessCheckTask(
+        final PropertyStore propStore, final Supplier<Map<String, TaskRunState>> runStates) {
+      super(propStore, runStates);
+    }
+
     @Override
     protected ZonedDateTime nowUtc() {
       return TEST_NOW;
@@ -23,21 +23,29 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.exception.BackupException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
 import java.io.File;
+import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -59,10 +67,12 @@ public class MongoBackupTaskTest {
   private static final String USER = "user";
   private static final String PASSWORD = "password";
   private static final String AUTH_DB = "authDb";
+  private static final Duration TIMEOUT = Duration.ofSeconds(20);
   private static final String OUTPUT_ROOT =
       String.format("%s/%s", System.getProperty("user.dir"), "target/output");
 
   private PropertyStore propStore;
+  private BackupCatalog catalog;
   private MongoBackupTask mongoBackupTask;
   @Mock private Process process;
   @Mock private EmailService emailService;
@@ -82,8 +92,16 @@ public class MongoBackupTaskTest {
     props.setProperty(PropertyStore.MONGODUMP_COMMAND, MONGODUMP);
 
     propStore = new PropertyStore(props);
+    catalog = new BackupCatalog(Paths.get(OUTPUT_ROOT));
     testProcessProvider = new TestProcessProvider(process);
-    mongoBackupTask = new MongoBackupTask(propStore, DB_NAME, testProcessProvider, emailService);
+    mongoBackupTask =
+        new MongoBackupTask(
+            propStore,
+            catalog,
+            new MongoDatabaseConfig(DB_NAME),
+            TIMEOUT,
+            testProcessProvider,
+            emailService);
   }
 
   @AfterEach
@@ -92,9 +110,11 @@ public class MongoBackupTaskTest {
   }
 
   @Test
-  public void test_run() {
+  public void test_run() throws Exception {
     when(process.getInputStream())
         .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
     when(process.exitValue()).thenReturn(0);
 
     final var timestamp =
@@ -111,7 +131,7 @@ public class MongoBackupTaskTest {
           MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
           MongoBackupTask.ALLOW_INVALID_CERTS,
           MongoBackupTask.OUTPUT_PATH_ARG,
-          outputPath.toString()
+          outputPath + BackupConstants.PARTIAL_SUFFIX
         };
     final var expectedEnvironment = new HashMap<String, String>();
 
@@ -142,7 +162,7 @@ public class MongoBackupTaskTest {
           MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
           MongoBackupTask.ALLOW_INVALID_CERTS,
           MongoBackupTask.OUTPUT_PATH_ARG,
-          outputPath.toString()
+          outputPath + BackupConstants.PARTIAL_SUFFIX
         };
     final var expectedEnvironment = new HashMap<String, String>();
 
@@ -162,10 +182,11 @@ public class MongoBackupTaskTest {
   }
 
   @Test
-  public void test_run_processError() {
+  public void test_run_processError() throws Exception {
     when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
     when(process.getErrorStream())
         .thenReturn(IOUtils.toInputStream("Error Message", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
     when(process.exitValue()).thenReturn(1);
 
     final var timestamp =
@@ -182,7 +203,7 @@ public class MongoBackupTaskTest {
           MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
           MongoBackupTask.ALLOW_INVALID_CERTS,
           MongoBackupTask.OUTPUT_PATH_ARG,
-          outputPath.toString()
+          outputPath + BackupConstants.PARTIAL_SUFFIX
         };
     final var expectedEnvironment = new HashMap<String, String>();
 
@@ -200,4 +221,159 @@ public class MongoBackupTaskTest {
     assertTrue(exception instanceof BackupException);
     assertEquals("Error Message", exception.getMessage());
   }
+
+  @Test
+  public void test_run_compressedArchive() throws Exception {
+    mongoBackupTask =
+        new MongoBackupTask(
+            propStore,
+            catalog,
+            new MongoDatabaseConfig(
+                DB_NAME,
+                null,
+                new CompressionConfig(CompressionType.GZIP, null, null),
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                null),
+            TIMEOUT,
+            testProcessProvider,
+            emailService);
+
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+    when(process.exitValue()).thenReturn(0);
+
+    mongoBackupTask.run();
+    final var expectedCommand =
+        new String[] {
+          MONGODUMP,
+          MongoBackupTask.URI_TEMPLATE.formatted(
+              USER, PASSWORD, HOST, Integer.parseInt(PORT), DB_NAME, AUTH_DB),
+          MongoBackupTask.USE_TLS,
+          MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
+          MongoBackupTask.ALLOW_INVALID_CERTS,
+          MongoBackupTask.ARCHIVE_ARG
+        };
+    assertArrayEquals(expectedCommand, testProcessProvider.getCommand().get());
+
+    final var files =
+        Paths.get(OUTPUT_ROOT, BackupConstants.MONGO_DIR, DB_NAME)
+            .toFile()
+            .listFiles(file -> !file.getName().endsWith(BackupConstants.CHECKSUM_EXTENSION));
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().endsWith(".archive.gz"));
+    final var content =
+        IOUtils.toString(
+            new GZIPInputStream(new FileInputStream(files[0])), StandardCharsets.UTF_8);
+    assertEquals(DATA_CONTENT, content);
+
+    verify(emailService, times(0)).sendMongoErrorAlertEmail(any(), any());
+  }
+
+  @Test
+  public void test_run_gzipArchive() throws Exception {
+    mongoBackupTask =
+        new MongoBackupTask(
+            propStore,
+            catalog,
+            new MongoDatabaseConfig(
+                DB_NAME, null, null, true, true, null, null, null, null, null, null, null, null,
+                null),
+            TIMEOUT,
+            testProcessProvider,
+            emailService);
+
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+    when(process.exitValue()).thenReturn(0);
+
+    mongoBackupTask.run();
+    final var expectedCommand =
+        new String[] {
+          MONGODUMP,
+          MongoBackupTask.URI_TEMPLATE.formatted(
+              USER, PASSWORD, HOST, Integer.parseInt(PORT), DB_NAME, AUTH_DB),
+          MongoBackupTask.USE_TLS,
+          MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
+          MongoBackupTask.ALLOW_INVALID_CERTS,
+          MongoBackupTask.GZIP_ARG,
+          MongoBackupTask.ARCHIVE_ARG
+        };
+    assertArrayEquals(expectedCommand, testProcessProvider.getCommand().get());
+
+    final var files =
+        Paths.get(OUTPUT_ROOT, BackupConstants.MONGO_DIR, DB_NAME)
+            .toFile()
+            .listFiles(file -> !file.getName().endsWith(BackupConstants.CHECKSUM_EXTENSION));
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().endsWith(".archive.gz"));
+    assertEquals(
+        DATA_CONTENT, IOUtils.toString(new FileInputStream(files[0]), StandardCharsets.UTF_8));
+
+    verify(emailService, times(0)).sendMongoErrorAlertEmail(any(), any());
+  }
+
+  @Test
+  public void test_run_tuning() throws Exception {
+    mongoBackupTask =
+        new MongoBackupTask(
+            propStore,
+            catalog,
+            new MongoDatabaseConfig(
+                DB_NAME,
+                null,
+                null,
+                true,
+                null,
+                4,
+                List.of("users"),
+                null,
+                "secondaryPreferred",
+                "{\"active\": true}",
+                null,
+                null,
+                null,
+                null),
+            TIMEOUT,
+            testProcessProvider,
+            emailService);
+
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+    when(process.exitValue()).thenReturn(0);
+
+    mongoBackupTask.run();
+    final var expectedCommand =
+        new String[] {
+          MONGODUMP,
+          MongoBackupTask.URI_TEMPLATE.formatted(
+              USER, PASSWORD, HOST, Integer.parseInt(PORT), DB_NAME, AUTH_DB),
+          MongoBackupTask.USE_TLS,
+          MongoBackupTask.ALLOW_INVALID_HOSTNAMES,
+          MongoBackupTask.ALLOW_INVALID_CERTS,
+          "--numParallelCollections=4",
+          "--readPreference=secondaryPreferred",
+          "--collection=users",
+          "--query={\"active\": true}",
+          MongoBackupTask.ARCHIVE_ARG
+        };
+    assertArrayEquals(expectedCommand, testProcessProvider.getCommand().get());
+    verify(emailService, times(0)).sendMongoErrorAlertEmail(any(), any());
+  }
 }
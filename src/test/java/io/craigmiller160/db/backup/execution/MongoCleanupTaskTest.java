@@ -20,13 +20,20 @@ package io.craigmiller160.db.backup.execution;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -40,6 +47,8 @@ public class MongoCleanupTaskTest {
       String.format("%s/%s", System.getProperty("user.dir"), "target/output");
 
   private PropertyStore propStore;
+  private BackupCatalog catalog;
+  private ParallelDeleter deleter;
   private MongoCleanupTask mongoCleanupTask;
   private String time1;
   private String time2;
@@ -53,7 +62,11 @@ public class MongoCleanupTaskTest {
     final var props = new Properties();
     props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
     props.setProperty(PropertyStore.OUTPUT_CLEANUP_AGE_DAYS, "10");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_THREADS, "2");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_MAX_DELETES_PER_SEC, "0");
     propStore = new PropertyStore(props);
+    catalog = new BackupCatalog(Paths.get(OUTPUT_ROOT));
+    deleter = ParallelDeleter.of(propStore);
 
     time1 = LocalDateTime.of(2020, 1, 1, 0, 0, 0).format(BackupConstants.FORMAT);
     time2 = LocalDateTime.of(2020, 1, 2, 0, 0, 0).format(BackupConstants.FORMAT);
@@ -61,11 +74,12 @@ public class MongoCleanupTaskTest {
 
     outputPath = Paths.get(OUTPUT_ROOT, BackupConstants.MONGO_DIR, DB_NAME);
 
-    mongoCleanupTask = new MongoCleanupTask(propStore, DB_NAME);
+    mongoCleanupTask = new MongoCleanupTask(propStore, catalog, deleter, DB_NAME);
   }
 
   @AfterEach
   public void afterEach() throws Exception {
+    deleter.stop(10, TimeUnit.SECONDS);
     FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
   }
 
@@ -75,10 +89,86 @@ public class MongoCleanupTaskTest {
     Files.createDirectories(Path.of(outputPath.toString(), time2));
     Files.createDirectories(Path.of(outputPath.toString(), time3));
 
-    mongoCleanupTask.run();
+    mongoCleanupTask.cleanup().get(10, TimeUnit.SECONDS);
 
     final var remainingFiles = Files.list(outputPath).collect(Collectors.toList());
     assertEquals(1, remainingFiles.size());
     assertEquals(time3, remainingFiles.get(0).getFileName().toString());
   }
+
+  @Test
+  public void test_run_archives() throws Exception {
+    final var oldArchive = time1 + MongoBackupTask.ARCHIVE_EXTENSION + ".zst";
+    final var newArchive = time3 + MongoBackupTask.ARCHIVE_EXTENSION + ".zst";
+    Files.createDirectories(outputPath);
+    Files.createFile(Path.of(outputPath.toString(), oldArchive));
+    Files.createFile(Path.of(outputPath.toString(), newArchive));
+
+    mongoCleanupTask.cleanup().get(10, TimeUnit.SECONDS);
+
+    final var remainingFiles = Files.list(outputPath).collect(Collectors.toList());
+    assertEquals(1, remainingFiles.size());
+    assertEquals(newArchive, remainingFiles.get(0).getFileName().toString());
+  }
+
+  @Test
+  public void test_run_oplogSegments() throws Exception {
+    Files.createDirectories(Path.of(outputPath.toString(), time1));
+    Files.createDirectories(Path.of(outputPath.toString(), time3));
+    final var remainingFullStart = BackupFileNames.parseTimestamp(time3).get().toEpochSecond();
+    final var oplogDir = outputPath.resolve(BackupConstants.OPLOG_DIR);
+    final var oldSegment =
+        oplogDir.resolve(
+            MongoOplogTask.SEGMENT_NAME.formatted(
+                remainingFullStart - 200, remainingFullStart - 100));
+    final var neededSegment =
+        oplogDir.resolve(
+            MongoOplogTask.SEGMENT_NAME.formatted(
+                remainingFullStart - 100, remainingFullStart + 100));
+    Files.createDirectories(oldSegment);
+    Files.createDirectories(neededSegment);
+
+    mongoCleanupTask.cleanup().get(10, TimeUnit.SECONDS);
+
+    final var remainingSegments = Files.list(oplogDir).collect(Collectors.toList());
+    assertEquals(1, remainingSegments.size());
+    assertEquals(neededSegment, remainingSegments.get(0));
+  }
+
+  @Test
+  public void test_run_oplogSegmentsDuringDump() throws Exception {
+    final var now = ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE)).withNano(0);
+    final var olderStart = now.minusHours(2);
+    final var newerStart = now.minusMinutes(10);
+    final var olderDump = outputPath.resolve(olderStart.format(BackupConstants.FORMAT));
+    final var newerDump = outputPath.resolve(newerStart.format(BackupConstants.FORMAT));
+    Files.createDirectories(olderDump);
+    Files.createDirectories(newerDump);
+    catalog.register(
+        BackupCatalog.mongoTarget(DB_NAME),
+        olderStart,
+        new BackupArtifact(olderDump, 0, Option.none()));
+    catalog.register(
+        BackupCatalog.mongoTarget(DB_NAME),
+        newerStart,
+        new BackupArtifact(newerDump, 0, Option.none()));
+    // A dump directory is created when the dump starts, long before it completes
+    Files.setLastModifiedTime(olderDump, FileTime.from(olderStart.toInstant()));
+
+    final var oplogDir = outputPath.resolve(BackupConstants.OPLOG_DIR);
+    final var start = olderStart.toEpochSecond();
+    final var duringDump =
+        oplogDir.resolve(MongoOplogTask.SEGMENT_NAME.formatted(start + 600, start + 1200));
+    final var beforeDump =
+        oplogDir.resolve(MongoOplogTask.SEGMENT_NAME.formatted(start - 200, start - 100));
+    Files.createDirectories(duringDump);
+    Files.createDirectories(beforeDump);
+
+    new MongoCleanupTask(
+            propStore, catalog, deleter, DB_NAME, new RetentionConfig(24, null, null, null))
+        .cleanup()
+        .get(10, TimeUnit.SECONDS);
+
+    assertEquals(List.of(duringDump), Files.list(oplogDir).collect(Collectors.toList()));
+  }
 }
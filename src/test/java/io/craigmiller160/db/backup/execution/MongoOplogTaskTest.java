@@ -0,0 +1,217 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.craigmiller160.db.backup.config.dto.MongoDatabaseConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class MongoOplogTaskTest {
+
+  private static final String DB_NAME = "DbName";
+  private static final String OUTPUT_ROOT =
+      String.format("%s/%s", System.getProperty("user.dir"), "target/output");
+
+  @Mock private Process process;
+  @Mock private EmailService emailService;
+  private TestProcessProvider testProcessProvider;
+  private MongoOplogTask oplogTask;
+  private Path databaseDir;
+  private long oldestOplogEntry = 0;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
+    final var props = new Properties();
+    props.setProperty(PropertyStore.DB_MONGO_HOST, "host");
+    props.setProperty(PropertyStore.DB_MONGO_PORT, "27017");
+    props.setProperty(PropertyStore.DB_MONGO_USER, "user");
+    props.setProperty(PropertyStore.DB_MONGO_PASSWORD, "password");
+    props.setProperty(PropertyStore.DB_MONGO_AUTH_DB, "admin");
+    props.setProperty(PropertyStore.MONGODUMP_COMMAND, "mongodump");
+    props.setProperty(PropertyStore.MONGOSH_COMMAND, "mongosh");
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
+    testProcessProvider = new TestProcessProvider(process);
+    oplogTask =
+        new MongoOplogTask(
+            new PropertyStore(props),
+            new MongoDatabaseConfig(DB_NAME),
+            Duration.ofSeconds(20),
+            (command, environment) -> {
+              if ("mongosh".equals(command[0])) {
+                return new ProcessBuilder("sh", "-c", "echo " + oldestOplogEntry).start();
+              }
+              return testProcessProvider.provide(command, environment);
+            },
+            emailService);
+    databaseDir = Paths.get(OUTPUT_ROOT, BackupConstants.MONGO_DIR, DB_NAME);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
+  }
+
+  private void mockDump() throws Exception {
+    when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any()))
+        .thenAnswer(
+            invocation -> {
+              final var command = testProcessProvider.getCommand().get();
+              final var partialDir = Paths.get(command[command.length - 1]);
+              Files.createDirectories(partialDir.resolve(MongoOplogTask.OPLOG_DATABASE));
+              Files.writeString(
+                  partialDir.resolve(MongoOplogTask.OPLOG_DATABASE).resolve("oplog.rs.bson.gz"),
+                  "oplog");
+              return true;
+            });
+    when(process.exitValue()).thenReturn(0);
+  }
+
+  private List<String> listSegments() throws Exception {
+    return Files.list(databaseDir.resolve(BackupConstants.OPLOG_DIR))
+        .map(path -> path.getFileName().toString())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void test_execute_noFullBackup() {
+    assertTrue(oplogTask.execute().isSuccess());
+    assertTrue(testProcessProvider.getCommand().isEmpty());
+  }
+
+  @Test
+  public void test_execute_startsFromFullBackup() throws Exception {
+    final var fullTimestamp =
+        ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE))
+            .minusHours(1)
+            .format(BackupConstants.FORMAT);
+    Files.createDirectories(databaseDir.resolve(fullTimestamp));
+    final var fullStart = BackupFileNames.parseTimestamp(fullTimestamp).get().toEpochSecond();
+    mockDump();
+
+    assertTrue(oplogTask.execute().isSuccess());
+
+    final var command = List.of(testProcessProvider.getCommand().get());
+    assertTrue(command.contains(MongoOplogTask.OPLOG_COLLECTION_ARG));
+    assertTrue(command.contains(MongoBackupTask.GZIP_ARG));
+    assertTrue(command.get(1).contains("/" + MongoOplogTask.OPLOG_DATABASE + "?"));
+    final var query = command.stream().filter(arg -> arg.startsWith("--query=")).findFirst().get();
+    assertTrue(query.contains("\"^" + DB_NAME + "\\\\.\""));
+    assertTrue(query.contains("\"$gte\":{\"$timestamp\":{\"t\":" + fullStart + ","));
+
+    final var segments = listSegments();
+    assertEquals(1, segments.size());
+    assertTrue(segments.get(0).startsWith("oplog_" + fullStart + "_"));
+  }
+
+  @Test
+  public void test_execute_continuesFromLastSegment() throws Exception {
+    Files.createDirectories(databaseDir.resolve("20200101000000"));
+    Files.createDirectories(
+        databaseDir.resolve(BackupConstants.OPLOG_DIR).resolve("oplog_1000_2000"));
+    mockDump();
+
+    assertTrue(oplogTask.execute().isSuccess());
+
+    final var query =
+        List.of(testProcessProvider.getCommand().get()).stream()
+            .filter(arg -> arg.startsWith("--query="))
+            .findFirst()
+            .get();
+    assertTrue(query.contains("\"$gte\":{\"$timestamp\":{\"t\":2000,"));
+    assertEquals(2, listSegments().size());
+  }
+
+  @Test
+  public void test_escapeRegex() {
+    assertEquals("my\\\\-db\\\\+1", MongoOplogTask.escapeRegex("my-db+1"));
+    assertEquals(DB_NAME, MongoOplogTask.escapeRegex(DB_NAME));
+  }
+
+  @Test
+  public void test_execute_truncatedOplog() throws Exception {
+    Files.createDirectories(databaseDir.resolve("20200101000000"));
+    Files.createDirectories(
+        databaseDir.resolve(BackupConstants.OPLOG_DIR).resolve("oplog_1000_2000"));
+    oldestOplogEntry = Instant.now().getEpochSecond() - 3600;
+
+    final var result = oplogTask.execute();
+
+    assertTrue(result.isFailure());
+    assertTrue(result.getCause().getMessage().contains("truncated"));
+    assertTrue(testProcessProvider.getCommand().isEmpty());
+    verify(emailService).sendMongoErrorAlertEmail(eq(DB_NAME), any());
+    assertEquals(List.of("oplog_1000_2000"), listSegments());
+  }
+
+  @Test
+  public void test_execute_truncatedOplogResumesFromFullBackup() throws Exception {
+    final var fullTimestamp =
+        ZonedDateTime.now(ZoneId.of(BackupConstants.TIME_ZONE))
+            .minusHours(1)
+            .format(BackupConstants.FORMAT);
+    Files.createDirectories(databaseDir.resolve(fullTimestamp));
+    final var fullStart = BackupFileNames.parseTimestamp(fullTimestamp).get().toEpochSecond();
+    Files.createDirectories(
+        databaseDir.resolve(BackupConstants.OPLOG_DIR).resolve("oplog_1000_2000"));
+    oldestOplogEntry = fullStart - 60;
+    mockDump();
+
+    assertTrue(oplogTask.execute().isSuccess());
+
+    verify(emailService).sendMongoErrorAlertEmail(eq(DB_NAME), any());
+    final var query =
+        List.of(testProcessProvider.getCommand().get()).stream()
+            .filter(arg -> arg.startsWith("--query="))
+            .findFirst()
+            .get();
+    assertTrue(query.contains("\"$gte\":{\"$timestamp\":{\"t\":" + fullStart + ","));
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ParallelDeleterTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+
+  private ParallelDeleter deleter;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    deleter = new ParallelDeleter(4, 0);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    deleter.stop(10, TimeUnit.SECONDS);
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @Test
+  public void test_delete() throws Exception {
+    final var tree = OUTPUT_ROOT.resolve("backup_20200101000000");
+    Files.createDirectories(tree.resolve("db"));
+    for (var i = 0; i < 10; i++) {
+      Files.writeString(tree.resolve("db").resolve("collection" + i + ".bson"), "abcde");
+    }
+    final var file = OUTPUT_ROOT.resolve("backup_20200102000000.sql");
+    Files.writeString(file, "abc");
+    final var missing = OUTPUT_ROOT.resolve("backup_20200103000000.sql");
+    final var kept = OUTPUT_ROOT.resolve("backup_20200104000000.sql");
+    Files.writeString(kept, "abc");
+
+    final var deleted = new ArrayList<Path>();
+    final var result =
+        deleter
+            .delete(List.of(tree, file, missing), path -> path, deleted::add)
+            .get(10, TimeUnit.SECONDS);
+
+    assertEquals(3, result.successCount());
+    assertEquals(0, result.failureCount());
+    assertEquals(11, result.filesDeleted());
+    assertEquals(53, result.bytesDeleted());
+    assertEquals(List.of(tree, file, missing), deleted);
+    assertFalse(Files.exists(tree));
+    assertFalse(Files.exists(file));
+    assertTrue(Files.exists(kept));
+  }
+
+  @Test
+  public void test_delete_rateLimited() throws Exception {
+    final var tree = OUTPUT_ROOT.resolve("backup_20200101000000");
+    Files.createDirectories(tree);
+    for (var i = 0; i < 10; i++) {
+      Files.writeString(tree.resolve("collection" + i + ".bson"), "abcde");
+    }
+
+    // 10 files and 1 directory at 20 per second leaves 10 gaps of 50ms
+    final var rateLimited = new ParallelDeleter(4, 20);
+    final var result =
+        rateLimited.delete(List.of(tree), path -> path, path -> {}).get(10, TimeUnit.SECONDS);
+    rateLimited.stop(10, TimeUnit.SECONDS);
+
+    assertEquals(1, result.successCount());
+    assertEquals(10, result.filesDeleted());
+    assertTrue(result.elapsed().toMillis() >= 450, "Elapsed: " + result.elapsed());
+    assertFalse(Files.exists(tree));
+  }
+
+  @Test
+  public void test_delete_manyFiles() throws Exception {
+    // More files than the workers may have queued at once
+    final var tree = OUTPUT_ROOT.resolve("backup_20200101000000");
+    Files.createDirectories(tree);
+    for (var i = 0; i < 1000; i++) {
+      Files.writeString(tree.resolve("collection" + i + ".bson"), "a");
+    }
+
+    final var result =
+        deleter.delete(List.of(tree), path -> path, path -> {}).get(10, TimeUnit.SECONDS);
+
+    assertEquals(1, result.successCount());
+    assertEquals(1000, result.filesDeleted());
+    assertFalse(Files.exists(tree));
+  }
+
+  @Test
+  public void test_stop() throws Exception {
+    final var file = OUTPUT_ROOT.resolve("backup_20200102000000.sql");
+    Files.createDirectories(OUTPUT_ROOT);
+    Files.writeString(file, "abc");
+
+    assertTrue(deleter.stop(10, TimeUnit.SECONDS));
+
+    final var result = deleter.delete(List.of(file), path -> path, path -> {});
+    assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+    assertTrue(Files.exists(file));
+  }
+}
@@ -23,18 +23,33 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.config.dto.PostgresDatabaseConfig;
+import io.craigmiller160.db.backup.config.dto.PostgresDumpFormat;
+import io.craigmiller160.db.backup.dedup.ChunkStore;
 import io.craigmiller160.db.backup.email.EmailService;
 import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.exception.BackupTimeoutException;
 import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.commons.io.FileUtils;
@@ -57,12 +72,15 @@ public class PostgresBackupTaskTest {
   private static final String PORT = "100";
   private static final String USER = "user";
   private static final String PASSWORD = "password";
+  private static final Duration TIMEOUT = Duration.ofSeconds(20);
   private static final String OUTPUT_ROOT =
       String.format("%s/%s", System.getProperty("user.dir"), "target/output");
 
   private PropertyStore propStore;
+  private BackupCatalog catalog;
   private PostgresBackupTask postgresBackupTask;
   @Mock private Process process;
+  @Mock private Process psqlProcess;
   @Mock private EmailService emailService;
   private TestProcessProvider testProcessProvider;
 
@@ -78,9 +96,17 @@ public class PostgresBackupTaskTest {
     props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
 
     propStore = new PropertyStore(props);
+    catalog = new BackupCatalog(Paths.get(OUTPUT_ROOT));
     testProcessProvider = new TestProcessProvider(process);
     postgresBackupTask =
-        new PostgresBackupTask(propStore, DB_NAME, SCHEMA_NAME, emailService, testProcessProvider);
+        new PostgresBackupTask(
+            propStore,
+            catalog,
+            new PostgresDatabaseConfig(DB_NAME, List.of(SCHEMA_NAME)),
+            SCHEMA_NAME,
+            TIMEOUT,
+            emailService,
+            testProcessProvider);
   }
 
   @AfterEach
@@ -92,6 +118,8 @@ public class PostgresBackupTaskTest {
   public void test_run() throws Exception {
     when(process.getInputStream())
         .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
     when(process.exitValue()).thenReturn(0);
 
     postgresBackupTask.run();
@@ -130,14 +158,31 @@ public class PostgresBackupTaskTest {
     final var fileContent = IOUtils.toString(new FileInputStream(files[0]), StandardCharsets.UTF_8);
     assertEquals(DATA_CONTENT, fileContent);
 
+    final var partialFiles =
+        outputSchemaDir.listFiles(file -> file.getName().endsWith(BackupConstants.PARTIAL_SUFFIX));
+    assertNotNull(partialFiles);
+    assertEquals(0, partialFiles.length);
+
+    final var catalogEntry = catalog.find(files[0].toPath()).get();
+    assertEquals(BackupCatalog.postgresTarget(DB_NAME, SCHEMA_NAME), catalogEntry.target());
+    assertEquals(DATA_CONTENT.length(), catalogEntry.sizeBytes());
+    assertEquals(
+        HexFormat.of()
+            .formatHex(
+                MessageDigest.getInstance(AbstractBackupTask.CHECKSUM_ALGORITHM)
+                    .digest(DATA_CONTENT.getBytes(StandardCharsets.UTF_8))),
+        catalogEntry.checksum().get());
+    assertEquals(catalogEntry.checksum(), ChecksumSidecar.read(files[0].toPath()));
+
     verify(emailService, times(0)).sendPostgresErrorAlertEmail(any(), any(), any());
   }
 
   @Test
-  public void test_run_processError() {
+  public void test_run_processError() throws Exception {
     when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
     when(process.getErrorStream())
         .thenReturn(IOUtils.toInputStream("Error Message", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
     when(process.exitValue()).thenReturn(1);
 
     postgresBackupTask.run();
@@ -168,6 +213,12 @@ public class PostgresBackupTaskTest {
     assertNotNull(exception);
     assertTrue(exception instanceof BackupException);
     assertEquals("Error Message", exception.getMessage());
+
+    final var outputSchemaDir =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME).toFile();
+    final var files = outputSchemaDir.listFiles();
+    assertNotNull(files);
+    assertEquals(0, files.length);
   }
 
   @Test
@@ -208,4 +259,307 @@ public class PostgresBackupTaskTest {
     assertTrue(exception instanceof RuntimeException);
     assertEquals("Dying", exception.getMessage());
   }
+
+  @Test
+  public void test_run_timeout() throws Exception {
+    when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.getErrorStream())
+        .thenReturn(IOUtils.toInputStream("Still Running", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(false);
+
+    postgresBackupTask.run();
+
+    verify(process, times(1)).destroy();
+    verify(process, times(1)).destroyForcibly();
+
+    final var exceptionCaptor = ArgumentCaptor.forClass(Throwable.class);
+    verify(emailService, times(1))
+        .sendPostgresErrorAlertEmail(eq(DB_NAME), eq(SCHEMA_NAME), exceptionCaptor.capture());
+
+    final var exception = exceptionCaptor.getValue();
+    assertNotNull(exception);
+    assertTrue(exception instanceof BackupTimeoutException);
+    assertEquals("Process did not finish within 20 seconds: Still Running", exception.getMessage());
+
+    final var outputSchemaDir =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME).toFile();
+    final var files = outputSchemaDir.listFiles();
+    assertNotNull(files);
+    assertEquals(0, files.length);
+  }
+
+  @Test
+  public void test_run_directoryFormat() throws Exception {
+    final var databaseConfig =
+        new PostgresDatabaseConfig(
+            DB_NAME,
+            List.of(SCHEMA_NAME),
+            null,
+            PostgresDumpFormat.DIRECTORY,
+            4,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null);
+    postgresBackupTask =
+        new PostgresBackupTask(
+            propStore,
+            catalog,
+            databaseConfig,
+            SCHEMA_NAME,
+            TIMEOUT,
+            emailService,
+            testProcessProvider);
+
+    when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any()))
+        .thenAnswer(
+            invocation -> {
+              final var command = testProcessProvider.getCommand().get();
+              final var partialDir = Paths.get(command[command.length - 1]);
+              Files.createDirectories(partialDir);
+              Files.writeString(partialDir.resolve("toc.dat"), DATA_CONTENT);
+              return true;
+            });
+    when(process.exitValue()).thenReturn(0);
+
+    postgresBackupTask.run();
+
+    final var command = testProcessProvider.getCommand().get();
+    final var expectedCommandStart =
+        new String[] {
+          PostgresBackupTask.PG_DUMP_CMD,
+          DB_NAME,
+          PostgresBackupTask.SCHEMA_ARG,
+          SCHEMA_NAME,
+          PostgresBackupTask.HOST_ARG,
+          HOST,
+          PostgresBackupTask.PORT_ARG,
+          PORT,
+          PostgresBackupTask.USER_ARG,
+          USER,
+          "-Fd",
+          PostgresBackupTask.JOBS_ARG,
+          "4",
+          PostgresBackupTask.FILE_ARG
+        };
+    assertTrue(
+        Arrays.equals(expectedCommandStart, Arrays.copyOf(command, expectedCommandStart.length)));
+    assertTrue(command[command.length - 1].endsWith(BackupConstants.PARTIAL_SUFFIX));
+
+    final var outputSchemaDir =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME).toFile();
+    final var files = outputSchemaDir.listFiles();
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertTrue(files[0].isDirectory());
+    assertTrue(files[0].getName().startsWith("backup_"));
+    assertEquals(DATA_CONTENT, Files.readString(files[0].toPath().resolve("toc.dat")));
+
+    verify(emailService, times(0)).sendPostgresErrorAlertEmail(any(), any(), any());
+  }
+
+  @Test
+  public void test_run_dedup() throws Exception {
+    final var databaseConfig =
+        new PostgresDatabaseConfig(
+            DB_NAME,
+            List.of(SCHEMA_NAME),
+            null,
+            PostgresDumpFormat.CUSTOM,
+            null,
+            null,
+            null,
+            true,
+            null,
+            null,
+            null);
+    postgresBackupTask =
+        new PostgresBackupTask(
+            propStore,
+            catalog,
+            databaseConfig,
+            SCHEMA_NAME,
+            TIMEOUT,
+            emailService,
+            testProcessProvider);
+
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+    when(process.exitValue()).thenReturn(0);
+
+    assertTrue(postgresBackupTask.execute().isSuccess());
+
+    final var command = testProcessProvider.getCommand().get();
+    assertEquals(PostgresBackupTask.COMPRESS_ARG + 0, command[command.length - 1]);
+
+    final var files =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME)
+            .toFile()
+            .listFiles(file -> !file.getName().endsWith(BackupConstants.CHECKSUM_EXTENSION));
+    assertNotNull(files);
+    assertEquals(1, files.length);
+    assertTrue(files[0].getName().endsWith(".dump" + ChunkStore.MANIFEST_EXTENSION));
+
+    final var restored = new ByteArrayOutputStream();
+    new ChunkStore(Paths.get(OUTPUT_ROOT)).restore(files[0].toPath(), restored);
+    assertEquals(DATA_CONTENT, restored.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void test_run_dedupWithCompression() {
+    final var databaseConfig =
+        new PostgresDatabaseConfig(
+            DB_NAME,
+            List.of(SCHEMA_NAME),
+            null,
+            null,
+            null,
+            new CompressionConfig(CompressionType.GZIP, null, null),
+            null,
+            true,
+            null,
+            null,
+            null);
+    postgresBackupTask =
+        new PostgresBackupTask(
+            propStore,
+            catalog,
+            databaseConfig,
+            SCHEMA_NAME,
+            TIMEOUT,
+            emailService,
+            testProcessProvider);
+
+    assertTrue(postgresBackupTask.execute().isFailure());
+    assertTrue(testProcessProvider.getCommand().isEmpty());
+    verify(emailService, times(1)).sendPostgresErrorAlertEmail(eq(DB_NAME), eq(SCHEMA_NAME), any());
+  }
+
+  @Test
+  public void test_run_outputFails() throws Exception {
+    // Not reachable through ConfigReader, but the dump must still be reaped if the output breaks
+    final var databaseConfig =
+        new PostgresDatabaseConfig(
+            DB_NAME,
+            List.of(SCHEMA_NAME),
+            null,
+            null,
+            null,
+            new CompressionConfig(CompressionType.GZIP, 42, null),
+            null,
+            null,
+            null,
+            null,
+            null);
+    postgresBackupTask =
+        new PostgresBackupTask(
+            propStore,
+            catalog,
+            databaseConfig,
+            SCHEMA_NAME,
+            TIMEOUT,
+            emailService,
+            testProcessProvider);
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+
+    assertTrue(postgresBackupTask.execute().isFailure());
+
+    verify(process, times(1)).destroy();
+    verify(emailService, times(1)).sendPostgresErrorAlertEmail(eq(DB_NAME), eq(SCHEMA_NAME), any());
+    final var files =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME)
+            .toFile()
+            .listFiles();
+    assertNotNull(files);
+    assertEquals(0, files.length);
+  }
+
+  private PostgresBackupTask createSkipUnchangedTask(final List<String[]> commands) {
+    final var databaseConfig =
+        new PostgresDatabaseConfig(
+            DB_NAME, List.of(SCHEMA_NAME), null, null, null, null, null, null, true, null, null);
+    return new PostgresBackupTask(
+        propStore,
+        catalog,
+        databaseConfig,
+        SCHEMA_NAME,
+        TIMEOUT,
+        emailService,
+        (command, environment) -> {
+          commands.add(command);
+          return PostgresBackupTask.PSQL_CMD.equals(command[0]) ? psqlProcess : process;
+        });
+  }
+
+  private void mockFingerprint(final String fingerprint) throws Exception {
+    when(psqlProcess.getInputStream())
+        .thenReturn(IOUtils.toInputStream(fingerprint + "\n", StandardCharsets.UTF_8));
+    when(psqlProcess.getErrorStream())
+        .thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(psqlProcess.waitFor(anyLong(), any())).thenReturn(true);
+    when(psqlProcess.exitValue()).thenReturn(0);
+  }
+
+  @Test
+  public void test_run_skipUnchanged() throws Exception {
+    final var schemaDir =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME);
+    final var previousBackup = schemaDir.resolve("backup_20200101000000.sql");
+    Files.createDirectories(schemaDir);
+    Files.writeString(previousBackup, DATA_CONTENT);
+    new SchemaFingerprint("abc", previousBackup.getFileName().toString()).save(schemaDir).get();
+
+    final var commands = new ArrayList<String[]>();
+    mockFingerprint("abc");
+
+    assertTrue(createSkipUnchangedTask(commands).execute().isSuccess());
+
+    assertEquals(1, commands.size());
+    assertEquals(PostgresBackupTask.PSQL_CMD, commands.get(0)[0]);
+    assertTrue(commands.get(0)[commands.get(0).length - 1].contains("'" + SCHEMA_NAME + "'"));
+
+    final var backups =
+        Files.list(schemaDir)
+            .filter(
+                path -> BackupFileNames.parseTimestamp(path.getFileName().toString()).isDefined())
+            .toList();
+    assertEquals(2, backups.size());
+    final var linked =
+        backups.stream().filter(path -> !path.equals(previousBackup)).findFirst().get();
+    assertTrue(Files.isSameFile(previousBackup, linked));
+    assertEquals(
+        linked.getFileName().toString(), SchemaFingerprint.load(schemaDir).get().backupFileName());
+  }
+
+  @Test
+  public void test_run_skipUnchanged_changed() throws Exception {
+    final var schemaDir =
+        Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME);
+    Files.createDirectories(schemaDir);
+    Files.writeString(schemaDir.resolve("backup_20200101000000.sql"), "Old");
+    new SchemaFingerprint("abc", "backup_20200101000000.sql").save(schemaDir).get();
+
+    final var commands = new ArrayList<String[]>();
+    mockFingerprint("def");
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream(DATA_CONTENT, StandardCharsets.UTF_8));
+    when(process.getErrorStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.waitFor(anyLong(), any())).thenReturn(true);
+    when(process.exitValue()).thenReturn(0);
+
+    assertTrue(createSkipUnchangedTask(commands).execute().isSuccess());
+
+    assertEquals(2, commands.size());
+    assertEquals(PostgresBackupTask.PG_DUMP_CMD, commands.get(1)[0]);
+
+    final var fingerprint = SchemaFingerprint.load(schemaDir).get();
+    assertEquals("def", fingerprint.fingerprint());
+    assertEquals(DATA_CONTENT, Files.readString(schemaDir.resolve(fingerprint.backupFileName())));
+  }
 }
@@ -20,13 +20,16 @@ package io.craigmiller160.db.backup.execution;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
 import io.craigmiller160.db.backup.properties.PropertyStore;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -41,6 +44,8 @@ public class PostgresCleanupTaskTest {
       String.format("%s/%s", System.getProperty("user.dir"), "target/output");
 
   private PropertyStore propStore;
+  private BackupCatalog catalog;
+  private ParallelDeleter deleter;
   private PostgresCleanupTask postgresCleanupTask;
   private Path outputPath;
   private String file1;
@@ -54,7 +59,11 @@ public class PostgresCleanupTaskTest {
     final var props = new Properties();
     props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
     props.setProperty(PropertyStore.OUTPUT_CLEANUP_AGE_DAYS, "10");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_THREADS, "2");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_MAX_DELETES_PER_SEC, "0");
     propStore = new PropertyStore(props);
+    catalog = new BackupCatalog(Paths.get(OUTPUT_ROOT));
+    deleter = ParallelDeleter.of(propStore);
 
     outputPath = Paths.get(OUTPUT_ROOT, BackupConstants.POSTGRES_DIR, DB_NAME, SCHEMA_NAME);
 
@@ -65,11 +74,13 @@ public class PostgresCleanupTaskTest {
     file2 = String.format("backup_%s.sql", BackupConstants.FORMAT.format(time2));
     file3 = String.format("backup_%s.sql", BackupConstants.FORMAT.format(time3));
 
-    postgresCleanupTask = new PostgresCleanupTask(propStore, DB_NAME, SCHEMA_NAME);
+    postgresCleanupTask =
+        new PostgresCleanupTask(propStore, catalog, deleter, DB_NAME, SCHEMA_NAME);
   }
 
   @AfterEach
   public void afterEach() throws Exception {
+    deleter.stop(10, TimeUnit.SECONDS);
     FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
   }
 
@@ -80,10 +91,58 @@ public class PostgresCleanupTaskTest {
     Files.createFile(Path.of(outputPath.toString(), file2));
     Files.createFile(Path.of(outputPath.toString(), file3));
 
-    postgresCleanupTask.run();
+    postgresCleanupTask.cleanup().get(10, TimeUnit.SECONDS);
 
     final var remainingFiles = Files.list(outputPath).collect(Collectors.toList());
     assertEquals(1, remainingFiles.size());
     assertEquals(file3, remainingFiles.get(0).getFileName().toString());
   }
+
+  @Test
+  public void test_run_mixedFormats() throws Exception {
+    final var oldTimestamp = BackupConstants.FORMAT.format(LocalDateTime.of(2020, 1, 1, 0, 0, 0));
+    final var oldDirectory = String.format("backup_%s", oldTimestamp);
+    final var oldCustomFile = String.format("backup_%s.dump", oldTimestamp);
+    final var strayFile = "notes.txt";
+
+    Files.createDirectories(Path.of(outputPath.toString(), oldDirectory));
+    Files.createFile(Path.of(outputPath.toString(), oldDirectory, "toc.dat"));
+    Files.createFile(Path.of(outputPath.toString(), oldCustomFile));
+    Files.createFile(Path.of(outputPath.toString(), strayFile));
+    Files.createFile(Path.of(outputPath.toString(), file3));
+
+    postgresCleanupTask.cleanup().get(10, TimeUnit.SECONDS);
+
+    final var remainingFiles =
+        Files.list(outputPath)
+            .map(path -> path.getFileName().toString())
+            .sorted()
+            .collect(Collectors.toList());
+    assertEquals(List.of(file3, strayFile), remainingFiles);
+  }
+
+  @Test
+  public void test_run_retentionPolicy() throws Exception {
+    Files.createDirectories(outputPath);
+    Files.createFile(Path.of(outputPath.toString(), file1));
+    Files.createFile(Path.of(outputPath.toString(), file2));
+    Files.createFile(Path.of(outputPath.toString(), file3));
+
+    new PostgresCleanupTask(
+            propStore,
+            catalog,
+            deleter,
+            DB_NAME,
+            SCHEMA_NAME,
+            new RetentionConfig(null, 2, null, null))
+        .cleanup()
+        .get(10, TimeUnit.SECONDS);
+
+    final var remainingFiles =
+        Files.list(outputPath)
+            .map(path -> path.getFileName().toString())
+            .sorted()
+            .collect(Collectors.toList());
+    assertEquals(List.of(file2, file3), remainingFiles);
+  }
 }
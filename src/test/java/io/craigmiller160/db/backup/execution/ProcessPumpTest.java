@@ -0,0 +1,80 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class ProcessPumpTest {
+
+  @Mock private Process process;
+
+  @Test
+  public void test_pump() {
+    when(process.getInputStream())
+        .thenReturn(IOUtils.toInputStream("Output", StandardCharsets.UTF_8));
+    when(process.getErrorStream())
+        .thenReturn(IOUtils.toInputStream("Error\n", StandardCharsets.UTF_8));
+
+    final var output = new ByteArrayOutputStream();
+    final var pump = ProcessPump.attach(process).start(output);
+
+    assertEquals(6L, pump.awaitStdout().get());
+    assertEquals("Error", pump.awaitStderr().get());
+    assertEquals("Output", output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void test_pump_stderrTail() {
+    final var stderr = "a".repeat(100) + "b".repeat(10);
+    when(process.getInputStream()).thenReturn(IOUtils.toInputStream("", StandardCharsets.UTF_8));
+    when(process.getErrorStream())
+        .thenReturn(IOUtils.toInputStream(stderr, StandardCharsets.UTF_8));
+
+    final var pump = ProcessPump.attach(process, 15).start(new ByteArrayOutputStream());
+
+    assertEquals("aaaaabbbbbbbbbb", pump.awaitStderr().get());
+  }
+
+  @Test
+  public void test_pump_largeStderr() throws Exception {
+    final var realProcess =
+        new ProcessBuilder("sh", "-c", "head -c 1048576 /dev/zero | tr '\\0' 'x' >&2; echo Output")
+            .start();
+
+    final var output = new ByteArrayOutputStream();
+    final var pump = ProcessPump.attach(realProcess, 8).start(output);
+
+    assertTrue(realProcess.waitFor(20, TimeUnit.SECONDS));
+    assertTrue(pump.awaitStdout().isSuccess());
+    assertEquals("Output", output.toString(StandardCharsets.UTF_8).strip());
+    assertEquals("xxxxxxxx", pump.awaitStderr().get());
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import io.craigmiller160.db.backup.config.dto.RestoreTestConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class RestoreTestTaskTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final String TARGET = BackupCatalog.postgresTarget("db", "public");
+  private static final String SCRATCH = "restore_test_db_public";
+
+  @Mock private EmailService emailService;
+  private final List<List<String>> commands = new ArrayList<>();
+  private PropertyStore propStore;
+  private BackupCatalog catalog;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    final var props = new Properties();
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT.toString());
+    props.setProperty(PropertyStore.DB_POSTGRES_HOST, "localhost");
+    props.setProperty(PropertyStore.DB_POSTGRES_PORT, "5432");
+    props.setProperty(PropertyStore.DB_POSTGRES_USER, "user");
+    props.setProperty(PropertyStore.DB_POSTGRES_PASSWORD, "password");
+    propStore = new PropertyStore(props);
+    catalog = new BackupCatalog(OUTPUT_ROOT);
+
+    final var path =
+        OUTPUT_ROOT.resolve(
+            Paths.get(BackupConstants.POSTGRES_DIR, "db", "public", "backup_20200101000000.sql"));
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, "CREATE TABLE foo (id int);", StandardCharsets.UTF_8);
+    catalog
+        .register(
+            TARGET,
+            ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of(BackupConstants.TIME_ZONE)),
+            new BackupArtifact(path, Files.size(path), Option.none()))
+        .get();
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private RestoreTestTask createTask(final String restoreScript) {
+    return new RestoreTestTask(
+        propStore,
+        catalog,
+        emailService,
+        new RestoreTestConfig(null, 20, null, null, null),
+        (command, environment) -> {
+          commands.add(List.of(command));
+          final var last = command[command.length - 1];
+          final String script;
+          if (List.of(command).contains("-f")) {
+            script = restoreScript;
+          } else if (last.startsWith("SELECT")) {
+            script = "echo '2|10'";
+          } else {
+            script = "true";
+          }
+          return new ProcessBuilder("sh", "-c", script).start();
+        });
+  }
+
+  private String getHistoryLine() throws Exception {
+    final var lines =
+        Files.readAllLines(
+            new RestoreHistory(OUTPUT_ROOT).getHistoryFile(), StandardCharsets.UTF_8);
+    assertEquals(1, lines.size());
+    return lines.get(0);
+  }
+
+  @Test
+  public void test_run() throws Exception {
+    createTask("true").run();
+
+    assertEquals(5, commands.size());
+    assertEquals(
+        "DROP DATABASE IF EXISTS \"%s\" WITH (FORCE)".formatted(SCRATCH),
+        commands.get(0).get(commands.get(0).size() - 1));
+    assertEquals(
+        "CREATE DATABASE \"%s\"".formatted(SCRATCH),
+        commands.get(1).get(commands.get(1).size() - 1));
+    assertTrue(commands.get(2).contains("-f"));
+    assertEquals(SCRATCH, commands.get(2).get(commands.get(2).indexOf("-d") + 1));
+    assertEquals(SCRATCH, commands.get(3).get(commands.get(3).indexOf("-d") + 1));
+    assertEquals(commands.get(0), commands.get(4));
+
+    final var columns = getHistoryLine().split("\t");
+    assertEquals(TARGET, columns[1]);
+    assertEquals("10", columns[5]);
+    assertEquals(RestoreHistory.STATUS_OK, columns[6]);
+    verifyNoInteractions(emailService);
+  }
+
+  @Test
+  public void test_run_restoreFails() throws Exception {
+    createTask("echo failed >&2; exit 1").run();
+
+    // The row count is skipped, but the scratch database is still dropped
+    assertEquals(4, commands.size());
+    assertEquals(commands.get(0), commands.get(3));
+
+    final var columns = getHistoryLine().split("\t");
+    assertEquals(TARGET, columns[1]);
+    assertEquals(RestoreHistory.STATUS_FAILED, columns[6]);
+    verify(emailService).sendRestoreTestErrorAlertEmail(eq(TARGET), any());
+  }
+
+  @Test
+  public void test_getScratchDatabaseName() {
+    assertEquals(SCRATCH, RestoreTestTask.getScratchDatabaseName("DB-public"));
+
+    final var prefix = "a".repeat(60);
+    final var first = RestoreTestTask.getScratchDatabaseName(prefix + "_first");
+    final var second = RestoreTestTask.getScratchDatabaseName(prefix + "_second");
+    assertEquals(63, first.length());
+    assertEquals(63, second.length());
+    assertNotEquals(first, second);
+  }
+}
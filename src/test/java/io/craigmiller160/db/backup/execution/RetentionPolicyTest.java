@@ -0,0 +1,98 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.config.dto.RetentionConfig;
+import io.vavr.control.Option;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class RetentionPolicyTest {
+
+  private static final ZoneId ZONE = ZoneId.of(BackupConstants.TIME_ZONE);
+
+  private static BackupCatalog.Entry entry(final LocalDateTime time) {
+    return new BackupCatalog.Entry(
+        "target",
+        time.atZone(ZONE).toEpochSecond(),
+        time.format(BackupConstants.FORMAT),
+        1,
+        Option.none(),
+        BackupCatalog.STATUS_OK,
+        Option.none());
+  }
+
+  private static Set<String> keptNames(
+      final List<BackupCatalog.Entry> entries, final RetentionConfig config) {
+    final var expired = RetentionPolicy.of(config).get().selectExpired(entries);
+    return entries.stream()
+        .filter(entry -> !expired.contains(entry))
+        .map(BackupCatalog.Entry::relativePath)
+        .collect(Collectors.toSet());
+  }
+
+  @Test
+  public void test_of_empty() {
+    assertTrue(RetentionPolicy.of(null).isEmpty());
+    assertTrue(RetentionPolicy.of(new RetentionConfig(null, 0, null, null)).isEmpty());
+  }
+
+  @Test
+  public void test_selectExpired() {
+    // Every 6 hours from Sunday 2020-01-05 through Sunday 2020-02-16
+    final var entries = new ArrayList<BackupCatalog.Entry>();
+    var time = LocalDateTime.of(2020, 1, 5, 0, 0);
+    while (!time.isAfter(LocalDateTime.of(2020, 2, 16, 18, 0))) {
+      entries.add(entry(time));
+      time = time.plusHours(6);
+    }
+
+    final var kept = keptNames(entries, new RetentionConfig(2, 3, 2, 2));
+
+    assertEquals(
+        Set.of(
+            // hourly: the two newest hours
+            "20200216180000",
+            "20200216120000",
+            // daily: the 16th is already kept, plus the newest of the 15th and 14th
+            "20200215180000",
+            "20200214180000",
+            // weekly: ISO weeks start on Monday, so the 16th is kept and the previous week
+            // ends on Sunday the 9th
+            "20200209180000",
+            // monthly: February is already kept, January keeps its newest backup
+            "20200131180000"),
+        kept);
+  }
+
+  @Test
+  public void test_selectExpired_keepsNewest() {
+    final var entries = List.of(entry(LocalDateTime.of(2020, 1, 1, 0, 0)));
+    assertEquals(
+        Set.of("20200101000000"), keptNames(entries, new RetentionConfig(null, null, 0, 1)));
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class StaggerStrategyTest {
+
+  private static final String TASK_KEY = "postgres/db/schema";
+
+  @Test
+  public void test_getInitialDelaySecs_disabled() {
+    final var strategy = new StaggerStrategy(0, 0, 3600);
+    assertEquals(0, strategy.getInitialDelaySecs(TASK_KEY));
+  }
+
+  @Test
+  public void test_getInitialDelaySecs_deterministic() {
+    final var strategy = new StaggerStrategy(1800, 0, 3600);
+    final var delay = strategy.getInitialDelaySecs(TASK_KEY);
+    assertTrue(delay >= 0 && delay < 1800);
+    assertEquals(delay, new StaggerStrategy(1800, 0, 3600).getInitialDelaySecs(TASK_KEY));
+
+    final var distinctDelays =
+        IntStream.range(0, 20)
+            .mapToLong(index -> strategy.getInitialDelaySecs("postgres/db/schema" + index))
+            .distinct()
+            .count();
+    assertTrue(distinctDelays > 1);
+  }
+
+  @Test
+  public void test_getInitialDelaySecs_cappedToInterval() {
+    final var strategy = new StaggerStrategy(10000, 0, 60);
+    IntStream.range(0, 20)
+        .forEach(index -> assertTrue(strategy.getInitialDelaySecs(TASK_KEY + index) < 60));
+  }
+
+  @Test
+  public void test_getInitialDelaySecs_jitter() {
+    final var strategy = new StaggerStrategy(1800, 30, 3600);
+    final var offset = strategy.getOffsetSecs(TASK_KEY);
+    IntStream.range(0, 20)
+        .forEach(
+            index -> {
+              final var delay = strategy.getInitialDelaySecs(TASK_KEY);
+              assertTrue(delay >= offset && delay <= offset + 30);
+            });
+  }
+}
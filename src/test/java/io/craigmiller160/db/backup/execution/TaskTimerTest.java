@@ -0,0 +1,123 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.schedule.Schedule;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TaskTimerTest {
+
+  private static final String NAME = "postgres/db/schema";
+  private static final ZoneId ZONE = ZoneId.of("US/Eastern");
+  private static final Schedule EVERY_100_MILLIS = after -> after.plusNanos(100_000_000);
+
+  private ExecutorService workers;
+  private TaskTimer taskTimer;
+
+  @BeforeEach
+  public void setup() {
+    workers = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void after() {
+    taskTimer.stop();
+    workers.shutdownNow();
+  }
+
+  private Runnable slowTask(
+      final AtomicInteger running, final AtomicInteger maxRunning, final long sleepMillis) {
+    return () -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+    };
+  }
+
+  @Test
+  public void test_run_noOverrun() throws Exception {
+    taskTimer = new TaskTimer(ZONE, OverlapPolicy.SKIP);
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+    taskTimer.schedule(NAME, slowTask(running, maxRunning, 10), EVERY_100_MILLIS, 0, workers);
+    taskTimer.start();
+    Thread.sleep(450);
+    taskTimer.stop();
+
+    final var state = taskTimer.getRunStates().get(NAME);
+    assertTrue(state.getRunCount() >= 3);
+    assertEquals(0, state.getOverrunCount());
+    assertTrue(state.getOverrunRatio() < 1.0);
+    assertTrue(state.getLastStart().isDefined());
+    assertTrue(state.getLastEnd().isDefined());
+  }
+
+  @Test
+  public void test_run_skipOverlapping() throws Exception {
+    taskTimer = new TaskTimer(ZONE, OverlapPolicy.SKIP);
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+    taskTimer.schedule(NAME, slowTask(running, maxRunning, 350), EVERY_100_MILLIS, 0, workers);
+    taskTimer.start();
+    Thread.sleep(900);
+    taskTimer.stop();
+    Thread.sleep(400);
+
+    final var state = taskTimer.getRunStates().get(NAME);
+    assertEquals(1, maxRunning.get());
+    assertTrue(state.getRunCount() >= 2);
+    assertTrue(state.getOverrunCount() > 0);
+    assertEquals(state.getOverrunCount(), state.getSkippedCount());
+    assertEquals(0, state.getCoalescedCount());
+    assertTrue(state.getOverrunRatio() > 1.0);
+    assertFalse(state.isInFlight());
+  }
+
+  @Test
+  public void test_run_coalesceOverlapping() throws Exception {
+    taskTimer = new TaskTimer(ZONE, OverlapPolicy.COALESCE);
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+    taskTimer.schedule(NAME, slowTask(running, maxRunning, 350), EVERY_100_MILLIS, 0, workers);
+    taskTimer.start();
+    Thread.sleep(900);
+
+    final var state = taskTimer.getRunStates().get(NAME);
+    assertEquals(1, maxRunning.get());
+    assertTrue(state.getOverrunCount() > 0);
+    assertTrue(state.getCoalescedCount() > 0);
+    // Only one trigger is remembered per run, the rest are dropped
+    assertEquals(state.getOverrunCount(), state.getCoalescedCount() + state.getSkippedCount());
+    assertTrue(state.getSkippedCount() > 0);
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.craigmiller160.db.backup.config.dto.CompressionConfig;
+import io.craigmiller160.db.backup.config.dto.CompressionType;
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.email.EmailService;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class WalReceiverSupervisorTest {
+
+  private static final String OUTPUT_ROOT =
+      String.format("%s/%s", System.getProperty("user.dir"), "target/output");
+  private static final PostgresWalConfig WAL_CONFIG =
+      new PostgresWalConfig(
+          "test_slot", new CompressionConfig(CompressionType.GZIP, 5, null), null, null, null);
+
+  @Mock private Process slotProcess;
+  @Mock private Process receiveProcess;
+  @Mock private EmailService emailService;
+  private final List<String[]> commands = Collections.synchronizedList(new ArrayList<>());
+  private final CountDownLatch receiving = new CountDownLatch(1);
+  private final CountDownLatch destroyed = new CountDownLatch(1);
+  private WalReceiverSupervisor supervisor;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    final var props = new Properties();
+    props.setProperty(PropertyStore.DB_POSTGRES_HOST, "host");
+    props.setProperty(PropertyStore.DB_POSTGRES_PORT, "5432");
+    props.setProperty(PropertyStore.DB_POSTGRES_USER, "user");
+    props.setProperty(PropertyStore.DB_POSTGRES_PASSWORD, "password");
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
+    supervisor =
+        new WalReceiverSupervisor(
+            new PropertyStore(props),
+            WAL_CONFIG,
+            emailService,
+            (command, environment) -> {
+              commands.add(command);
+              if (List.of(command).contains(WalReceiverSupervisor.CREATE_SLOT_ARG)) {
+                return slotProcess;
+              }
+              return receiveProcess;
+            },
+            Duration.ofMillis(10),
+            Duration.ofMillis(50));
+
+    when(slotProcess.getInputStream()).thenAnswer(invocation -> InputStream.nullInputStream());
+    when(slotProcess.getErrorStream()).thenAnswer(invocation -> InputStream.nullInputStream());
+    when(slotProcess.waitFor()).thenReturn(0);
+    when(receiveProcess.getInputStream()).thenAnswer(invocation -> InputStream.nullInputStream());
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    supervisor.stop(5, TimeUnit.SECONDS);
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
+  }
+
+  private int blockUntilDestroyed() throws Exception {
+    receiving.countDown();
+    destroyed.await(5, TimeUnit.SECONDS);
+    return 0;
+  }
+
+  @Test
+  public void test_startAndStop() throws Exception {
+    when(receiveProcess.getErrorStream()).thenAnswer(invocation -> InputStream.nullInputStream());
+    when(receiveProcess.waitFor()).thenAnswer(invocation -> blockUntilDestroyed());
+    doAnswer(
+            invocation -> {
+              destroyed.countDown();
+              return null;
+            })
+        .when(receiveProcess)
+        .destroy();
+
+    supervisor.start();
+    assertTrue(receiving.await(5, TimeUnit.SECONDS));
+    assertTrue(supervisor.stop(5, TimeUnit.SECONDS));
+
+    assertEquals(2, commands.size());
+    final var receiveCommand = List.of(commands.get(1));
+    assertEquals(WalReceiverSupervisor.PG_RECEIVEWAL_CMD, receiveCommand.get(0));
+    assertTrue(receiveCommand.contains(WalReceiverSupervisor.SLOT_ARG.formatted("test_slot")));
+    assertTrue(receiveCommand.contains(WalReceiverSupervisor.NO_LOOP_ARG));
+    assertTrue(receiveCommand.contains(WalReceiverSupervisor.COMPRESS_ARG + 5));
+    assertTrue(
+        receiveCommand.contains(
+            String.format(
+                "%s/%s/%s",
+                OUTPUT_ROOT, BackupConstants.POSTGRES_WAL_DIR, BackupConstants.WAL_SEGMENT_DIR)));
+    assertEquals(0, supervisor.getRestartCount());
+    verify(emailService, never()).sendPostgresWalErrorAlertEmail(any(), any());
+  }
+
+  @Test
+  public void test_restartAfterFailure() throws Exception {
+    when(receiveProcess.getErrorStream())
+        .thenReturn(IOUtils.toInputStream("connection lost", StandardCharsets.UTF_8))
+        .thenAnswer(invocation -> InputStream.nullInputStream());
+    when(receiveProcess.waitFor()).thenReturn(1).thenAnswer(invocation -> blockUntilDestroyed());
+    doAnswer(
+            invocation -> {
+              destroyed.countDown();
+              return null;
+            })
+        .when(receiveProcess)
+        .destroy();
+
+    supervisor.start();
+    assertTrue(receiving.await(5, TimeUnit.SECONDS));
+    assertTrue(supervisor.stop(5, TimeUnit.SECONDS));
+
+    assertEquals(4, commands.size());
+    assertEquals(1, supervisor.getRestartCount());
+    verify(emailService, times(1)).sendPostgresWalErrorAlertEmail(eq("host:5432"), any());
+  }
+}
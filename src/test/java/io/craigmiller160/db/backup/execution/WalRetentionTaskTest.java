@@ -0,0 +1,109 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.config.dto.PostgresWalConfig;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class WalRetentionTaskTest {
+
+  private static final String OUTPUT_ROOT =
+      String.format("%s/%s", System.getProperty("user.dir"), "target/output");
+
+  private PropertyStore propStore;
+  private Path baseDir;
+  private Path walDir;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
+    final var props = new Properties();
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT);
+    propStore = new PropertyStore(props);
+    baseDir = PostgresBaseBackupTask.getBaseBackupDirectory(propStore);
+    walDir = WalReceiverSupervisor.getWalDirectory(propStore);
+    Files.createDirectories(baseDir);
+    Files.createDirectories(walDir);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(new File(OUTPUT_ROOT));
+  }
+
+  private Path createWalFile(final String name, final LocalDateTime modified) throws Exception {
+    final var file = Files.writeString(walDir.resolve(name), name);
+    Files.setLastModifiedTime(
+        file, FileTime.from(modified.atZone(ZoneId.of(BackupConstants.TIME_ZONE)).toInstant()));
+    return file;
+  }
+
+  @Test
+  public void test_run() throws Exception {
+    final var oldBase = Files.createDirectories(baseDir.resolve("20200101000000"));
+    final var keptBase1 = Files.createDirectories(baseDir.resolve("20200102000000"));
+    final var keptBase2 = Files.createDirectories(baseDir.resolve("20200103000000"));
+    final var partialBase = Files.createDirectories(baseDir.resolve("20200104000000.partial"));
+    Files.writeString(oldBase.resolve("base.tar"), "data");
+
+    final var oldSegment =
+        createWalFile("000000010000000000000001", LocalDateTime.of(2020, 1, 1, 12, 0));
+    final var neededSegment =
+        createWalFile("000000010000000000000002", LocalDateTime.of(2020, 1, 1, 23, 30));
+    final var newSegment =
+        createWalFile("000000010000000000000003", LocalDateTime.of(2020, 1, 2, 12, 0));
+    final var history = createWalFile("00000002.history", LocalDateTime.of(2020, 1, 1, 0, 0));
+
+    new WalRetentionTask(propStore, new PostgresWalConfig(null, null, null, 2, null)).run();
+
+    assertFalse(Files.exists(oldBase));
+    assertTrue(Files.exists(keptBase1));
+    assertTrue(Files.exists(keptBase2));
+    assertTrue(Files.exists(partialBase));
+
+    assertFalse(Files.exists(oldSegment));
+    assertTrue(Files.exists(neededSegment));
+    assertTrue(Files.exists(newSegment));
+    assertTrue(Files.exists(history));
+  }
+
+  @Test
+  public void test_run_noBaseBackups() throws Exception {
+    final var segment =
+        createWalFile("000000010000000000000001", LocalDateTime.of(2020, 1, 1, 12, 0));
+
+    new WalRetentionTask(propStore, new PostgresWalConfig(null, null, null, null, null)).run();
+
+    assertTrue(Files.exists(segment));
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.execution;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class WorkQueueTest {
+
+  private static final String POSTGRES_HOST = "postgres://localhost:5432";
+  private static final String MONGO_HOST = "mongodb://localhost:27017";
+
+  private WorkQueue workQueue;
+
+  @BeforeEach
+  public void setup() {
+    workQueue = new WorkQueue(Executors.newFixedThreadPool(4));
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    workQueue.stop(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void test_execute_limitsPerHost() throws Exception {
+    final var postgresLane = workQueue.forHost(POSTGRES_HOST, 2);
+    final var running = new AtomicInteger(0);
+    final var maxRunning = new AtomicInteger(0);
+    final var finished = new CountDownLatch(6);
+
+    for (int i = 0; i < 6; i++) {
+      postgresLane.execute(
+          () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(50);
+            } catch (final InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            finished.countDown();
+          });
+    }
+
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+    assertEquals(2, maxRunning.get());
+    assertEquals(0, workQueue.getPendingCount(POSTGRES_HOST));
+  }
+
+  @Test
+  public void test_execute_busyHostDoesNotBlockOtherHosts() throws Exception {
+    final var postgresLane = workQueue.forHost(POSTGRES_HOST, 1);
+    final var mongoLane = workQueue.forHost(MONGO_HOST, 1);
+    final var release = new CountDownLatch(1);
+    final var postgresFinished = new CountDownLatch(3);
+    final var mongoFinished = new CountDownLatch(1);
+
+    for (int i = 0; i < 3; i++) {
+      postgresLane.execute(
+          () -> {
+            try {
+              release.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            postgresFinished.countDown();
+          });
+    }
+    // Queued jobs wait without holding a worker thread
+    assertEquals(2, workQueue.getPendingCount(POSTGRES_HOST));
+
+    mongoLane.execute(mongoFinished::countDown);
+    assertTrue(mongoFinished.await(5, TimeUnit.SECONDS));
+
+    release.countDown();
+    assertTrue(postgresFinished.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void test_execute_priorityOrder() throws Exception {
+    workQueue.stop(10, TimeUnit.SECONDS);
+    final var priorities = new ConcurrentHashMap<>(Map.of("a", 3L, "b", 2L, "c", 1L));
+    workQueue = new WorkQueue(Executors.newFixedThreadPool(4), priorities::get);
+    final var lane = workQueue.forHost(POSTGRES_HOST, 1);
+    final var release = new CountDownLatch(1);
+    final var order = Collections.synchronizedList(new ArrayList<String>());
+    final var finished = new CountDownLatch(4);
+
+    lane.execute(
+        () -> {
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          finished.countDown();
+        });
+    List.of("c", "a", "b")
+        .forEach(
+            name ->
+                lane.execute(
+                    new NamedJob(
+                        name,
+                        () -> {
+                          order.add(name);
+                          finished.countDown();
+                        })));
+    // Priorities changing after a job is queued must not reorder it
+    priorities.putAll(Map.of("a", 1L, "c", 3L));
+    release.countDown();
+
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+    assertEquals(List.of("a", "b", "c"), order);
+  }
+}
@@ -43,7 +43,13 @@ public class PropertyStoreTest {
     props.setProperty(PropertyStore.DB_MONGO_PASSWORD, "password2");
     props.setProperty(PropertyStore.DB_MONGO_AUTH_DB, "authDb");
     props.setProperty(PropertyStore.EXECUTOR_THREAD_COUNT, "4");
+    props.setProperty(PropertyStore.EXECUTOR_MODE, "virtual");
+    props.setProperty(PropertyStore.EXECUTOR_OVERLAP_POLICY, "skip");
     props.setProperty(PropertyStore.EXECUTOR_INTERVAL_SECS, "1000");
+    props.setProperty(PropertyStore.EXECUTOR_STAGGER_SECS, "500");
+    props.setProperty(PropertyStore.EXECUTOR_JITTER_SECS, "10");
+    props.setProperty(PropertyStore.EXECUTOR_POSTGRES_MAX_CONCURRENT, "2");
+    props.setProperty(PropertyStore.EXECUTOR_MONGO_MAX_CONCURRENT, "1");
     props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, System.getProperty("user.dir"));
     props.setProperty(PropertyStore.CONFIG_FILE, "backup_config.json");
     props.setProperty(PropertyStore.EMAIL_HOST, "https://localhost:7100");
@@ -54,7 +60,14 @@ public class PropertyStoreTest {
     props.setProperty(PropertyStore.AUTH_CLIENT_SECRET, "DEF");
     props.setProperty(PropertyStore.AUTH_REALM, "apps-dev");
     props.setProperty(PropertyStore.OUTPUT_CLEANUP_AGE_DAYS, "30");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_THREADS, "4");
+    props.setProperty(PropertyStore.OUTPUT_CLEANUP_MAX_DELETES_PER_SEC, "500");
     props.setProperty(PropertyStore.MONGODUMP_COMMAND, "mongodump");
+    props.setProperty(PropertyStore.MONGORESTORE_COMMAND, "mongorestore");
+    props.setProperty(PropertyStore.MONGOSH_COMMAND, "mongosh");
+    props.setProperty(PropertyStore.VERIFY_INTERVAL_SECS, "3600");
+    props.setProperty(PropertyStore.VERIFY_MAX_BYTES_PER_SEC, "1000000");
+    props.setProperty(PropertyStore.VERIFY_MAX_BYTES_PER_RUN, "1000000000");
   }
 
   @Test
@@ -0,0 +1,102 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.execution.ProcessRunner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MongoRestorerTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final String RESULT_LINE =
+      "%d document(s) restored successfully. %d document(s) failed to restore.";
+
+  private final List<List<String>> commands = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    Files.createDirectories(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  @Test
+  public void test_restore_gzipArchive() throws Exception {
+    // mongodump --gzip output is not a gzip stream itself, so it stays compressed for mongorestore
+    final var backupFile = OUTPUT_ROOT.resolve("20200101000000.archive.gz");
+    Files.writeString(backupFile, "archive");
+    final var source = ArtifactSource.of(backupFile, new ChunkStore(OUTPUT_ROOT));
+    final var processRunner =
+        new ProcessRunner(
+            (command, environment) -> {
+              commands.add(List.of(command));
+              return new ProcessBuilder(
+                      "sh", "-c", "echo '" + RESULT_LINE.formatted(10, 0) + "' >&2")
+                  .start();
+            },
+            Duration.ofSeconds(20));
+
+    final var result =
+        new MongoRestorer(processRunner, "mongorestore", List.of("--port=27018"))
+            .restore(source, "db", "db_copy", true, 4, 2);
+
+    assertTrue(result.isSuccess());
+    assertEquals(10L, result.get().rows());
+    assertEquals(
+        List.of(
+            "mongorestore",
+            "--port=27018",
+            "--nsInclude=db.*",
+            "--nsFrom=db.*",
+            "--nsTo=db_copy.*",
+            "--drop",
+            "--numParallelCollections=4",
+            "--numInsertionWorkersPerCollection=2",
+            "--archive=" + backupFile,
+            "--gzip"),
+        commands.get(0));
+  }
+
+  @Test
+  public void test_parseRestoredCount() {
+    assertEquals(5L, MongoRestorer.parseRestoredCount(RESULT_LINE.formatted(5, 0)).get());
+    assertTrue(MongoRestorer.parseRestoredCount(RESULT_LINE.formatted(5, 1)).isFailure());
+    // A database with only empty collections is a valid backup
+    assertEquals(0L, MongoRestorer.parseRestoredCount(RESULT_LINE.formatted(0, 0)).get());
+    assertTrue(MongoRestorer.parseRestoredCount("connection refused").isFailure());
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.dedup.ChunkStore;
+import io.craigmiller160.db.backup.execution.ProcessRunner;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PostgresRestorerTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final String DATABASE = "restore_test_db_public";
+
+  private final List<List<String>> commands = new ArrayList<>();
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    Files.createDirectories(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private PostgresRestorer createRestorer(final String script) {
+    final var processRunner =
+        new ProcessRunner(
+            (command, environment) -> {
+              commands.add(List.of(command));
+              assertEquals("password", environment.get(PostgresRestorer.PASSWORD_ENV));
+              return new ProcessBuilder("sh", "-c", script).start();
+            },
+            Duration.ofSeconds(20));
+    return new PostgresRestorer(processRunner, "localhost", "5432", "user", "password");
+  }
+
+  @Test
+  public void test_restore_compressedSql() throws Exception {
+    final var backupFile = OUTPUT_ROOT.resolve("backup_20200101000000.sql.gz");
+    try (final OutputStream output = new GZIPOutputStream(Files.newOutputStream(backupFile))) {
+      output.write("CREATE TABLE foo (id int);".getBytes(StandardCharsets.UTF_8));
+    }
+    final var received = OUTPUT_ROOT.resolve("received.sql");
+    final var source = ArtifactSource.of(backupFile, new ChunkStore(OUTPUT_ROOT));
+
+    final var result = createRestorer("cat > " + received).restore(source, DATABASE, true, 4);
+
+    assertTrue(result.isSuccess());
+    assertEquals(Files.size(backupFile), result.get().sizeBytes());
+    assertEquals("CREATE TABLE foo (id int);", Files.readString(received));
+    assertEquals(
+        List.of(
+            "psql",
+            "-h",
+            "localhost",
+            "-p",
+            "5432",
+            "-U",
+            "user",
+            "-d",
+            DATABASE,
+            "-v",
+            "ON_ERROR_STOP=1",
+            "-q"),
+        commands.get(0));
+  }
+
+  @Test
+  public void test_restore_directoryInParallel() throws Exception {
+    final var backupDir = OUTPUT_ROOT.resolve("backup_20200101000000");
+    Files.createDirectories(backupDir);
+    Files.writeString(backupDir.resolve("toc.dat"), "toc");
+    final var source = ArtifactSource.of(backupDir, new ChunkStore(OUTPUT_ROOT));
+
+    final var result = createRestorer("true").restore(source, DATABASE, true, 4);
+
+    assertTrue(result.isSuccess());
+    assertEquals(
+        List.of(
+            "pg_restore",
+            "-h",
+            "localhost",
+            "-p",
+            "5432",
+            "-U",
+            "user",
+            "-d",
+            DATABASE,
+            "--no-owner",
+            "--no-acl",
+            "--clean",
+            "--if-exists",
+            "-j",
+            "4",
+            backupDir.toString()),
+        commands.get(0));
+  }
+
+  @Test
+  public void test_countRows() {
+    assertEquals(42L, createRestorer("echo '3|42'").countRows(DATABASE).get());
+    assertTrue(createRestorer("echo '0|0'").countRows(DATABASE).isFailure());
+    assertTrue(createRestorer("echo failed >&2; exit 1").countRows(DATABASE).isFailure());
+  }
+}
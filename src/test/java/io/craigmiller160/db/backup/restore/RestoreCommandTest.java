@@ -0,0 +1,179 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.restore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.exception.BackupException;
+import io.craigmiller160.db.backup.execution.BackupArtifact;
+import io.craigmiller160.db.backup.execution.BackupCatalog;
+import io.craigmiller160.db.backup.execution.BackupConstants;
+import io.craigmiller160.db.backup.properties.PropertyStore;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RestoreCommandTest {
+
+  private static final Path OUTPUT_ROOT =
+      Paths.get(System.getProperty("user.dir"), "target", "output");
+  private static final ZoneId ZONE = ZoneId.of(BackupConstants.TIME_ZONE);
+  private static final String TARGET = BackupCatalog.postgresTarget("restore_db", "public");
+
+  private BackupCatalog catalog;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+    catalog = new BackupCatalog(OUTPUT_ROOT);
+  }
+
+  @AfterEach
+  public void after() throws Exception {
+    FileUtils.deleteDirectory(OUTPUT_ROOT.toFile());
+  }
+
+  private Path writeBackup(final int day, final String content) throws Exception {
+    final var path =
+        OUTPUT_ROOT.resolve(
+            Paths.get(
+                BackupConstants.POSTGRES_DIR,
+                "restore_db",
+                "public",
+                "backup_202001%02d000000.sql.gz".formatted(day)));
+    Files.createDirectories(path.getParent());
+    try (final OutputStream output = new GZIPOutputStream(Files.newOutputStream(path))) {
+      output.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    catalog.register(
+        TARGET,
+        ZonedDateTime.of(2020, 1, day, 0, 0, 0, 0, ZONE),
+        new BackupArtifact(path, Files.size(path), Option.none()));
+    return path;
+  }
+
+  @Test
+  public void test_parseOptions() {
+    final var options =
+        RestoreCommand.parseOptions(
+                new String[] {TARGET, "20200101000000", "--jobs=8", "--into=copy"})
+            .get();
+    assertEquals(TARGET, options.target());
+    assertEquals(Option.some("20200101000000"), options.timestamp());
+    assertEquals(Option.some("copy"), options.into());
+    assertFalse(options.force());
+    assertEquals(8, options.jobs());
+    assertEquals(0, options.insertionWorkers());
+    assertEquals(
+        Duration.ofSeconds(BackupConstants.DEFAULT_RESTORE_TIMEOUT_SECS), options.timeout());
+
+    assertTrue(RestoreCommand.parseOptions(new String[] {TARGET, "--force"}).get().force());
+    assertTrue(RestoreCommand.parseOptions(new String[] {}).isFailure());
+    assertTrue(RestoreCommand.parseOptions(new String[] {TARGET, "--unknown"}).isFailure());
+  }
+
+  @Test
+  public void test_parseOptions_invalidNumbers() {
+    List.of("--jobs=0", "--jobs=abc", "--insertion-workers=-1", "--timeout-secs=0")
+        .forEach(
+            arg -> {
+              final var result = RestoreCommand.parseOptions(new String[] {TARGET, arg});
+              assertTrue(result.isFailure());
+              assertTrue(result.getCause() instanceof BackupException);
+              assertTrue(result.getCause().getMessage().contains(RestoreCommand.USAGE));
+            });
+  }
+
+  @Test
+  public void test_checkDestination() {
+    final Function<String[], Try<RestoreCommand.Options>> check =
+        args -> RestoreCommand.parseOptions(args).flatMap(RestoreCommand::checkDestination);
+
+    assertTrue(check.apply(new String[] {TARGET}).isFailure());
+    assertTrue(check.apply(new String[] {TARGET, "--into=restore_db"}).isFailure());
+    assertTrue(check.apply(new String[] {TARGET, "--into=copy"}).isSuccess());
+    assertTrue(check.apply(new String[] {TARGET, "--force"}).isSuccess());
+  }
+
+  @Test
+  public void test_findBackup() throws Exception {
+    final var first = writeBackup(1, "first");
+    final var second = writeBackup(2, "second");
+
+    final var newest =
+        RestoreCommand.findBackup(catalog, RestoreCommand.parseOptions(new String[] {TARGET}).get())
+            .get();
+    final var byTimestamp =
+        RestoreCommand.findBackup(
+                catalog, RestoreCommand.parseOptions(new String[] {TARGET, "20200101000000"}).get())
+            .get();
+    final var missing =
+        RestoreCommand.findBackup(
+            catalog, RestoreCommand.parseOptions(new String[] {TARGET, "20200103000000"}).get());
+
+    assertEquals(second, catalog.resolve(newest));
+    assertEquals(first, catalog.resolve(byTimestamp));
+    assertTrue(missing.isFailure());
+  }
+
+  @Test
+  public void test_run_postgres() throws Exception {
+    writeBackup(1, "CREATE TABLE foo (id int);");
+    final var received = OUTPUT_ROOT.resolve("received.sql");
+    final var props = new Properties();
+    props.setProperty(PropertyStore.OUTPUT_ROOT_DIR, OUTPUT_ROOT.toString());
+    props.setProperty(PropertyStore.DB_POSTGRES_HOST, "localhost");
+    props.setProperty(PropertyStore.DB_POSTGRES_PORT, "5432");
+    props.setProperty(PropertyStore.DB_POSTGRES_USER, "user");
+    props.setProperty(PropertyStore.DB_POSTGRES_PASSWORD, "password");
+    final var commands = new ArrayList<List<String>>();
+
+    final var result =
+        new RestoreCommand(
+                new PropertyStore(props),
+                (command, environment) -> {
+                  commands.add(List.of(command));
+                  return new ProcessBuilder("sh", "-c", "cat > " + received).start();
+                })
+            .run(new String[] {TARGET, "--into=copy"});
+
+    assertTrue(result.isSuccess());
+    assertEquals("CREATE TABLE foo (id int);", Files.readString(received));
+    assertEquals(PostgresRestorer.PSQL_CMD, commands.get(0).get(0));
+    assertEquals("copy", commands.get(0).get(commands.get(0).indexOf("-d") + 1));
+  }
+}
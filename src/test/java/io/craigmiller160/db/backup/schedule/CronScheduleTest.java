@@ -0,0 +1,88 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+public class CronScheduleTest {
+
+  private static final ZoneId ZONE = ZoneId.of("US/Eastern");
+  // A Wednesday
+  private static final ZonedDateTime NOW = ZonedDateTime.of(2024, 1, 10, 10, 15, 30, 0, ZONE);
+
+  private static ZonedDateTime time(
+      final int month, final int day, final int hour, final int minute) {
+    return ZonedDateTime.of(2024, month, day, hour, minute, 0, 0, ZONE);
+  }
+
+  @Test
+  public void test_next_everyMinute() {
+    assertEquals(time(1, 10, 10, 16), new CronSchedule("* * * * *").next(NOW));
+  }
+
+  @Test
+  public void test_next_dailyAtTime() {
+    final var schedule = new CronSchedule("30 2 * * *");
+    assertEquals(time(1, 11, 2, 30), schedule.next(NOW));
+    assertEquals(time(1, 12, 2, 30), schedule.next(time(1, 11, 2, 30)));
+  }
+
+  @Test
+  public void test_next_stepsRangesAndLists() {
+    assertEquals(time(1, 10, 10, 30), new CronSchedule("*/15 * * * *").next(NOW));
+    assertEquals(time(1, 10, 12, 0), new CronSchedule("0 12-14 * * *").next(NOW));
+    assertEquals(time(1, 10, 10, 45), new CronSchedule("5,45 * * * *").next(NOW));
+  }
+
+  @Test
+  public void test_next_dayOfWeek() {
+    // Sunday can be 0 or 7
+    assertEquals(time(1, 14, 3, 0), new CronSchedule("0 3 * * 0").next(NOW));
+    assertEquals(time(1, 14, 3, 0), new CronSchedule("0 3 * * 7").next(NOW));
+  }
+
+  @Test
+  public void test_next_dayOfMonthOrDayOfWeek() {
+    // The 15th or any Friday, whichever comes first
+    assertEquals(time(1, 12, 0, 0), new CronSchedule("0 0 15 * 5").next(NOW));
+  }
+
+  @Test
+  public void test_next_month() {
+    assertEquals(time(6, 1, 0, 0), new CronSchedule("0 0 1 6 *").next(NOW));
+  }
+
+  @Test
+  public void test_next_neverFires() {
+    assertThrows(IllegalStateException.class, () -> new CronSchedule("0 0 30 2 *").next(NOW));
+  }
+
+  @Test
+  public void test_invalidExpression() {
+    assertThrows(IllegalArgumentException.class, () -> new CronSchedule("* * * *"));
+    assertThrows(IllegalArgumentException.class, () -> new CronSchedule("60 * * * *"));
+    assertThrows(IllegalArgumentException.class, () -> new CronSchedule("a * * * *"));
+    assertThrows(IllegalArgumentException.class, () -> new CronSchedule("*/0 * * * *"));
+  }
+}
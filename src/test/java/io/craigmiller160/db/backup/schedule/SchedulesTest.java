@@ -0,0 +1,106 @@
+/*
+ *     db-backup-service
+ *     Copyright (C) 2020 Craig Miller
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.craigmiller160.db.backup.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.craigmiller160.db.backup.config.dto.ScheduleConfig;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+public class SchedulesTest {
+
+  private static final ZoneId ZONE = ZoneId.of("US/Eastern");
+  private static final ZonedDateTime NOW = ZonedDateTime.of(2024, 1, 10, 10, 15, 0, 0, ZONE);
+  private static final long DEFAULT_INTERVAL = 3600;
+
+  @Test
+  public void test_of_default() {
+    final var schedule = Schedules.of(null, DEFAULT_INTERVAL).get();
+    assertTrue(schedule instanceof IntervalSchedule);
+    assertEquals(NOW.plusSeconds(60), schedule.first(NOW, 60));
+    assertEquals(NOW.plusSeconds(DEFAULT_INTERVAL), schedule.next(NOW));
+  }
+
+  @Test
+  public void test_of_interval() {
+    final var schedule = Schedules.of(new ScheduleConfig(null, 300, null, null), DEFAULT_INTERVAL);
+    assertEquals(NOW.plusSeconds(300), schedule.get().next(NOW));
+  }
+
+  @Test
+  public void test_of_cron() {
+    final var schedule =
+        Schedules.of(new ScheduleConfig("0 2 * * *", null, null, null), DEFAULT_INTERVAL).get();
+    assertTrue(schedule instanceof CronSchedule);
+    final var first = NOW.plusDays(1).withHour(2).withMinute(10);
+    assertEquals(first, schedule.first(NOW, 600));
+    assertEquals(first.plusDays(1), schedule.next(first, 600));
+    assertEquals(first.minusMinutes(10), schedule.next(NOW));
+  }
+
+  @Test
+  public void test_of_window() {
+    final var schedule =
+        Schedules.of(new ScheduleConfig(null, 3600, "01:00", "05:00"), DEFAULT_INTERVAL).get();
+    final var tomorrowStart = NOW.plusDays(1).withHour(1).withMinute(0);
+    assertEquals(tomorrowStart, schedule.first(NOW, 0));
+    assertEquals(tomorrowStart.plusHours(1), schedule.next(tomorrowStart));
+    assertEquals(tomorrowStart.plusDays(1), schedule.next(tomorrowStart.plusHours(3)));
+  }
+
+  @Test
+  public void test_of_windowStaggered() {
+    final var schedule =
+        Schedules.of(new ScheduleConfig(null, 3600, "01:00", "05:00"), DEFAULT_INTERVAL).get();
+    final var tomorrowStart = NOW.plusDays(1).withHour(1).withMinute(0);
+    assertEquals(tomorrowStart.plusSeconds(90), schedule.first(NOW, 90));
+    assertEquals(
+        tomorrowStart.plusDays(1).plusSeconds(90),
+        schedule.next(tomorrowStart.plusHours(3).plusSeconds(90), 90));
+  }
+
+  @Test
+  public void test_of_windowAcrossMidnight() {
+    final var schedule =
+        Schedules.of(new ScheduleConfig(null, 3600, "22:00", "04:00"), DEFAULT_INTERVAL).get();
+    final var start = NOW.withHour(22).withMinute(0);
+    assertEquals(start, schedule.first(NOW, 0));
+    assertEquals(start.plusHours(3), schedule.next(start.plusHours(2)));
+    assertEquals(start.plusDays(1), schedule.next(start.plusHours(5)));
+  }
+
+  @Test
+  public void test_of_invalid() {
+    assertTrue(
+        Schedules.of(new ScheduleConfig("0 2 * * *", 60, null, null), DEFAULT_INTERVAL)
+            .isFailure());
+    assertTrue(
+        Schedules.of(new ScheduleConfig("0 2 * * *", null, "01:00", "02:00"), DEFAULT_INTERVAL)
+            .isFailure());
+    assertTrue(
+        Schedules.of(new ScheduleConfig(null, null, "01:00", null), DEFAULT_INTERVAL).isFailure());
+    assertTrue(Schedules.of(new ScheduleConfig(null, 0, null, null), DEFAULT_INTERVAL).isFailure());
+    assertTrue(
+        Schedules.of(new ScheduleConfig("0 0 30 2 *", null, null, null), DEFAULT_INTERVAL)
+            .isFailure());
+  }
+}